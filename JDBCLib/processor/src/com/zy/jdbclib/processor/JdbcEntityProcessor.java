@@ -0,0 +1,455 @@
+
+package com.zy.jdbclib.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import com.zy.jdbclib.annotation.Column;
+import com.zy.jdbclib.annotation.JdbcEntity;
+
+/**
+ * {@link JdbcEntity}的注解处理器。为每个实体类生成：
+ * <ul>
+ * <li>实体类名 + "RowMapper"：用类型对应的ResultSet getter直接调用setter，列号在每个ResultSet的第一行解析一次；</li>
+ * <li>实体类名 + "ParameterSetter"：按给定的属性顺序，用类型对应的PreparedStatement setter设置参数。</li>
+ * </ul>
+ * 生成的代码不使用反射，可以替代BeanPropertyRowMapper和ArgPreparedStatementSetter。
+ * 处理器和它的META-INF/services注册文件位于单独的processor源码目录，单独编译打包，
+ * 只在需要生成代码的工程中放到javac的-processorpath上，jdbclib本身的classpath上没有处理器。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+@SupportedAnnotationTypes("com.zy.jdbclib.annotation.JdbcEntity")
+public class JdbcEntityProcessor extends AbstractProcessor {
+
+    /** 属性类型 -> ResultSet/PreparedStatement方法名的后缀，包装类型使用JdbcUtils中判断wasNull的方法 */
+    private static final Map<String, String> PRIMITIVE_ACCESSORS = new HashMap<String, String>();
+
+    private static final Map<String, String> WRAPPER_ACCESSORS = new HashMap<String, String>();
+
+    private static final Map<String, String> OBJECT_ACCESSORS = new HashMap<String, String>();
+
+    /** 包装类型对应的java.sql.Types常量，用于setNull */
+    private static final Map<String, String> SQL_TYPES = new HashMap<String, String>();
+
+    static {
+        PRIMITIVE_ACCESSORS.put("int", "Int");
+        PRIMITIVE_ACCESSORS.put("long", "Long");
+        PRIMITIVE_ACCESSORS.put("short", "Short");
+        PRIMITIVE_ACCESSORS.put("byte", "Byte");
+        PRIMITIVE_ACCESSORS.put("boolean", "Boolean");
+        PRIMITIVE_ACCESSORS.put("float", "Float");
+        PRIMITIVE_ACCESSORS.put("double", "Double");
+
+        WRAPPER_ACCESSORS.put("java.lang.Integer", "Int");
+        WRAPPER_ACCESSORS.put("java.lang.Long", "Long");
+        WRAPPER_ACCESSORS.put("java.lang.Short", "Short");
+        WRAPPER_ACCESSORS.put("java.lang.Byte", "Byte");
+        WRAPPER_ACCESSORS.put("java.lang.Boolean", "Boolean");
+        WRAPPER_ACCESSORS.put("java.lang.Float", "Float");
+        WRAPPER_ACCESSORS.put("java.lang.Double", "Double");
+
+        SQL_TYPES.put("java.lang.Integer", "INTEGER");
+        SQL_TYPES.put("java.lang.Long", "BIGINT");
+        SQL_TYPES.put("java.lang.Short", "SMALLINT");
+        SQL_TYPES.put("java.lang.Byte", "TINYINT");
+        SQL_TYPES.put("java.lang.Boolean", "BOOLEAN");
+        SQL_TYPES.put("java.lang.Float", "REAL");
+        SQL_TYPES.put("java.lang.Double", "DOUBLE");
+
+        OBJECT_ACCESSORS.put("java.lang.String", "String");
+        OBJECT_ACCESSORS.put("java.math.BigDecimal", "BigDecimal");
+        OBJECT_ACCESSORS.put("byte[]", "Bytes");
+        OBJECT_ACCESSORS.put("java.sql.Date", "Date");
+        OBJECT_ACCESSORS.put("java.sql.Time", "Time");
+        OBJECT_ACCESSORS.put("java.sql.Timestamp", "Timestamp");
+    }
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JdbcEntity.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@JdbcEntity can only be applied to classes");
+                continue;
+            }
+            TypeElement entity = (TypeElement)element;
+            if (!checkEntity(entity)) {
+                continue;
+            }
+            List<Property> properties = collectProperties(entity);
+            try {
+                writeRowMapper(entity, properties);
+                writeParameterSetter(entity, properties);
+            } catch (IOException ex) {
+                error(entity, "Could not generate mapping code: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private boolean checkEntity(TypeElement entity) {
+        if (!entity.getModifiers().contains(Modifier.PUBLIC)
+                || entity.getModifiers().contains(Modifier.ABSTRACT)
+                || entity.getNestingKind().isNested()) {
+            error(entity, "@JdbcEntity class must be a public, non-abstract top level class");
+            return false;
+        }
+        for (Element member : entity.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.CONSTRUCTOR
+                    && ((ExecutableElement)member).getParameters().isEmpty()
+                    && member.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        error(entity, "@JdbcEntity class must have a public default constructor");
+        return false;
+    }
+
+    /**
+     * 收集有public getter和setter的字段，父类的字段在前
+     */
+    private List<Property> collectProperties(TypeElement entity) {
+        List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+        for (TypeElement type = entity; type != null;) {
+            if (type.getQualifiedName().contentEquals("java.lang.Object")) {
+                break;
+            }
+            hierarchy.add(0, type);
+            TypeMirror superclass = type.getSuperclass();
+            type = (superclass.getKind() == TypeKind.DECLARED ? (TypeElement)((DeclaredType)superclass)
+                    .asElement()
+                    : null);
+        }
+
+        Set<String> methods = new HashSet<String>();
+        for (TypeElement type : hierarchy) {
+            for (Element member : type.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.METHOD
+                        && member.getModifiers().contains(Modifier.PUBLIC)
+                        && !member.getModifiers().contains(Modifier.STATIC)) {
+                    ExecutableElement method = (ExecutableElement)member;
+                    methods.add(method.getSimpleName() + "/" + method.getParameters().size());
+                }
+            }
+        }
+
+        List<Property> properties = new ArrayList<Property>();
+        Set<String> names = new HashSet<String>();
+        for (TypeElement type : hierarchy) {
+            for (Element member : type.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.FIELD
+                        || member.getModifiers().contains(Modifier.STATIC)
+                        || member.getModifiers().contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                VariableElement field = (VariableElement)member;
+                Column column = field.getAnnotation(Column.class);
+                if (column != null && !column.mapped()) {
+                    continue;
+                }
+                String name = field.getSimpleName().toString();
+                String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                String propertyType = erasure(field.asType());
+                String getter = ("boolean".equals(propertyType) && methods.contains("is" + capitalized
+                        + "/0")) ? "is" + capitalized : "get" + capitalized;
+                String setter = "set" + capitalized;
+                if (!methods.contains(getter + "/0") || !methods.contains(setter + "/1")
+                        || !names.add(name)) {
+                    continue;
+                }
+                String columnName = (column != null && column.value().length() > 0 ? column
+                        .value() : null);
+                properties.add(new Property(name, propertyType, getter, setter, columnName));
+            }
+        }
+        return properties;
+    }
+
+    private String erasure(TypeMirror type) {
+        return this.processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private void writeRowMapper(TypeElement entity, List<Property> properties) throws IOException {
+        String packageName = packageName(entity);
+        String entityName = entity.getSimpleName().toString();
+        String className = entityName + "RowMapper";
+        PrintWriter out = createSource(entity, packageName, className);
+        try {
+            writeHeader(out, packageName);
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.SQLException;");
+            out.println();
+            out.println("import com.zy.jdbclib.core.RowMapper;");
+            out.println("import com.zy.jdbclib.utils.ColumnIndexes;");
+            out.println("import com.zy.jdbclib.utils.JdbcUtils;");
+            out.println();
+            out.println("/**");
+            out.println(" * " + entityName + "的RowMapper，由JdbcEntityProcessor生成，请勿修改。");
+            out.println(" */");
+            out.println("public class " + className + " implements RowMapper<" + entityName + "> {");
+            out.println();
+            out.println("    private static final String[][] COLUMNS = {");
+            for (int i = 0; i < properties.size(); i++) {
+                Property p = properties.get(i);
+                out.print("            {");
+                String[] columnNames = p.columnNames();
+                for (int j = 0; j < columnNames.length; j++) {
+                    out.print((j > 0 ? ", " : "") + quote(columnNames[j]));
+                }
+                out.println("}" + (i < properties.size() - 1 ? "," : ""));
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private volatile ColumnIndexes columnIndexes;");
+            out.println();
+            out.println("    public " + entityName
+                    + " mapRow(ResultSet rs, int rowNum) throws SQLException {");
+            out.println("        ColumnIndexes current = ColumnIndexes.resolve(this.columnIndexes, rs, rowNum, COLUMNS);");
+            out.println("        this.columnIndexes = current;");
+            out.println("        int[] indexes = current.getIndexes();");
+            out.println("        " + entityName + " bean = new " + entityName + "();");
+            for (int i = 0; i < properties.size(); i++) {
+                Property p = properties.get(i);
+                out.println("        if (indexes[" + i + "] > 0) {");
+                out.println("            bean." + p.setter + "(" + readExpression(p, "indexes[" + i + "]")
+                        + ");");
+                out.println("        }");
+            }
+            out.println("        return bean;");
+            out.println("    }");
+            out.println();
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private String readExpression(Property p, String index) {
+        if (PRIMITIVE_ACCESSORS.containsKey(p.type)) {
+            return "rs.get" + PRIMITIVE_ACCESSORS.get(p.type) + "(" + index + ")";
+        } else if (WRAPPER_ACCESSORS.containsKey(p.type)) {
+            return "JdbcUtils.get" + p.type.substring("java.lang.".length()) + "(rs, " + index + ")";
+        } else if (OBJECT_ACCESSORS.containsKey(p.type)) {
+            return "rs.get" + OBJECT_ACCESSORS.get(p.type) + "(" + index + ")";
+        } else if ("java.util.Date".equals(p.type)) {
+            return "rs.getTimestamp(" + index + ")";
+        }
+        return "(" + p.type + ")JdbcUtils.getResultSetValue(rs, " + index + ", " + p.type
+                + ".class)";
+    }
+
+    private void writeParameterSetter(TypeElement entity, List<Property> properties)
+            throws IOException {
+        String packageName = packageName(entity);
+        String entityName = entity.getSimpleName().toString();
+        String className = entityName + "ParameterSetter";
+        JdbcEntity annotation = entity.getAnnotation(JdbcEntity.class);
+        PrintWriter out = createSource(entity, packageName, className);
+        try {
+            writeHeader(out, packageName);
+            out.println("import java.sql.PreparedStatement;");
+            out.println("import java.sql.SQLException;");
+            out.println("import java.sql.Types;");
+            out.println();
+            out.println("import com.zy.jdbclib.core.JDBCException;");
+            out.println("import com.zy.jdbclib.core.PreparedStatementSetter;");
+            out.println("import com.zy.jdbclib.core.SqlTypeValue;");
+            out.println("import com.zy.jdbclib.utils.StatementCreatorUtils;");
+            out.println();
+            out.println("/**");
+            out.println(" * 按给定的属性顺序设置" + entityName
+                    + "的属性值为参数的PreparedStatementSetter，由JdbcEntityProcessor生成，请勿修改。");
+            out.println(" */");
+            out.println("public class " + className + " implements PreparedStatementSetter {");
+            out.println();
+            out.println("    /** 所有映射的属性 */");
+            out.print("    public static final String[] PROPERTIES = {");
+            for (int i = 0; i < properties.size(); i++) {
+                out.print((i > 0 ? ", " : "") + quote(properties.get(i).name));
+            }
+            out.println("};");
+            out.println();
+            if (annotation.table().length() > 0) {
+                StringBuilder columns = new StringBuilder();
+                StringBuilder placeholders = new StringBuilder();
+                for (int i = 0; i < properties.size(); i++) {
+                    columns.append(i > 0 ? ", " : "").append(properties.get(i).insertColumn());
+                    placeholders.append(i > 0 ? ", ?" : "?");
+                }
+                out.println("    /** 按PROPERTIES的顺序插入所有属性的sql */");
+                out.println("    public static final String INSERT_SQL = "
+                        + quote("insert into " + annotation.table() + " (" + columns
+                                + ") values (" + placeholders + ")") + ";");
+                out.println();
+            }
+            out.println("    private final " + entityName + " bean;");
+            out.println();
+            out.println("    private final int[] properties;");
+            out.println();
+            out.println("    public " + className + "(" + entityName + " bean) {");
+            out.println("        this(bean, PROPERTIES);");
+            out.println("    }");
+            out.println();
+            out.println("    public " + className + "(" + entityName + " bean, String... properties) {");
+            out.println("        this.bean = bean;");
+            out.println("        this.properties = new int[properties.length];");
+            out.println("        for (int i = 0; i < properties.length; i++) {");
+            out.println("            this.properties[i] = indexOf(properties[i]);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+            out.println("    private static int indexOf(String property) {");
+            out.println("        for (int i = 0; i < PROPERTIES.length; i++) {");
+            out.println("            if (PROPERTIES[i].equals(property)) {");
+            out.println("                return i;");
+            out.println("            }");
+            out.println("        }");
+            out.println("        throw new JDBCException(\"Unknown property [\" + property + \"] of "
+                    + entityName + "\");");
+            out.println("    }");
+            out.println();
+            out.println("    public void setValues(PreparedStatement ps) throws SQLException {");
+            out.println("        for (int i = 0; i < this.properties.length; i++) {");
+            out.println("            int index = i + 1;");
+            out.println("            switch (this.properties[i]) {");
+            for (int i = 0; i < properties.size(); i++) {
+                Property p = properties.get(i);
+                out.println("            case " + i + ":");
+                writeParameter(out, p, "this.bean." + p.getter + "()");
+                out.println("                break;");
+            }
+            out.println("            }");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeParameter(PrintWriter out, Property p, String value) {
+        if (PRIMITIVE_ACCESSORS.containsKey(p.type)) {
+            out.println("                ps.set" + PRIMITIVE_ACCESSORS.get(p.type) + "(index, "
+                    + value + ");");
+        } else if (WRAPPER_ACCESSORS.containsKey(p.type)) {
+            out.println("                if (" + value + " == null) {");
+            out.println("                    ps.setNull(index, Types." + SQL_TYPES.get(p.type) + ");");
+            out.println("                } else {");
+            out.println("                    ps.set" + WRAPPER_ACCESSORS.get(p.type) + "(index, "
+                    + value + ");");
+            out.println("                }");
+        } else {
+            // String、Date等交给StatementCreatorUtils，与ArgPreparedStatementSetter的处理相同
+            out.println("                StatementCreatorUtils.setParameterValue(ps, index, SqlTypeValue.TYPE_UNKNOWN, "
+                    + value + ");");
+        }
+    }
+
+    private PrintWriter createSource(TypeElement entity, String packageName, String className)
+            throws IOException {
+        String name = (packageName.length() > 0 ? packageName + "." : "") + className;
+        JavaFileObject file = this.processingEnv.getFiler().createSourceFile(name, entity);
+        return new PrintWriter(file.openWriter());
+    }
+
+    private void writeHeader(PrintWriter out, String packageName) {
+        out.println();
+        if (packageName.length() > 0) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+    }
+
+    private String packageName(TypeElement entity) {
+        PackageElement pkg = this.processingEnv.getElementUtils().getPackageOf(entity);
+        return (pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString());
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * 实体类的一个映射属性
+     */
+    private static class Property {
+
+        final String name;
+
+        final String type;
+
+        final String getter;
+
+        final String setter;
+
+        /** @Column指定的列名，没有指定时为null */
+        final String column;
+
+        Property(String name, String type, String getter, String setter, String column) {
+            this.name = name;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+            this.column = column;
+        }
+
+        /**
+         * 可以匹配的列名（小写），规则与BeanPropertyRowMapper相同
+         */
+        String[] columnNames() {
+            if (this.column != null) {
+                return new String[] {this.column.toLowerCase()};
+            }
+            String lower = this.name.toLowerCase();
+            StringBuilder underscored = new StringBuilder();
+            for (int i = 0; i < this.name.length(); i++) {
+                char c = this.name.charAt(i);
+                if (i > 0 && Character.isUpperCase(c)) {
+                    underscored.append('_');
+                }
+                underscored.append(Character.toLowerCase(c));
+            }
+            if (lower.equals(underscored.toString())) {
+                return new String[] {lower};
+            }
+            return new String[] {lower, underscored.toString()};
+        }
+
+        String insertColumn() {
+            return (this.column != null ? this.column : this.name);
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+
+package com.zy.jdbclib;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.core.ConnectionCallback;
+import com.zy.jdbclib.core.ResultSetExtractor;
+import com.zy.jdbclib.core.RowMapper;
+import com.zy.jdbclib.dataSource.ConnectionLimitingDataSource;
+import com.zy.jdbclib.dataSource.PooledDataSource;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.DaemonThreadFactory;
+import com.zy.jdbclib.utils.VirtualThreads;
+
+/**
+ * JdbcTemplate的异步版本。每个方法把对应的JdbcTemplate调用交给一个有界的线程池执行，立即返回
+ * CompletableFuture，可以同时发出多个互不相关的查询：
+ *
+ * <pre>
+ * CompletableFuture&lt;Admin&gt; admin = async.queryForObject(sql1, mapper, id);
+ * CompletableFuture&lt;Integer&gt; count = async.queryForInt(sql2);
+ * CompletableFuture.allOf(admin, count).join();
+ * </pre>
+ *
+ * 默认线程池的线程数与连接池的最大连接数相同（数据源不是PooledDataSource时为
+ * {@link #DEFAULT_POOL_SIZE}），多出的线程只会等待连接。任务队列满时提交任务的线程会阻塞，直到队列有空位，
+ * 以此限制调用方的速度。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class AsyncJdbcTemplate {
+
+    private static final Log log = LogFactory.getLog(AsyncJdbcTemplate.class);
+
+    /** 数据源不是PooledDataSource时默认线程池的线程数 */
+    public static final int DEFAULT_POOL_SIZE = 10;
+
+    /** 默认线程池的任务队列长度 */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Executor executor;
+
+    /** 由本类创建、需要在shutdown()中关闭的线程池 */
+    private final ExecutorService ownedExecutor;
+
+    public AsyncJdbcTemplate(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * 使用默认的有界线程池
+     *
+     * @param jdbcTemplate 实际执行sql的模板
+     */
+    public AsyncJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        Assert.notNull(jdbcTemplate, "JdbcTemplate must not be null");
+        this.jdbcTemplate = jdbcTemplate;
+        this.ownedExecutor = newBoundedExecutor(defaultPoolSize(jdbcTemplate.getDataSource()),
+                DEFAULT_QUEUE_CAPACITY);
+        this.executor = this.ownedExecutor;
+    }
+
+    /**
+     * 使用给定的线程池，线程池由调用者关闭
+     *
+     * @param jdbcTemplate 实际执行sql的模板
+     * @param executor 执行sql的线程池
+     */
+    public AsyncJdbcTemplate(JdbcTemplate jdbcTemplate, Executor executor) {
+        this(jdbcTemplate, executor, null);
+    }
+
+    private AsyncJdbcTemplate(JdbcTemplate jdbcTemplate, Executor executor,
+            ExecutorService ownedExecutor) {
+        Assert.notNull(jdbcTemplate, "JdbcTemplate must not be null");
+        Assert.notNull(executor, "Executor must not be null");
+        this.jdbcTemplate = jdbcTemplate;
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+    }
+
+    /**
+     * 创建为每个调用启动一个虚拟线程的AsyncJdbcTemplate（需要JDK 21），当前JDK不支持虚拟线程时
+     * 使用默认的有界线程池。
+     * <p>
+     * 虚拟线程的数量没有上限，同时访问数据库的数量由连接池的maxPoolSize限制；数据源没有连接数上限时
+     * （如SimpleDataSource），应该用{@link ConnectionLimitingDataSource}包装，否则成千上万个虚拟线程
+     * 会同时向数据库发起连接。
+     *
+     * @param jdbcTemplate 实际执行sql的模板
+     * @return AsyncJdbcTemplate
+     */
+    public static AsyncJdbcTemplate withVirtualThreads(JdbcTemplate jdbcTemplate) {
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            log.info("Virtual threads are not supported by this JVM, using a bounded thread pool");
+            return new AsyncJdbcTemplate(jdbcTemplate);
+        }
+        return new AsyncJdbcTemplate(jdbcTemplate, executor, executor);
+    }
+
+    private static int defaultPoolSize(DataSource dataSource) {
+        if (dataSource instanceof PooledDataSource) {
+            return ((PooledDataSource)dataSource).getMaxPoolSize();
+        }
+        return DEFAULT_POOL_SIZE;
+    }
+
+    /**
+     * 创建一个固定线程数、有界队列的线程池。队列满时提交任务的线程阻塞等待。
+     *
+     * @param poolSize 线程数，一般等于连接池的最大连接数
+     * @param queueCapacity 任务队列长度
+     * @return 线程池
+     */
+    public static ExecutorService newBoundedExecutor(int poolSize, int queueCapacity) {
+        Assert.isTrue(poolSize > 0, "poolSize must be greater than zero");
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be greater than zero");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new DaemonThreadFactory("AsyncJdbcTemplate-"), new BlockingSubmitPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 在线程池中执行任务
+     *
+     * @param task 需要执行的任务
+     * @return 任务的结果，任务抛出的异常（一般是JDBCException）使它异常完成
+     */
+    public <T extends Object> CompletableFuture<T> submit(final Callable<T> task) {
+        Assert.notNull(task, "Task must not be null");
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            this.executor.execute(new Runnable() {
+
+                public void run() {
+                    if (future.isDone()) {
+                        // 已经被取消
+                        return;
+                    }
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable ex) {
+                        future.completeExceptionally(ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    public <T extends Object> CompletableFuture<T> execute(final ConnectionCallback<T> action) {
+        return submit(new Callable<T>() {
+
+            public T call() {
+                return jdbcTemplate.execute(action);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> execute(final String sql) {
+        return submit(new Callable<Void>() {
+
+            public Void call() {
+                jdbcTemplate.execute(sql);
+                return null;
+            }
+        });
+    }
+
+    public <T extends Object> CompletableFuture<T> query(final String sql,
+            final ResultSetExtractor<T> rse, final Object... args) {
+        return submit(new Callable<T>() {
+
+            public T call() {
+                return jdbcTemplate.query(sql, rse, args);
+            }
+        });
+    }
+
+    public <T extends Object> CompletableFuture<List<T>> query(final String sql,
+            final RowMapper<T> rowMapper, final Object... args) {
+        return submit(new Callable<List<T>>() {
+
+            public List<T> call() {
+                return jdbcTemplate.query(sql, rowMapper, args);
+            }
+        });
+    }
+
+    public <T extends Object> CompletableFuture<List<T>> query(final String sql,
+            final RowMapper<T> rowMapper, final Object[] args, final int[] argTypes) {
+        return submit(new Callable<List<T>>() {
+
+            public List<T> call() {
+                return jdbcTemplate.query(sql, rowMapper, args, argTypes);
+            }
+        });
+    }
+
+    public <T extends Object> CompletableFuture<T> queryForObject(final String sql,
+            final RowMapper<T> rowMapper, final Object... args) {
+        return submit(new Callable<T>() {
+
+            public T call() {
+                return jdbcTemplate.queryForObject(sql, rowMapper, args);
+            }
+        });
+    }
+
+    public <T extends Object> CompletableFuture<T> queryForObject(final String sql,
+            final Class<T> requiredType, final Object... args) {
+        return submit(new Callable<T>() {
+
+            public T call() {
+                return jdbcTemplate.queryForObject(sql, requiredType, args);
+            }
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> queryForMap(final String sql,
+            final Object... args) {
+        return submit(new Callable<Map<String, Object>>() {
+
+            public Map<String, Object> call() {
+                return jdbcTemplate.queryForMap(sql, args);
+            }
+        });
+    }
+
+    public <T extends Object> CompletableFuture<List<T>> queryForList(final String sql,
+            final Class<T> elementType, final Object... args) {
+        return submit(new Callable<List<T>>() {
+
+            public List<T> call() {
+                return jdbcTemplate.queryForList(sql, elementType, args);
+            }
+        });
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> queryForList(final String sql,
+            final Object... args) {
+        return submit(new Callable<List<Map<String, Object>>>() {
+
+            public List<Map<String, Object>> call() {
+                return jdbcTemplate.queryForList(sql, args);
+            }
+        });
+    }
+
+    public CompletableFuture<Long> queryForLong(final String sql, final Object... args) {
+        return submit(new Callable<Long>() {
+
+            public Long call() {
+                return Long.valueOf(jdbcTemplate.queryForLong(sql, args));
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> queryForInt(final String sql, final Object... args) {
+        return submit(new Callable<Integer>() {
+
+            public Integer call() {
+                return Integer.valueOf(jdbcTemplate.queryForInt(sql, args));
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> update(final String sql, final Object... args) {
+        return submit(new Callable<Integer>() {
+
+            public Integer call() {
+                return Integer.valueOf(jdbcTemplate.update(sql, args));
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> update(final String sql, final Object[] args,
+            final int[] argTypes) {
+        return submit(new Callable<Integer>() {
+
+            public Integer call() {
+                return Integer.valueOf(jdbcTemplate.update(sql, args, argTypes));
+            }
+        });
+    }
+
+    public CompletableFuture<int[]> batchUpdate(final String sql, final List<Object[]> batchArgs) {
+        return submit(new Callable<int[]>() {
+
+            public int[] call() {
+                return jdbcTemplate.batchUpdate(sql, batchArgs);
+            }
+        });
+    }
+
+    /**
+     * 关闭默认线程池，已经提交的任务会继续执行。使用外部线程池时什么也不做。
+     */
+    public void shutdown() {
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @return the jdbcTemplate
+     */
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 队列满时阻塞提交任务的线程，而不是丢弃任务或在提交线程中执行（那样会占用调用方的线程去等待连接）。
+     * 每次最多等待{@link #RECHECK_INTERVAL}毫秒，期间线程池被关闭时拒绝任务。
+     */
+    private static class BlockingSubmitPolicy implements RejectedExecutionHandler {
+
+        private static final long RECHECK_INTERVAL = 100;
+
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            try {
+                do {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException(
+                                "AsyncJdbcTemplate has been shut down");
+                    }
+                } while (!queue.offer(r, RECHECK_INTERVAL, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for queue space",
+                        ex);
+            }
+            // 放入队列前线程池可能已经关闭，空闲线程也可能已经超时退出，任务不会再被执行
+            if (executor.isShutdown() && queue.remove(r)) {
+                throw new RejectedExecutionException("AsyncJdbcTemplate has been shut down");
+            }
+            executor.prestartCoreThread();
+        }
+    }
+
+}
@@ -1,35 +1,67 @@
 
 package com.zy.jdbclib;
 
+import java.io.Closeable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.zy.jdbclib.core.BatchPreparedStatementSetter;
 import com.zy.jdbclib.core.ColumnMapRowMapper;
 import com.zy.jdbclib.core.ConnectionCallback;
 import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.core.KeysetScanner;
 import com.zy.jdbclib.core.PreparedStatementCallback;
 import com.zy.jdbclib.core.PreparedStatementCreator;
 import com.zy.jdbclib.core.PreparedStatementSetter;
 import com.zy.jdbclib.core.ResultSetExtractor;
+import com.zy.jdbclib.core.ResultSetIterator;
+import com.zy.jdbclib.core.ResultSetPublisher;
 import com.zy.jdbclib.core.RowCallbackHandler;
 import com.zy.jdbclib.core.RowMapper;
 import com.zy.jdbclib.core.RowMapperResultSetExtractor;
+import com.zy.jdbclib.core.SqlProvider;
 import com.zy.jdbclib.core.StatementCallback;
+import com.zy.jdbclib.dataSource.ReadOnlyContext;
+import com.zy.jdbclib.metrics.JfrEvents;
+import com.zy.jdbclib.metrics.SlowQueryLog;
+import com.zy.jdbclib.metrics.SqlExecution;
+import com.zy.jdbclib.metrics.SqlMetrics;
+import com.zy.jdbclib.metrics.SqlPhase;
+import com.zy.jdbclib.transaction.ConnectionHolder;
+import com.zy.jdbclib.transaction.TransactionContext;
 import com.zy.jdbclib.utils.ArgPreparedStatementSetter;
 import com.zy.jdbclib.utils.ArgTypePreparedStatementSetter;
 import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.InClauseBuckets;
+import com.zy.jdbclib.utils.InListStatement;
 import com.zy.jdbclib.utils.JdbcUtils;
+import com.zy.jdbclib.utils.MultiValuesInsert;
+import com.zy.jdbclib.utils.QueryKey;
+import com.zy.jdbclib.utils.SingleFlight;
 import com.zy.jdbclib.utils.SingleColumnRowMapper;
 
 /**
@@ -52,8 +84,40 @@ public class JdbcTemplate {
 
     private int queryTimeout = 0;
 
+    /** 批量更新时每次executeBatch的最大行数，0表示不分批 */
+    private int batchChunkSize = 1000;
+
+    /** 是否把批量的单行insert语句改写成多行insert语句 */
+    private boolean rewriteBatchedInserts = false;
+
+    /** 改写后的多行语句的最大字节数，应不大于数据库的max_allowed_packet */
+    private int maxPacketSize = 4 * 1024 * 1024;
+
+    /** 超过这个长度的IN列表分块查询，0表示不分块 */
+    private int inListChunkSize = InClauseBuckets.MAX_BUCKET;
+
+    /** 并行执行IN列表分块查询的线程池，为null时依次执行 */
+    private Executor inListExecutor;
+
+    /** 是否合并sql和参数都相同的并发查询 */
+    private boolean coalesceQueries = false;
+
+    private final SingleFlight<QueryKey> singleFlight = new SingleFlight<QueryKey>();
+
+    /** 接收每次执行的统计数据，为null时不统计 */
+    private SqlMetrics sqlMetrics;
+
+    /** 慢查询的阈值（毫秒），0表示不记录慢查询 */
+    private long slowQueryThreshold = 0;
+
+    /** 记录慢查询的日志，为null时使用{@link SlowQueryLog#getDefault()} */
+    private SlowQueryLog slowQueryLog;
+
     private DataSource dataSource;
 
+    /** 数据源是否是MySQL，第一次流式查询时判断 */
+    private volatile Boolean mysql;
+
     /**
      * 返回该模板使用的数据源
      * 
@@ -70,6 +134,7 @@ public class JdbcTemplate {
      */
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
+        this.mysql = null;
     }
 
     public JdbcTemplate() {
@@ -102,36 +167,144 @@ public class JdbcTemplate {
         // 检查参数
         Assert.notNull(action, "Callback object must not be null!");
 
+        SqlExecution execution = (isRecording() ? SqlExecution.begin() : null);
         Connection con = null;
         try {
-            con = getDataSource().getConnection();// 获取数据库连接
+            long time = (execution != null ? System.nanoTime() : 0);
+            con = obtainConnection();// 获取数据库连接
+            if (execution != null) {
+                execution.end(SqlPhase.ACQUIRE, time);
+            }
             return action.doInConnection(con);
         } catch (SQLException ex) {
-            try {// 关闭数据库连接
-                if (!con.getAutoCommit()) {
-                    con.commit();
-                }
-                con.close();
-            } catch (SQLException e) {
-                log.debug("Could not close JDBC Connection!", e);
-                // throw new DataAccessException(e); 在关闭连接时的异常不需要抛出
+            if (execution != null) {
+                execution.setError(ex);
             }
-            con = null;
             throw new JDBCException(ex);
+        } catch (RuntimeException ex) {
+            if (execution != null) {
+                execution.setError(ex);
+            }
+            throw ex;
         } finally {
-            try {// 关闭数据库连接
-                if (!con.getAutoCommit()) {
-                    con.commit();
-                }
-                con.close();
-            } catch (SQLException e) {
-                log.debug("Could not close JDBC Connection!", e);
-                // throw new DataAccessException(e); 在关闭连接时的异常不需要抛出
+            long time = (execution != null ? System.nanoTime() : 0);
+            releaseConnection(con);
+            if (execution != null) {
+                execution.end(SqlPhase.CLOSE, time);
+                record(execution);
+            }
+            if (isCoalesceQueries() && !Boolean.TRUE.equals(ReadOnlyContext.get())) {
+                // 不是只读查询，可能修改了数据
+                invalidateCoalescedQueries();
             }
         }
 
     }
 
+    /**
+     * 修改数据后，之后的查询不再合并到修改之前开始的查询，也不使用window内保留的结果。
+     * 在事务中时提交后再执行一次，避免其他线程在提交之前得到的结果被继续使用。
+     */
+    private void invalidateCoalescedQueries() {
+        this.singleFlight.invalidate();
+        TransactionContext.registerAfterCommit(getDataSource(), new Runnable() {
+            public void run() {
+                singleFlight.invalidate();
+            }
+        });
+    }
+
+    /**
+     * @return 是否需要记录每次执行的统计数据（设置了SqlMetrics、慢查询阈值或者正在进行JFR录制）
+     */
+    private boolean isRecording() {
+        return getSqlMetrics() != null || getSlowQueryThreshold() > 0
+                || JfrEvents.isSqlEventEnabled();
+    }
+
+    /**
+     * 结束执行并交给SqlMetrics，超过阈值时写入慢查询日志，统计出错不影响sql的执行结果
+     */
+    private void record(SqlExecution execution) {
+        execution.finish();
+        try {
+            SqlMetrics metrics = getSqlMetrics();
+            if (metrics != null) {
+                metrics.record(execution);
+            }
+            long threshold = getSlowQueryThreshold();
+            if (threshold > 0 && execution.getTotalNanos() >= threshold * 1000000L) {
+                SlowQueryLog slowLog = getSlowQueryLog();
+                (slowLog != null ? slowLog : SlowQueryLog.getDefault()).log(execution,
+                        getDataSource());
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Could not record SQL metrics", ex);
+        }
+    }
+
+    /**
+     * @return 当前线程中本模板正在进行的执行，不需要统计时返回null
+     */
+    private SqlExecution currentExecution() {
+        return (isRecording() ? SqlExecution.current() : null);
+    }
+
+    /**
+     * 记录通过参数数组设置的参数，用于慢查询日志
+     */
+    private static void captureParameters(SqlExecution execution, PreparedStatementSetter pss) {
+        if (pss instanceof ArgTypePreparedStatementSetter) {
+            ArgTypePreparedStatementSetter setter = (ArgTypePreparedStatementSetter)pss;
+            execution.setParameters(setter.getArgs(), setter.getArgTypes());
+        } else if (pss instanceof ArgPreparedStatementSetter) {
+            execution.setParameters(((ArgPreparedStatementSetter)pss).getArgs(), null);
+        }
+    }
+
+    /**
+     * 从数据源获取一个数据库连接，用完后必须交给{@link #releaseConnection(Connection)}释放。
+     * 当前线程在事务中时（参见{@link com.zy.jdbclib.transaction.TransactionTemplate}）返回事务的连接。
+     *
+     * @return 数据库连接
+     * @throws SQLException
+     */
+    protected Connection obtainConnection() throws SQLException {
+        Connection con = TransactionContext.getConnection(getDataSource());
+        if (con != null) {
+            return con;
+        }
+        Object event = JfrEvents.beginConnectionAcquire();
+        try {
+            con = getDataSource().getConnection();
+            return con;
+        } finally {
+            JfrEvents.commitConnectionAcquire(event, getDataSource(), con != null);
+        }
+    }
+
+    /**
+     * 关闭数据库连接。如果连接来自连接池（如PooledDataSource），close()会把连接归还给连接池。
+     * 事务的连接不提交也不关闭。
+     *
+     * @param con 需要关闭的连接，可以为null
+     */
+    protected void releaseConnection(Connection con) {
+        if (con == null || con == TransactionContext.getConnection(getDataSource())) {
+            // 事务的连接由事务管理器提交和关闭
+            return;
+        }
+        try {
+            if (!con.getAutoCommit()) {
+                con.commit();
+            }
+        } catch (SQLException e) {
+            log.debug("Could not commit JDBC Connection!", e);
+        }
+        // 在关闭连接时的异常不需要抛出
+        JdbcUtils.closeConnection(con);
+    }
+
     // -------------------------------------------------------------------------
     // 执行静态SQL的方法 (java.sql.Statement)
     // -------------------------------------------------------------------------
@@ -147,9 +320,18 @@ public class JdbcTemplate {
         return execute(new ConnectionCallback<T>() {
 
             public T doInConnection(Connection conn) throws SQLException {
+                SqlExecution execution = currentExecution();
+                if (execution != null && action instanceof SqlProvider) {
+                    execution.setSql(((SqlProvider)action).getSql());
+                }
                 Statement stmt = null;
                 try {
+                    long time = (execution != null ? System.nanoTime() : 0);
                     stmt = conn.createStatement();
+                    applyStatementSettings(stmt);
+                    if (execution != null) {
+                        execution.end(SqlPhase.PREPARE, time);
+                    }
                     T result = action.doInStatement(stmt);
                     handleWarnings(stmt.getWarnings());
                     return result;
@@ -158,7 +340,7 @@ public class JdbcTemplate {
                     stmt = null;
                     throw new JDBCException(ex);
                 } finally {
-                    JdbcUtils.closeStatement(stmt);
+                    closeStatement(stmt, execution);
                 }
             }
         });
@@ -174,13 +356,28 @@ public class JdbcTemplate {
 
         log.debug("Executing SQL statement [" + sql + "]");
 
-        class ExecuteStatementCallback implements StatementCallback<Object> {
+        class ExecuteStatementCallback implements StatementCallback<Object>, SqlProvider {
             public Object doInStatement(Statement stmt) throws SQLException {
+                SqlExecution execution = currentExecution();
+                long time = (execution != null ? System.nanoTime() : 0);
                 stmt.execute(sql);
+                if (execution != null) {
+                    execution.end(SqlPhase.EXECUTE, time);
+                }
                 return null;
             }
+
+            public String getSql() {
+                return sql;
+            }
+        }
+        // 任意语句都可能写入，总是在主库上执行
+        Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+        try {
+            execute(new ExecuteStatementCallback());
+        } finally {
+            ReadOnlyContext.restore(previous);
         }
-        execute(new ExecuteStatementCallback());
     }
 
     /**
@@ -199,20 +396,51 @@ public class JdbcTemplate {
         Assert.notNull(sql, "SQL must not be null");
         Assert.notNull(rse, "ResultSetExtractor must not be null");
 
+        QueryKey key = coalescingKey(sql, null, rse);
+        if (key != null) {
+            return coalesce(key, new Supplier<T>() {
+                public T get() {
+                    return doQuery(sql, rse);
+                }
+            });
+        }
+        return doQuery(sql, rse);
+    }
+
+    private <T extends Object> T doQuery(final String sql, final ResultSetExtractor<T> rse) {
         log.debug("Executing SQL query [" + sql + "]");
 
-        class QueryStatementCallback implements StatementCallback<T> {
+        class QueryStatementCallback implements StatementCallback<T>, SqlProvider {
             public T doInStatement(Statement stmt) throws SQLException {
+                SqlExecution execution = currentExecution();
                 ResultSet rs = null;
                 try {
+                    long time = (execution != null ? System.nanoTime() : 0);
                     rs = stmt.executeQuery(sql);
-                    return rse.extractData(rs);
+                    if (execution != null) {
+                        time = execution.end(SqlPhase.EXECUTE, time);
+                    }
+                    T result = rse.extractData(rs);
+                    if (execution != null) {
+                        execution.end(SqlPhase.MAPPING, time);
+                        execution.addRowsReturned(result);
+                    }
+                    return result;
                 } finally {
                     JdbcUtils.closeResultSet(rs);
                 }
             }
+
+            public String getSql() {
+                return sql;
+            }
+        }
+        Boolean previous = ReadOnlyContext.bindReadOnlyIfUnset();
+        try {
+            return execute(new QueryStatementCallback());
+        } finally {
+            ReadOnlyContext.restore(previous);
         }
-        return execute(new QueryStatementCallback());
     }
 
     /**
@@ -331,14 +559,29 @@ public class JdbcTemplate {
         Assert.notNull(sql, "SQL must not be null");
         log.debug("Executing SQL update [" + sql + "]");
 
-        class UpdateStatementCallback implements StatementCallback<Integer> {
+        class UpdateStatementCallback implements StatementCallback<Integer>, SqlProvider {
             public Integer doInStatement(Statement stmt) throws SQLException {
+                SqlExecution execution = currentExecution();
+                long time = (execution != null ? System.nanoTime() : 0);
                 int rows = stmt.executeUpdate(sql);
+                if (execution != null) {
+                    execution.end(SqlPhase.EXECUTE, time);
+                    execution.addRowsAffected(rows);
+                }
                 log.debug("SQL update affected " + rows + " rows");
                 return new Integer(rows);
             }
+
+            public String getSql() {
+                return sql;
+            }
+        }
+        Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+        try {
+            return execute(new UpdateStatementCallback()).intValue();
+        } finally {
+            ReadOnlyContext.restore(previous);
         }
-        return execute(new UpdateStatementCallback()).intValue();
     }
 
     public int[] batchUpdate(final String[] sql) throws JDBCException {
@@ -347,6 +590,8 @@ public class JdbcTemplate {
 
         class BatchUpdateStatementCallback implements StatementCallback<int[]> {
             public int[] doInStatement(Statement stmt) throws SQLException, JDBCException {
+                SqlExecution execution = currentExecution();
+                long time = (execution != null ? System.nanoTime() : 0);
                 int[] rowsAffected = new int[sql.length];
                 if (JdbcUtils.supportsBatchUpdates(stmt.getConnection())) {
                     for (int i = 0; i < sql.length; i++) {
@@ -362,10 +607,19 @@ public class JdbcTemplate {
                         }
                     }
                 }
+                if (execution != null) {
+                    execution.end(SqlPhase.EXECUTE, time);
+                    execution.addRowsAffected(rowsAffected);
+                }
                 return rowsAffected;
             }
         }
-        return execute(new BatchUpdateStatementCallback());
+        Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+        try {
+            return execute(new BatchUpdateStatementCallback());
+        } finally {
+            ReadOnlyContext.restore(previous);
+        }
     }
 
     // -------------------------------------------------------------------------
@@ -395,10 +649,18 @@ public class JdbcTemplate {
         class ExecuteConnectionCallback implements ConnectionCallback<T> {
 
             public T doInConnection(Connection conn) throws SQLException {
+                SqlExecution execution = currentExecution();
+                if (execution != null && psc instanceof SqlProvider) {
+                    execution.setSql(((SqlProvider)psc).getSql());
+                }
                 PreparedStatement ps = null;
                 try {
+                    long time = (execution != null ? System.nanoTime() : 0);
                     ps = psc.createPreparedStatement(conn);
                     applyStatementSettings(ps);
+                    if (execution != null) {
+                        execution.end(SqlPhase.PREPARE, time);
+                    }
                     T result = action.doInPreparedStatement(ps);
                     handleWarnings(ps.getWarnings());
                     return result;
@@ -407,7 +669,7 @@ public class JdbcTemplate {
                     ps = null;
                     throw new JDBCException(ex);
                 } finally {
-                    JdbcUtils.closeStatement(ps);
+                    closeStatement(ps, execution);
                 }
             }
         }
@@ -446,21 +708,39 @@ public class JdbcTemplate {
 
         log.debug("Executing prepared SQL query");
 
-        return execute(psc, new PreparedStatementCallback<T>() {
-            public T doInPreparedStatement(PreparedStatement ps) throws SQLException {
-                ResultSet rs = null;
-                try {
-                    if (pss != null) {
-                        pss.setValues(ps);
+        Boolean previous = ReadOnlyContext.bindReadOnlyIfUnset();
+        try {
+            return execute(psc, new PreparedStatementCallback<T>() {
+                public T doInPreparedStatement(PreparedStatement ps) throws SQLException {
+                    SqlExecution execution = currentExecution();
+                    ResultSet rs = null;
+                    try {
+                        long time = (execution != null ? System.nanoTime() : 0);
+                        if (pss != null) {
+                            pss.setValues(ps);
+                            if (execution != null) {
+                                captureParameters(execution, pss);
+                            }
+                        }
+                        rs = ps.executeQuery();
+                        if (execution != null) {
+                            time = execution.end(SqlPhase.EXECUTE, time);
+                        }
+                        ResultSet rsToUse = rs;
+                        T result = rse.extractData(rsToUse);
+                        if (execution != null) {
+                            execution.end(SqlPhase.MAPPING, time);
+                            execution.addRowsReturned(result);
+                        }
+                        return result;
+                    } finally {
+                        JdbcUtils.closeResultSet(rs);
                     }
-                    rs = ps.executeQuery();
-                    ResultSet rsToUse = rs;
-                    return rse.extractData(rsToUse);
-                } finally {
-                    JdbcUtils.closeResultSet(rs);
                 }
-            }
-        });
+            });
+        } finally {
+            ReadOnlyContext.restore(previous);
+        }
     }
 
     /**
@@ -497,9 +777,146 @@ public class JdbcTemplate {
      * @return 查询结果
      * @throws JDBCException
      */
+    @SuppressWarnings("unchecked")
     public <T extends Object> T query(String sql, PreparedStatementSetter pss,
             ResultSetExtractor<T> rse) throws JDBCException {
-        return query(new SimplePreparedStatementCreator(sql), pss, rse);
+        // 只有RowMapper的结果可以分块查询后拼接
+        final boolean mergeable = (rse instanceof RowMapperResultSetExtractor);
+        List<InListStatement> statements = expandInLists(sql, pss, mergeable);
+        if (statements == null) {
+            return querySingle(sql, pss, rse);
+        }
+        if (statements.size() == 1) {
+            return querySingle(statements.get(0).getSql(), setterFor(statements.get(0)), rse);
+        }
+        final ResultSetExtractor<List<Object>> listExtractor = (ResultSetExtractor<List<Object>>)rse;
+        List<List<Object>> chunks = executeChunks(statements,
+                new Function<InListStatement, List<Object>>() {
+                    public List<Object> apply(InListStatement statement) {
+                        return querySingle(statement.getSql(), setterFor(statement),
+                                listExtractor);
+                    }
+                });
+        List<Object> results = new ArrayList<Object>();
+        for (List<Object> chunk : chunks) {
+            results.addAll(chunk);
+        }
+        return (T)results;
+    }
+
+    private <T extends Object> T querySingle(String sql, final PreparedStatementSetter pss,
+            final ResultSetExtractor<T> rse) throws JDBCException {
+        final PreparedStatementCreator psc = new SimplePreparedStatementCreator(sql);
+        QueryKey key = coalescingKey(sql, pss, rse);
+        if (key != null) {
+            return coalesce(key, new Supplier<T>() {
+                public T get() {
+                    return query(psc, pss, rse);
+                }
+            });
+        }
+        return query(psc, pss, rse);
+    }
+
+    /**
+     * 展开参数中的集合。调用者已经按集合长度写好占位符时（?的个数与参数个数不同）不展开。
+     * 
+     * @param chunkable 超过inListChunkSize的集合是否可以分块执行
+     * @return 展开后的语句；没有集合参数时返回null
+     */
+    private List<InListStatement> expandInLists(String sql, PreparedStatementSetter pss,
+            boolean chunkable) {
+        int chunkSize = (chunkable ? getInListChunkSize() : 0);
+        if (pss instanceof ArgPreparedStatementSetter) {
+            return InListStatement.expand(sql, ((ArgPreparedStatementSetter)pss).getArgs(), null,
+                    chunkSize);
+        } else if (pss instanceof ArgTypePreparedStatementSetter) {
+            ArgTypePreparedStatementSetter setter = (ArgTypePreparedStatementSetter)pss;
+            return InListStatement.expand(sql, setter.getArgs(), setter.getArgTypes(), chunkSize);
+        }
+        return null;
+    }
+
+    private static PreparedStatementSetter setterFor(InListStatement statement) {
+        return (statement.getArgTypes() != null ? new ArgTypePreparedStatementSetter(statement
+                .getArgs(), statement.getArgTypes()) : new ArgPreparedStatementSetter(statement
+                .getArgs()));
+    }
+
+    /**
+     * 执行分块的语句。设置了inListExecutor时第一块在调用线程中执行，其他块交给inListExecutor并行执行；
+     * 线程绑定到主库时（如在事务中）总是在调用线程中依次执行。任何一块失败时取消其他块并抛出异常。
+     * 
+     * @return 按块的顺序排列的结果
+     */
+    private <R> List<R> executeChunks(List<InListStatement> statements,
+            final Function<InListStatement, R> action) throws JDBCException {
+        List<R> results = new ArrayList<R>(statements.size());
+        Executor executor = getInListExecutor();
+        if (executor == null || Boolean.FALSE.equals(ReadOnlyContext.get())) {
+            for (InListStatement statement : statements) {
+                results.add(action.apply(statement));
+            }
+            return results;
+        }
+        List<FutureTask<R>> tasks = new ArrayList<FutureTask<R>>(statements.size() - 1);
+        try {
+            for (int i = 1; i < statements.size(); i++) {
+                final InListStatement statement = statements.get(i);
+                FutureTask<R> task = new FutureTask<R>(new Callable<R>() {
+                    public R call() {
+                        return action.apply(statement);
+                    }
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+            results.add(action.apply(statements.get(0)));
+            for (FutureTask<R> task : tasks) {
+                results.add(task.get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JDBCException("Interrupted while waiting for IN-list chunk queries", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new JDBCException(cause);
+        } finally {
+            for (FutureTask<R> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return 可以合并时返回查询的key，否则返回null
+     */
+    private QueryKey coalescingKey(String sql, PreparedStatementSetter pss,
+            ResultSetExtractor<?> rse) {
+        // 绑定到主库（如在事务中）的查询要看到自己的修改，不能使用其他线程的结果
+        if (!isCoalesceQueries() || Boolean.FALSE.equals(ReadOnlyContext.get())) {
+            return null;
+        }
+        return QueryKey.of(sql, pss, rse);
+    }
+
+    /**
+     * 与其他线程中相同的查询共享一次执行。每个调用者得到结果List的副本，但其中映射出的对象是共享的，
+     * queryForObject等返回的也是同一个对象。
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Object> T coalesce(QueryKey key, Supplier<T> query) {
+        T result = this.singleFlight.execute(key, query);
+        if (result instanceof List) {
+            result = (T)new ArrayList<Object>((List<?>)result);
+        }
+        return result;
     }
 
     /**
@@ -951,20 +1368,34 @@ public class JdbcTemplate {
             throws JDBCException {
         log.debug("Executing prepared SQL update");
 
-        Integer result = execute(psc, new PreparedStatementCallback<Integer>() {
-            public Integer doInPreparedStatement(PreparedStatement ps) throws SQLException {
-                if (pss != null) {
-                    pss.setValues(ps);
-                }
-                int rows = ps.executeUpdate();
-                if (log.isDebugEnabled()) {
-                    log.debug("SQL update affected " + rows + " rows");
-                }
-                return rows;
+        Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+        try {
+            Integer result = execute(psc, new PreparedStatementCallback<Integer>() {
+                public Integer doInPreparedStatement(PreparedStatement ps) throws SQLException {
+                    SqlExecution execution = currentExecution();
+                    long time = (execution != null ? System.nanoTime() : 0);
+                    if (pss != null) {
+                        pss.setValues(ps);
+                        if (execution != null) {
+                            captureParameters(execution, pss);
+                        }
+                    }
+                    int rows = ps.executeUpdate();
+                    if (execution != null) {
+                        execution.end(SqlPhase.EXECUTE, time);
+                        execution.addRowsAffected(rows);
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("SQL update affected " + rows + " rows");
+                    }
+                    return rows;
 
-            }
-        });
-        return result.intValue();
+                }
+            });
+            return result.intValue();
+        } finally {
+            ReadOnlyContext.restore(previous);
+        }
     }
 
     /**
@@ -988,7 +1419,14 @@ public class JdbcTemplate {
      * @throws JDBCException
      */
     public int update(String sql, PreparedStatementSetter pss) throws JDBCException {
-        return update(new SimplePreparedStatementCreator(sql), pss);
+        // 更新不分块：分成多条语句执行既不是原子的，NOT IN等条件下结果也不正确
+        List<InListStatement> statements = expandInLists(sql, pss, false);
+        if (statements == null) {
+            return update(new SimplePreparedStatementCreator(sql), pss);
+        }
+        InListStatement statement = statements.get(0);
+        return update(new SimplePreparedStatementCreator(statement.getSql()),
+                setterFor(statement));
     }
 
     /**
@@ -1027,9 +1465,509 @@ public class JdbcTemplate {
         return update(sql, new ArgPreparedStatementSetter(agrs));
     }
 
+    // -------------------------------------------------------------------------
+    // 使用PreparedStatement执行批量更新的方法
+    // -------------------------------------------------------------------------
+    /**
+     * 使用同一个PreparedStatement执行批量更新。每行参数由BatchPreparedStatementSetter设置后调用addBatch，
+     * 每累计batchChunkSize行执行一次executeBatch，避免一次批量过大。驱动不支持批量更新时逐行执行。
+     * 
+     * @param sql 预编译sql语句
+     * @param bpss 每行参数的设置回调
+     * @return 每一行影响的行数，与executeBatch的返回值含义相同
+     * @throws JDBCException
+     */
+    public int[] batchUpdate(String sql, final BatchPreparedStatementSetter bpss)
+            throws JDBCException {
+        Assert.notNull(bpss, "BatchPreparedStatementSetter must not be null");
+
+        log.debug("Executing SQL batch update [" + sql + "]");
+
+        PreparedStatementCallback<int[]> action = new PreparedStatementCallback<int[]>() {
+
+            public int[] doInPreparedStatement(PreparedStatement ps) throws SQLException {
+                int batchSize = bpss.getBatchSize();
+                int[] rowsAffected = new int[batchSize];
+                if (!JdbcUtils.supportsBatchUpdates(ps.getConnection())) {
+                    for (int i = 0; i < batchSize; i++) {
+                        bpss.setValues(ps, i);
+                        rowsAffected[i] = ps.executeUpdate();
+                    }
+                    return rowsAffected;
+                }
+                int chunkSize = getBatchChunkSize();
+                int executed = 0;
+                for (int i = 0; i < batchSize; i++) {
+                    bpss.setValues(ps, i);
+                    ps.addBatch();
+                    if (chunkSize > 0 && i + 1 - executed == chunkSize) {
+                        executed = executeBatch(ps, rowsAffected, executed);
+                    }
+                }
+                if (executed < batchSize) {
+                    executeBatch(ps, rowsAffected, executed);
+                }
+                return rowsAffected;
+            }
+        };
+        Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+        try {
+            return execute(sql, action);
+        } finally {
+            ReadOnlyContext.restore(previous);
+        }
+    }
+
+    /**
+     * 执行已经加入的批量语句，把结果复制到rowsAffected中
+     * 
+     * @return 已经执行的总行数
+     */
+    private int executeBatch(PreparedStatement ps, int[] rowsAffected, int offset)
+            throws SQLException {
+        SqlExecution execution = currentExecution();
+        long time = (execution != null ? System.nanoTime() : 0);
+        int[] rows = ps.executeBatch();
+        if (execution != null) {
+            execution.end(SqlPhase.EXECUTE, time);
+            execution.addRowsAffected(rows);
+        }
+        System.arraycopy(rows, 0, rowsAffected, offset, rows.length);
+        if (log.isDebugEnabled()) {
+            log.debug("Executed batch of " + rows.length + " statements");
+        }
+        return offset + rows.length;
+    }
+
+    /**
+     * 使用同一个PreparedStatement执行批量更新，参见
+     * {@link #batchUpdate(String, BatchPreparedStatementSetter)}
+     * 
+     * <pre>
+     * 注意：
+     *   每个Object[]中的sql参数顺序必须与sql语句中的保持一致。
+     * </pre>
+     * 
+     * @param sql 预编译sql语句
+     * @param batchArgs 每一行的sql参数数组
+     * @return 每一行影响的行数
+     * @throws JDBCException
+     */
+    public int[] batchUpdate(String sql, final List<Object[]> batchArgs) throws JDBCException {
+        Assert.notNull(batchArgs, "Batch arguments must not be null");
+        int[] rowsAffected = rewrittenBatchUpdate(sql, batchArgs, null);
+        if (rowsAffected != null) {
+            return rowsAffected;
+        }
+        return batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                new ArgPreparedStatementSetter(batchArgs.get(i)).setValues(ps);
+            }
+
+            public int getBatchSize() {
+                return batchArgs.size();
+            }
+        });
+    }
+
+    /**
+     * 使用同一个PreparedStatement执行批量更新，参见
+     * {@link #batchUpdate(String, BatchPreparedStatementSetter)}
+     * 
+     * <pre>
+     * 注意：
+     *   1、每个Object[]中的sql参数顺序必须与sql语句中的保持一致。
+     *   2、每个Object[]和argTypes中的顺序必须保持一致。
+     * </pre>
+     * 
+     * @param sql 预编译sql语句
+     * @param batchArgs 每一行的sql参数数组
+     * @param argTypes sql参数类型数组，所有行共用
+     * @return 每一行影响的行数
+     * @throws JDBCException
+     */
+    public int[] batchUpdate(String sql, final List<Object[]> batchArgs, final int[] argTypes)
+            throws JDBCException {
+        Assert.notNull(batchArgs, "Batch arguments must not be null");
+        int[] rowsAffected = rewrittenBatchUpdate(sql, batchArgs, argTypes);
+        if (rowsAffected != null) {
+            return rowsAffected;
+        }
+        return batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                new ArgTypePreparedStatementSetter(batchArgs.get(i), argTypes).setValues(ps);
+            }
+
+            public int getBatchSize() {
+                return batchArgs.size();
+            }
+        });
+    }
+
+    /**
+     * rewriteBatchedInserts为true时，把单行insert语句改写成多行语句执行批量插入
+     * 
+     * @return 每一行影响的行数；不能改写时返回null
+     */
+    private int[] rewrittenBatchUpdate(String sql, final List<Object[]> batchArgs,
+            final int[] argTypes) throws JDBCException {
+        if (!isRewriteBatchedInserts() || batchArgs.size() < 2) {
+            return null;
+        }
+        final MultiValuesInsert insert = MultiValuesInsert.parse(sql);
+        if (insert == null) {
+            return null;
+        }
+        int maxRowSize = 0;
+        for (Object[] args : batchArgs) {
+            if (args == null || args.length != insert.getPlaceholderCount()) {
+                return null;
+            }
+            maxRowSize = Math.max(maxRowSize, insert.estimateRowSize(args));
+        }
+        int rows = Math.min(MultiValuesInsert.MAX_PLACEHOLDERS / insert.getPlaceholderCount(),
+                (getMaxPacketSize() - sql.length()) / maxRowSize);
+        if (getBatchChunkSize() > 0) {
+            rows = Math.min(rows, getBatchChunkSize());
+        }
+        if (rows < 2) {
+            return null;
+        }
+        final int rowsPerStatement = rows;
+
+        log.debug("Executing SQL batch insert [" + sql + "] as multi-row statements of "
+                + rowsPerStatement + " rows");
+
+        ConnectionCallback<int[]> action = new ConnectionCallback<int[]>() {
+
+            public int[] doInConnection(Connection conn) throws SQLException {
+                SqlExecution execution = currentExecution();
+                if (execution != null) {
+                    execution.setSql(sql);
+                }
+                int batchSize = batchArgs.size();
+                int[] rowsAffected = new int[batchSize];
+                PreparedStatement ps = null;
+                int statementRows = 0;
+                try {
+                    for (int start = 0; start < batchSize; start += statementRows) {
+                        int count = Math.min(rowsPerStatement, batchSize - start);
+                        long time = (execution != null ? System.nanoTime() : 0);
+                        if (count != statementRows) {
+                            // 只有最后一组的行数可能不同
+                            JdbcUtils.closeStatement(ps);
+                            ps = null;
+                            ps = conn.prepareStatement(insert.getSql(count));
+                            applyStatementSettings(ps);
+                            statementRows = count;
+                        }
+                        if (execution != null) {
+                            time = execution.end(SqlPhase.PREPARE, time);
+                        }
+                        for (int row = 0; row < count; row++) {
+                            insert.setValues(ps, row, batchArgs.get(start + row), argTypes);
+                        }
+                        int updated = ps.executeUpdate();
+                        if (execution != null) {
+                            execution.end(SqlPhase.EXECUTE, time);
+                            execution.addRowsAffected(updated);
+                        }
+                        handleWarnings(ps.getWarnings());
+                        // 多行语句只返回总数，与行数一致时每行为1，否则无法区分每一行
+                        Arrays.fill(rowsAffected, start, start + count,
+                                updated == count ? 1 : Statement.SUCCESS_NO_INFO);
+                    }
+                    return rowsAffected;
+                } finally {
+                    closeStatement(ps, execution);
+                }
+            }
+        };
+        Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+        try {
+            return execute(action);
+        } finally {
+            ReadOnlyContext.restore(previous);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // 流式查询的方法
+    // -------------------------------------------------------------------------
+    /**
+     * 流式查询。返回的Stream在遍历时才逐行读取和映射，连接、PreparedStatement和ResultSet一直保持打开，
+     * 直到Stream被读完或者被关闭，适合导出大量数据。<br/>
+     * 对于MySQL，使用TYPE_FORWARD_ONLY、CONCUR_READ_ONLY的PreparedStatement并设置fetchSize为
+     * Integer.MIN_VALUE，让驱动逐行读取而不是把整个结果集读入内存；其他数据库使用模板的fetchSize。
+     * 
+     * <pre>
+     * 注意：
+     *   1、没有读完时必须关闭Stream，否则连接不会被释放。推荐使用：
+     *      try (Stream&lt;Admin&gt; stream = template.queryForStream(sql, pss, rowMapper)) {
+     *          stream.forEach(...);
+     *      }
+     *   2、Stream关闭之前，同一个连接上不能执行其他语句（MySQL驱动的限制）。
+     *   3、Stream不是线程安全的，也不应该并行遍历。
+     * </pre>
+     * 
+     * @param sql 预编译sql语句
+     * @param pss 参数设置器回调，可以为null
+     * @param rowMapper 结果处理回调
+     * @return 逐行映射的Stream
+     * @throws JDBCException
+     */
+    public <T extends Object> Stream<T> queryForStream(String sql, PreparedStatementSetter pss,
+            RowMapper<T> rowMapper) throws JDBCException {
+        final ResultSetIterator<T> iterator = queryForIterator(sql, pss, rowMapper);
+        Stream<T> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED), false);
+        return stream.onClose(new Runnable() {
+
+            public void run() {
+                iterator.close();
+            }
+        });
+    }
+
+    /**
+     * 流式查询，参见{@link #queryForStream(String, PreparedStatementSetter, RowMapper)}
+     * 
+     * @param sql 预编译sql语句
+     * @param rowMapper 结果处理回调
+     * @param args sql参数数组
+     * @param argTypes sql参数类型数组
+     * @return 逐行映射的Stream
+     * @throws JDBCException
+     */
+    public <T extends Object> Stream<T> queryForStream(String sql, RowMapper<T> rowMapper,
+            Object[] args, int[] argTypes) throws JDBCException {
+        return queryForStream(sql, new ArgTypePreparedStatementSetter(args, argTypes), rowMapper);
+    }
+
+    /**
+     * 流式查询，参见{@link #queryForStream(String, PreparedStatementSetter, RowMapper)}
+     * 
+     * @param sql 预编译sql语句
+     * @param rowMapper 结果处理回调
+     * @param args sql参数列表
+     * @return 逐行映射的Stream
+     * @throws JDBCException
+     */
+    public <T extends Object> Stream<T> queryForStream(String sql, RowMapper<T> rowMapper,
+            Object... args) throws JDBCException {
+        return queryForStream(sql, new ArgPreparedStatementSetter(args), rowMapper);
+    }
+
+    /**
+     * 流式查询，返回逐行映射的Iterator。读到最后一行时自动释放资源，提前结束时必须调用
+     * {@link ResultSetIterator#close()}。其他说明参见
+     * {@link #queryForStream(String, PreparedStatementSetter, RowMapper)}
+     * 
+     * @param sql 预编译sql语句
+     * @param pss 参数设置器回调，可以为null
+     * @param rowMapper 结果处理回调
+     * @return 逐行映射的Iterator
+     * @throws JDBCException
+     */
+    public <T extends Object> ResultSetIterator<T> queryForIterator(String sql,
+            PreparedStatementSetter pss, RowMapper<T> rowMapper) throws JDBCException {
+        Assert.notNull(sql, "SQL must not be null!");
+        Assert.notNull(rowMapper, "RowMapper is required");
+
+        log.debug("Executing streaming SQL query");
+
+        // 流式查询不分块，集合参数展开成一条语句
+        List<InListStatement> statements = expandInLists(sql, pss, false);
+        String sqlToUse = (statements != null ? statements.get(0).getSql() : sql);
+        PreparedStatementSetter pssToUse = (statements != null ? setterFor(statements.get(0))
+                : pss);
+
+        // 流式查询的映射和关闭发生在返回之后，只统计到执行完成为止
+        SqlExecution execution = (isRecording() ? SqlExecution.begin() : null);
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            if (execution != null) {
+                execution.setSql(sqlToUse);
+            }
+            long time = (execution != null ? System.nanoTime() : 0);
+            Boolean previous = ReadOnlyContext.bindReadOnlyIfUnset();
+            try {
+                con = obtainConnection();
+            } finally {
+                ReadOnlyContext.restore(previous);
+            }
+            if (execution != null) {
+                time = execution.end(SqlPhase.ACQUIRE, time);
+            }
+            ps = prepareStreamingStatement(con, sqlToUse);
+            if (execution != null) {
+                time = execution.end(SqlPhase.PREPARE, time);
+            }
+            if (pssToUse != null) {
+                pssToUse.setValues(ps);
+                if (execution != null) {
+                    captureParameters(execution, pssToUse);
+                }
+            }
+            rs = ps.executeQuery();
+            if (execution != null) {
+                execution.end(SqlPhase.EXECUTE, time);
+            }
+            handleWarnings(ps.getWarnings());
+            return new ResultSetIterator<T>(rs, rowMapper, new StatementResources(ps, con));
+        } catch (SQLException ex) {
+            if (execution != null) {
+                execution.setError(ex);
+            }
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            releaseConnection(con);
+            throw new JDBCException(ex);
+        } catch (RuntimeException ex) {
+            if (execution != null) {
+                execution.setError(ex);
+            }
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            releaseConnection(con);
+            throw ex;
+        } finally {
+            if (execution != null) {
+                record(execution);
+            }
+        }
+    }
+
+    /**
+     * 以Flow.Publisher的形式发布查询结果。每个订阅者各自执行一次查询，只有在订阅者request时才从
+     * ResultSet中读取和映射下一行，订阅者处理得慢时数据库的读取也随之变慢，不会在内存中缓存整个结果集。
+     * 结果读完、出错或订阅被取消时释放连接。其他说明参见
+     * {@link #queryForStream(String, PreparedStatementSetter, RowMapper)}
+     * 
+     * @param sql 预编译sql语句
+     * @param pss 参数设置器回调，可以为null
+     * @param rowMapper 结果处理回调
+     * @param executor 读取结果并发送给订阅者的Executor，为null时在调用request()的线程中执行
+     * @return 查询结果的Publisher
+     */
+    public <T extends Object> Flow.Publisher<T> queryPublisher(final String sql,
+            final PreparedStatementSetter pss, final RowMapper<T> rowMapper, Executor executor) {
+        Assert.notNull(sql, "SQL must not be null!");
+        Assert.notNull(rowMapper, "RowMapper is required");
+        return new ResultSetPublisher<T>(new Callable<ResultSetIterator<T>>() {
+
+            public ResultSetIterator<T> call() {
+                return queryForIterator(sql, pss, rowMapper);
+            }
+        }, executor);
+    }
+
+    /**
+     * 以Flow.Publisher的形式发布查询结果，在调用request()的线程中读取和发送数据。参见
+     * {@link #queryPublisher(String, PreparedStatementSetter, RowMapper, Executor)}
+     * 
+     * @param sql 预编译sql语句
+     * @param rowMapper 结果处理回调
+     * @param args sql参数列表
+     * @return 查询结果的Publisher
+     */
+    public <T extends Object> Flow.Publisher<T> queryPublisher(String sql, RowMapper<T> rowMapper,
+            Object... args) {
+        return queryPublisher(sql, new ArgPreparedStatementSetter(args), rowMapper, null);
+    }
+
+    /**
+     * 按键分页扫描大表，每页执行一条<code>WHERE key &gt; ? ORDER BY key LIMIT n</code>查询，
+     * 查询完立即释放连接。可以在返回的扫描器上调整每页行数、设置预取线程池或从断点继续，参见
+     * {@link KeysetScanner}
+     * 
+     * @param sql 基础查询，可以包含WHERE条件，不能包含ORDER BY、LIMIT等子句
+     * @param keyColumn 唯一且有序的键列
+     * @param pageSize 每页的行数
+     * @param rowMapper 结果处理回调
+     * @param args 基础查询的参数
+     * @return 按页返回结果的扫描器
+     * @throws JDBCException
+     */
+    public <T extends Object> KeysetScanner<T> scanByKey(String sql, String keyColumn,
+            int pageSize, RowMapper<T> rowMapper, Object... args) throws JDBCException {
+        return new KeysetScanner<T>(this, sql, keyColumn, pageSize, rowMapper, args);
+    }
+
+    /**
+     * 创建流式查询使用的PreparedStatement
+     * 
+     * @param con 数据库连接
+     * @param sql 预编译sql语句
+     * @throws SQLException
+     */
+    protected PreparedStatement prepareStreamingStatement(Connection con, String sql)
+            throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        applyStatementSettings(ps);
+        if (isMySQL(con)) {
+            // MySQL驱动只有在fetchSize为Integer.MIN_VALUE时才逐行读取结果集
+            ps.setFetchSize(Integer.MIN_VALUE);
+        }
+        return ps;
+    }
+
+    private boolean isMySQL(Connection con) throws SQLException {
+        Boolean result = this.mysql;
+        if (result == null) {
+            String productName = con.getMetaData().getDatabaseProductName();
+            result = Boolean.valueOf(productName != null
+                    && productName.toLowerCase().indexOf("mysql") >= 0);
+            this.mysql = result;
+        }
+        return result.booleanValue();
+    }
+
+    /**
+     * 流式查询的ResultSet关闭后，关闭PreparedStatement并释放连接
+     */
+    private class StatementResources implements Closeable {
+
+        private final Statement stmt;
+
+        private final Connection con;
+
+        StatementResources(Statement stmt, Connection con) {
+            this.stmt = stmt;
+            this.con = con;
+        }
+
+        public void close() {
+            try {
+                JdbcUtils.closeStatement(this.stmt);
+            } finally {
+                releaseConnection(this.con);
+            }
+        }
+    }
+
     // -------------------------------------------------------------------------
     // 一些工具类和工具方法
     // -------------------------------------------------------------------------
+    /**
+     * 关闭Statement，统计关闭的耗时
+     */
+    private void closeStatement(Statement stmt, SqlExecution execution) {
+        if (stmt == null) {
+            return;
+        }
+        long time = (execution != null ? System.nanoTime() : 0);
+        JdbcUtils.closeStatement(stmt);
+        if (execution != null) {
+            execution.end(SqlPhase.CLOSE, time);
+        }
+    }
+
     /**
      * 设置Statement的参数
      * 
@@ -1045,7 +1983,16 @@ public class JdbcTemplate {
         if (maxRows > 0) {
             stmt.setMaxRows(maxRows);
         }
-        stmt.setQueryTimeout(getQueryTimeout());
+        int queryTimeout = getQueryTimeout();
+        ConnectionHolder holder = TransactionContext.getConnectionHolder(getDataSource());
+        if (holder != null && holder.hasTimeout()) {
+            // 语句的超时时间不超过事务的剩余时间
+            int timeToLive = holder.getTimeToLiveInSeconds();
+            if (queryTimeout == 0 || timeToLive < queryTimeout) {
+                queryTimeout = timeToLive;
+            }
+        }
+        stmt.setQueryTimeout(queryTimeout);
     }
 
     /**
@@ -1069,7 +2016,8 @@ public class JdbcTemplate {
     /**
      * 一个简单的PreparedStatement创建器，根据构造方法传入的sql语句创建PreparedStatement对象
      */
-    private static class SimplePreparedStatementCreator implements PreparedStatementCreator {
+    private static class SimplePreparedStatementCreator implements PreparedStatementCreator,
+            SqlProvider {
 
         private final String sql;
 
@@ -1081,6 +2029,10 @@ public class JdbcTemplate {
         public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
             return con.prepareStatement(this.sql);
         }
+
+        public String getSql() {
+            return this.sql;
+        }
     }
 
     // 没有使用
@@ -1106,7 +2058,7 @@ public class JdbcTemplate {
     /**
      * RowCallbackHandler和ResultSetExtractor之间的一个适配器
      */
-    private static class RowCallbackHandlerResultSetExtractor implements ResultSetExtractor<Object> {
+    private class RowCallbackHandlerResultSetExtractor implements ResultSetExtractor<Object> {
 
         private final RowCallbackHandler rch;
 
@@ -1115,8 +2067,14 @@ public class JdbcTemplate {
         }
 
         public Object extractData(ResultSet rs) throws SQLException {
+            long rows = 0;
             while (rs.next()) {
                 this.rch.processRow(rs);
+                rows++;
+            }
+            SqlExecution execution = currentExecution();
+            if (execution != null) {
+                execution.addRowsReturned(rows);
             }
             return null;
         }
@@ -1164,4 +2122,178 @@ public class JdbcTemplate {
         this.queryTimeout = queryTimeout;
     }
 
+    /**
+     * @return the batchChunkSize
+     */
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    /**
+     * @param batchChunkSize 批量更新时每次executeBatch的最大行数，0表示所有行一次执行
+     */
+    public void setBatchChunkSize(int batchChunkSize) {
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    /**
+     * @return the rewriteBatchedInserts
+     */
+    public boolean isRewriteBatchedInserts() {
+        return rewriteBatchedInserts;
+    }
+
+    /**
+     * 设置为true时，batchUpdate(String, List)把<code>INSERT ... VALUES (?, ...)</code>语句改写成
+     * 一条语句插入多行，每条语句的行数受batchChunkSize、maxPacketSize和占位符数量上限的限制。
+     * 每行返回的影响行数为1；无法确定时（例如INSERT IGNORE、ON DUPLICATE KEY UPDATE）为
+     * Statement.SUCCESS_NO_INFO。
+     * 
+     * @param rewriteBatchedInserts the rewriteBatchedInserts to set
+     */
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        this.rewriteBatchedInserts = rewriteBatchedInserts;
+    }
+
+    /**
+     * @return the maxPacketSize
+     */
+    public int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    /**
+     * @param maxPacketSize 改写后的多行语句的最大字节数，应不大于数据库的max_allowed_packet
+     */
+    public void setMaxPacketSize(int maxPacketSize) {
+        this.maxPacketSize = maxPacketSize;
+    }
+
+    /**
+     * @return the inListChunkSize
+     */
+    public int getInListChunkSize() {
+        return inListChunkSize;
+    }
+
+    /**
+     * 参数中的集合（Collection或数组）对应sql中的一个?，执行时展开成<code>?, ?, ...</code>，
+     * 长度按1、2、4……1024分档，多出的位置重复最后一个值。超过inListChunkSize的集合拆成多块分别查询，
+     * 结果按顺序拼接。只有使用RowMapper的查询会分块，并且集合必须是顶层AND条件中的
+     * <code>col IN (?)</code>：前面有NOT、语句中有顶层的OR（各块的结果会重复或者互相矛盾），
+     * 或者含有ORDER BY、LIMIT、GROUP BY、DISTINCT、聚合函数等结果不能直接拼接的语句都不分块。
+     * 更新和删除从不分块，多块分别执行不是原子的，集合超过数据库的参数个数上限时会失败。
+     * 
+     * @param inListChunkSize 每块的最大长度，0表示不分块
+     */
+    public void setInListChunkSize(int inListChunkSize) {
+        this.inListChunkSize = inListChunkSize;
+    }
+
+    /**
+     * @return the sqlMetrics
+     */
+    public SqlMetrics getSqlMetrics() {
+        return sqlMetrics;
+    }
+
+    /**
+     * 设置接收执行统计的SqlMetrics，如{@link com.zy.jdbclib.metrics.DefaultSqlMetrics}。
+     * 每次调用记录获取连接、创建语句、执行、映射结果和关闭各阶段的耗时，以及返回和影响的行数。
+     * 
+     * @param sqlMetrics 为null时不统计
+     */
+    public void setSqlMetrics(SqlMetrics sqlMetrics) {
+        this.sqlMetrics = sqlMetrics;
+    }
+
+    /**
+     * @return the slowQueryThreshold
+     */
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    /**
+     * 设置慢查询的阈值。从获取连接到释放连接的总耗时超过阈值的执行，连同sql、通过参数数组设置的参数、
+     * 各阶段的耗时和行数一起写入{@link #setSlowQueryLog(SlowQueryLog) 慢查询日志}。
+     * 写日志在后台线程中进行，不阻塞执行线程。
+     * 
+     * @param slowQueryThreshold 阈值（毫秒），0表示不记录慢查询
+     */
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+        Assert.isTrue(slowQueryThreshold >= 0, "slowQueryThreshold must not be negative");
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    /**
+     * @return the slowQueryLog
+     */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * @param slowQueryLog 记录慢查询的日志，为null时使用共享的{@link SlowQueryLog#getDefault()}
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * @return the inListExecutor
+     */
+    public Executor getInListExecutor() {
+        return inListExecutor;
+    }
+
+    /**
+     * @param inListExecutor 并行执行IN列表分块查询的线程池，为null时在调用线程中依次执行
+     */
+    public void setInListExecutor(Executor inListExecutor) {
+        this.inListExecutor = inListExecutor;
+    }
+
+    /**
+     * @return the coalesceQueries
+     */
+    public boolean isCoalesceQueries() {
+        return coalesceQueries;
+    }
+
+    /**
+     * 设置为true时，使用RowMapper的查询（query、queryForObject、queryForList等）如果与正在执行的查询
+     * sql和参数都相同，不再单独执行，而是等待并使用同一个结果或异常，避免缓存过期时大量相同的查询同时到达数据库。
+     * 本模板执行的update、batchUpdate和execute之后的查询不会使用修改之前开始的查询的结果。
+     * <p>
+     * 合并的调用者得到各自的List，但其中的对象（以及queryForObject返回的对象）是共享的，不应修改。
+     * 
+     * @param coalesceQueries the coalesceQueries to set
+     */
+    public void setCoalesceQueries(boolean coalesceQueries) {
+        this.coalesceQueries = coalesceQueries;
+    }
+
+    /**
+     * @return the coalescingWindow
+     */
+    public long getCoalescingWindow() {
+        return this.singleFlight.getWindow();
+    }
+
+    /**
+     * @param coalescingWindow 查询完成后，在这段时间（毫秒）内到达的相同查询也直接使用其结果；
+     *            0表示只合并同时进行的查询。只有能够接受这段时间内数据延迟的应用才应设置。
+     */
+    public void setCoalescingWindow(long coalescingWindow) {
+        this.singleFlight.setWindow(coalescingWindow);
+    }
+
+    /**
+     * @return 因合并而没有执行的查询次数
+     */
+    public long getCoalescedQueryCount() {
+        return this.singleFlight.getCoalescedCount();
+    }
+
 }
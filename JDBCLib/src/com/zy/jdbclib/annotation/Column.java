@@ -0,0 +1,32 @@
+
+package com.zy.jdbclib.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定{@link JdbcEntity}实体类中一个属性对应的列名。没有指定时，列名可以是属性名或者下划线形式的属性名
+ * （如lastIp和last_ip），和BeanPropertyRowMapper的规则相同。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+    /**
+     * 列名
+     */
+    String value() default "";
+
+    /**
+     * 为false时该属性不参与映射
+     */
+    boolean mapped() default true;
+
+}
@@ -0,0 +1,28 @@
+
+package com.zy.jdbclib.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记一个实体类，编译时由processor目录中的JdbcEntityProcessor（放在-processorpath上）为它生成
+ * 不使用反射的RowMapper（实体类名 + "RowMapper"）和PreparedStatementSetter（实体类名 +
+ * "ParameterSetter"）。实体类需要有public的无参构造方法，属性需要有public的getter和setter。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface JdbcEntity {
+
+    /**
+     * 数据表名。设置后生成的ParameterSetter中包含该表的INSERT_SQL常量。
+     */
+    String table() default "";
+
+}
@@ -0,0 +1,91 @@
+
+package com.zy.jdbclib.cache;
+
+/**
+ * QueryCache统计信息的快照
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class CacheStats {
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long evictionCount;
+
+    private final long expirationCount;
+
+    private final long invalidationCount;
+
+    private final int size;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount,
+            long invalidationCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.invalidationCount = invalidationCount;
+        this.size = size;
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return 未命中次数，包括过期和失效的条目
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return 因超过容量被淘汰的条目数
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return 读取时已过期的条目数
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * @return 读取时因表被修改而失效的条目数
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * @return the size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return 命中率，没有请求时为1
+     */
+    public double getHitRate() {
+        long requests = this.hitCount + this.missCount;
+        return (requests == 0 ? 1.0 : (double)this.hitCount / requests);
+    }
+
+    public String toString() {
+        return "CacheStats[hits=" + this.hitCount + ", misses=" + this.missCount + ", hitRate="
+                + String.format("%.3f", getHitRate()) + ", evictions=" + this.evictionCount
+                + ", expirations=" + this.expirationCount + ", invalidations="
+                + this.invalidationCount + ", size=" + this.size + "]";
+    }
+
+}
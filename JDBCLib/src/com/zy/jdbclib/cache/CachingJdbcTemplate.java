@@ -0,0 +1,391 @@
+
+package com.zy.jdbclib.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import com.zy.jdbclib.JdbcTemplate;
+import com.zy.jdbclib.core.BatchPreparedStatementSetter;
+import com.zy.jdbclib.core.ConnectionCallback;
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.core.PreparedStatementCallback;
+import com.zy.jdbclib.core.PreparedStatementCreator;
+import com.zy.jdbclib.core.PreparedStatementSetter;
+import com.zy.jdbclib.core.ResultSetExtractor;
+import com.zy.jdbclib.core.SqlProvider;
+import com.zy.jdbclib.core.StatementCallback;
+import com.zy.jdbclib.dataSource.ReadOnlyContext;
+import com.zy.jdbclib.transaction.TransactionContext;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.QueryKey;
+import com.zy.jdbclib.utils.SqlFingerprint;
+import com.zy.jdbclib.utils.SqlTables;
+
+/**
+ * 带查询结果缓存的JdbcTemplate。query、queryForObject、queryForList、queryForMap等使用RowMapper的查询，
+ * 以sql语句、参数和RowMapper为key缓存结果；只有设置了有效时间（TTL）的sql才会被缓存。
+ * <p>
+ * 通过本模板执行的update、batchUpdate和execute会使引用了被修改表的缓存失效；不能确定修改了哪些表时
+ * （如execute(ConnectionCallback)、没有实现{@link SqlProvider}的回调）使所有缓存失效。
+ * 其他途径（其他进程、存储过程、直接使用连接）对数据的修改不会被发现，只能等待缓存过期，TTL应按可以接受的
+ * 数据延迟设置。线程被绑定到主库（{@link ReadOnlyContext}为false，如在事务中）时不读取也不写入缓存。
+ * <p>
+ * 缓存的结果在调用者之间共享，返回的List不能修改，其中的对象也不应修改。RowMapper按equals()区分，
+ * 库中的RowMapper对相同的映射相等；自定义的RowMapper应该复用同一个实例或实现equals()，否则每次都不会命中。
+ *
+ * <pre>
+ * CachingJdbcTemplate template = new CachingJdbcTemplate(dataSource);
+ * template.setTtl(&quot;select * from province where id=?&quot;, 60 * 60 * 1000);
+ * Province p = template.queryForObject(&quot;select * from province where id=?&quot;, mapper, id);
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class CachingJdbcTemplate extends JdbcTemplate {
+
+    private final QueryCache cache;
+
+    /** 以sql的指纹为key */
+    private final Map<String, Long> ttls = new ConcurrentHashMap<String, Long>();
+
+    /** 没有单独设置TTL的sql使用的TTL（毫秒），0表示不缓存 */
+    private long defaultTtl = 0;
+
+    /** 当前线程正在执行本模板的方法时不为null，其内部调用的execute不再使缓存失效 */
+    private final ThreadLocal<Boolean> inTemplateCall = new ThreadLocal<Boolean>();
+
+    public CachingJdbcTemplate() {
+        this.cache = new QueryCache();
+    }
+
+    public CachingJdbcTemplate(DataSource dataSource) {
+        this(dataSource, new QueryCache());
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @param cache 使用的缓存，可以由多个模板共享
+     */
+    public CachingJdbcTemplate(DataSource dataSource, QueryCache cache) {
+        super(dataSource);
+        Assert.notNull(cache, "cache must not be null");
+        this.cache = cache;
+    }
+
+    public <T extends Object> T query(String sql, ResultSetExtractor<T> rse) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            QueryKey key = cacheKey(sql, null, rse);
+            if (key == null) {
+                return super.query(sql, rse);
+            }
+            T cached = getCached(key);
+            if (cached != null) {
+                return cached;
+            }
+            long[] versions = this.cache.versions(SqlTables.referencedTables(sql));
+            return putCached(key, super.query(sql, rse), versions);
+        } finally {
+            exit(previous);
+        }
+    }
+
+    public <T extends Object> T query(String sql, PreparedStatementSetter pss,
+            ResultSetExtractor<T> rse) throws JDBCException {
+        QueryKey key = cacheKey(sql, pss, rse);
+        if (key == null) {
+            return super.query(sql, pss, rse);
+        }
+        T cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+        long[] versions = this.cache.versions(SqlTables.referencedTables(sql));
+        return putCached(key, super.query(sql, pss, rse), versions);
+    }
+
+    /**
+     * 使用PreparedStatementCreator的查询不缓存，但执行时不能使缓存失效
+     */
+    public <T extends Object> T query(PreparedStatementCreator psc, PreparedStatementSetter pss,
+            ResultSetExtractor<T> rse) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.query(psc, pss, rse);
+        } finally {
+            exit(previous);
+        }
+    }
+
+    /**
+     * @return 可以缓存时返回key，否则返回null
+     */
+    private QueryKey cacheKey(String sql, PreparedStatementSetter pss, ResultSetExtractor<?> rse) {
+        if (getTtl(sql) <= 0 || Boolean.FALSE.equals(ReadOnlyContext.get())) {
+            return null;
+        }
+        return QueryKey.of(sql, pss, rse);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getCached(QueryKey key) {
+        return (T)this.cache.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T putCached(QueryKey key, T result, long[] versions) {
+        if (result instanceof List) {
+            result = (T)Collections.unmodifiableList((List<?>)result);
+        }
+        this.cache.put(key, result, getTtl(key.getSql()), SqlTables.referencedTables(key.getSql()),
+                versions);
+        return result;
+    }
+
+    public <T extends Object> T execute(ConnectionCallback<T> action) throws JDBCException {
+        if (this.inTemplateCall.get() != null) {
+            return super.execute(action);
+        }
+        Boolean previous = enter();
+        try {
+            return super.execute(action);
+        } finally {
+            exit(previous);
+            invalidate(sqlOf(action));
+        }
+    }
+
+    public <T extends Object> T execute(StatementCallback<T> action) throws JDBCException {
+        if (this.inTemplateCall.get() != null) {
+            return super.execute(action);
+        }
+        Boolean previous = enter();
+        try {
+            return super.execute(action);
+        } finally {
+            exit(previous);
+            invalidate(sqlOf(action));
+        }
+    }
+
+    public <T extends Object> T execute(PreparedStatementCreator psc,
+            PreparedStatementCallback<T> action) throws JDBCException {
+        if (this.inTemplateCall.get() != null) {
+            return super.execute(psc, action);
+        }
+        Boolean previous = enter();
+        try {
+            return super.execute(psc, action);
+        } finally {
+            exit(previous);
+            invalidate(sqlOf(psc));
+        }
+    }
+
+    public <T extends Object> T execute(String sql, PreparedStatementCallback<T> action)
+            throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.execute(sql, action);
+        } finally {
+            exit(previous);
+            invalidate(sql);
+        }
+    }
+
+    public void execute(String sql) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            super.execute(sql);
+        } finally {
+            exit(previous);
+            invalidate(sql);
+        }
+    }
+
+    public int update(String sql) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.update(sql);
+        } finally {
+            exit(previous);
+            invalidate(sql);
+        }
+    }
+
+    public int[] batchUpdate(String[] sql) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.batchUpdate(sql);
+        } finally {
+            exit(previous);
+            for (String s : sql) {
+                invalidate(s);
+            }
+        }
+    }
+
+    public int update(PreparedStatementCreator psc, PreparedStatementSetter pss)
+            throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.update(psc, pss);
+        } finally {
+            exit(previous);
+            invalidate(sqlOf(psc));
+        }
+    }
+
+    public int[] batchUpdate(String sql, BatchPreparedStatementSetter bpss) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.batchUpdate(sql, bpss);
+        } finally {
+            exit(previous);
+            invalidate(sql);
+        }
+    }
+
+    public int[] batchUpdate(String sql, List<Object[]> batchArgs) throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.batchUpdate(sql, batchArgs);
+        } finally {
+            exit(previous);
+            invalidate(sql);
+        }
+    }
+
+    public int[] batchUpdate(String sql, List<Object[]> batchArgs, int[] argTypes)
+            throws JDBCException {
+        Boolean previous = enter();
+        try {
+            return super.batchUpdate(sql, batchArgs, argTypes);
+        } finally {
+            exit(previous);
+            invalidate(sql);
+        }
+    }
+
+    private Boolean enter() {
+        Boolean previous = this.inTemplateCall.get();
+        this.inTemplateCall.set(Boolean.TRUE);
+        return previous;
+    }
+
+    private void exit(Boolean previous) {
+        if (previous == null) {
+            this.inTemplateCall.remove();
+        }
+    }
+
+    /**
+     * @return 回调实现了SqlProvider时返回其sql，否则返回null
+     */
+    private static String sqlOf(Object callback) {
+        return (callback instanceof SqlProvider ? ((SqlProvider)callback).getSql() : null);
+    }
+
+    /**
+     * 使sql语句修改的表的缓存失效。执行失败时也调用，批量语句可能已经部分执行。
+     * 在事务中时提交后再失效一次，避免其他线程在提交之前把旧数据重新放入缓存。
+     */
+    private void invalidate(String sql) {
+        final String[] tables = (sql != null ? SqlTables.modifiedTables(sql) : null);
+        if (tables != null && tables.length == 0) {
+            // SELECT、SET等不修改表的语句
+            return;
+        }
+        invalidateTables(tables);
+        TransactionContext.registerAfterCommit(getDataSource(), new Runnable() {
+            public void run() {
+                invalidateTables(tables);
+            }
+        });
+    }
+
+    /**
+     * @param tables 表名，为null时使所有缓存失效
+     */
+    private void invalidateTables(String[] tables) {
+        if (tables == null) {
+            this.cache.invalidateAll();
+        } else {
+            for (String table : tables) {
+                this.cache.invalidate(table);
+            }
+        }
+    }
+
+    /**
+     * 使引用了给定表的缓存失效，用于通过其他途径修改了数据的情况
+     *
+     * @param table 表名
+     */
+    public void invalidateTable(String table) {
+        this.cache.invalidate(table);
+    }
+
+    /**
+     * 设置sql语句的缓存有效时间
+     *
+     * @param sql 查询的sql语句，按{@link SqlFingerprint}匹配，只有常量或IN列表长度不同的语句使用同一个设置
+     * @param ttl 有效时间（毫秒），小于等于0表示不缓存
+     */
+    public void setTtl(String sql, long ttl) {
+        Assert.notNull(sql, "SQL must not be null!");
+        this.ttls.put(SqlFingerprint.of(sql).getNormalizedSql(), Long.valueOf(ttl));
+    }
+
+    /**
+     * @param ttls sql语句到有效时间（毫秒）的映射
+     */
+    public void setTtls(Map<String, Long> ttls) {
+        this.ttls.clear();
+        for (Map.Entry<String, Long> entry : ttls.entrySet()) {
+            setTtl(entry.getKey(), entry.getValue().longValue());
+        }
+    }
+
+    /**
+     * @return sql语句的缓存有效时间（毫秒）
+     */
+    public long getTtl(String sql) {
+        Long ttl = this.ttls.get(SqlFingerprint.of(sql).getNormalizedSql());
+        return (ttl != null ? ttl.longValue() : this.defaultTtl);
+    }
+
+    /**
+     * @return the defaultTtl
+     */
+    public long getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    /**
+     * @param defaultTtl 没有单独设置TTL的sql使用的TTL（毫秒），0表示不缓存
+     */
+    public void setDefaultTtl(long defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * @return the cache
+     */
+    public QueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return 缓存统计信息的快照
+     */
+    public CacheStats getCacheStats() {
+        return this.cache.getStats();
+    }
+
+}
@@ -0,0 +1,257 @@
+
+package com.zy.jdbclib.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 查询结果缓存。每个条目有自己的过期时间，超过容量时按LRU淘汰；条目分散在多个分段中，每个分段单独加锁，
+ * 减少并发读取时的竞争。
+ * <p>
+ * 失效按表进行：每个表有一个版本号，条目记录查询执行前各个引用表的版本，读取时版本不一致即视为失效。
+ * 查询执行期间发生的修改也会使结果失效，不会把修改前读到的数据以新版本缓存下来。失效的条目不会立即删除，
+ * 而是在读取时或被LRU淘汰时删除。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class QueryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final int maxSize;
+
+    private final ConcurrentHashMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** invalidateAll()时增加，使所有条目失效 */
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize 缓存的最大条目数
+     */
+    public QueryCache(int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than zero");
+        this.maxSize = maxSize;
+        int count = Math.min(MAX_SEGMENTS, maxSize);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment((maxSize + count - 1) / count);
+        }
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.segments[Math.floorMod(h, this.segments.length)];
+    }
+
+    /**
+     * @return 缓存的值；没有、已过期或已失效时返回null
+     */
+    public Object get(Object key) {
+        Segment segment = segmentFor(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry == null) {
+            this.misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            this.expirations.increment();
+        } else if (!isCurrent(entry.tables, entry.versions)) {
+            this.invalidations.increment();
+        } else {
+            this.hits.increment();
+            return entry.value;
+        }
+        synchronized (segment) {
+            segment.remove(key, entry);
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    /**
+     * 在执行查询之前调用，取得引用表的当前版本，查询完成后传给put()
+     *
+     * @param tables 查询引用的表
+     * @return 各个表的版本，最后一个元素为全局版本
+     */
+    public long[] versions(String[] tables) {
+        long[] versions = new long[tables.length + 1];
+        versions[tables.length] = this.globalVersion.get();
+        for (int i = 0; i < tables.length; i++) {
+            versions[i] = tableVersion(tables[i]);
+        }
+        return versions;
+    }
+
+    /**
+     * 放入缓存。如果查询期间引用的表已经被修改，不放入。
+     *
+     * @param key 查询的key
+     * @param value 查询结果，不能为null
+     * @param ttl 有效时间（毫秒）
+     * @param tables 查询引用的表
+     * @param versions 查询执行前调用versions()得到的版本
+     */
+    public void put(Object key, Object value, long ttl, String[] tables, long[] versions) {
+        Assert.notNull(value, "Cached value must not be null");
+        if (ttl <= 0 || !isCurrent(tables, versions)) {
+            return;
+        }
+        Entry entry = new Entry(value, System.nanoTime() + ttl * 1000000L, tables, versions);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    private boolean isCurrent(String[] tables, long[] versions) {
+        if (versions[tables.length] != this.globalVersion.get()) {
+            return false;
+        }
+        for (int i = 0; i < tables.length; i++) {
+            if (versions[i] != tableVersion(tables[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long tableVersion(String table) {
+        AtomicLong version = this.tableVersions.get(table);
+        return (version != null ? version.get() : 0);
+    }
+
+    /**
+     * 使引用了给定表的所有条目失效
+     *
+     * @param table 表名，不区分大小写
+     */
+    public void invalidate(String table) {
+        Assert.notNull(table, "table must not be null");
+        String key = table.toLowerCase();
+        AtomicLong version = this.tableVersions.get(key);
+        if (version == null) {
+            AtomicLong existing = this.tableVersions.putIfAbsent(key, version = new AtomicLong());
+            if (existing != null) {
+                version = existing;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * 使所有条目失效
+     */
+    public void invalidateAll() {
+        this.globalVersion.incrementAndGet();
+    }
+
+    /**
+     * 删除所有条目，不影响统计
+     */
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return 当前的条目数，包括已过期、已失效但还没有删除的条目
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 统计信息的快照
+     */
+    public CacheStats getStats() {
+        return new CacheStats(this.hits.sum(), this.misses.sum(), this.evictions.sum(),
+                this.expirations.sum(), this.invalidations.sum(), size());
+    }
+
+    /**
+     * @return the maxSize
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private static class Entry {
+
+        final Object value;
+
+        final long expiresAt;
+
+        final String[] tables;
+
+        final long[] versions;
+
+        Entry(Object value, long expiresAt, String[] tables, long[] versions) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.tables = tables;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的LinkedHashMap，超过容量时删除最久没有访问的条目。调用者负责加锁。
+     */
+    private class Segment extends LinkedHashMap<Object, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+            if (size() > this.capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+
+package com.zy.jdbclib.core;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 批量更新时为每一行设置PreparedStatement参数的回调接口，由JdbcTemplate的batchUpdate方法调用。
+ * 
+ * @version 1.1
+ * @since 1.1
+ */
+public interface BatchPreparedStatementSetter {
+
+	/**
+	 * 为第i行设置参数
+	 * 
+	 * @param ps 需要设置参数的PreparedStatement
+	 * @param i 行号，从0开始
+	 * @throws SQLException
+	 */
+	public void setValues(PreparedStatement ps, int i) throws SQLException;
+
+	/**
+	 * @return 批量更新的总行数
+	 */
+	public int getBatchSize();
+
+}
@@ -69,4 +69,15 @@ public class ColumnMapRowMapper implements RowMapper<Map<String, Object>> {
 		return obj;
 	}
 
+	/**
+	 * ColumnMapRowMapper没有状态，同类型的实例相等
+	 */
+	public boolean equals(Object obj) {
+		return (obj != null && obj.getClass() == getClass());
+	}
+
+	public int hashCode() {
+		return getClass().hashCode();
+	}
+
 }
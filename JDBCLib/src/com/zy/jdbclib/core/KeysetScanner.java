@@ -0,0 +1,486 @@
+
+package com.zy.jdbclib.core;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.zy.jdbclib.JdbcTemplate;
+import com.zy.jdbclib.dataSource.ReadOnlyContext;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.JdbcUtils;
+
+/**
+ * 按唯一且有序的键分页扫描大表。每一页执行一条
+ * <code>... WHERE (原条件) AND key &gt; ? ORDER BY key LIMIT n</code>，
+ * 不使用OFFSET，翻到多深都只读取一页的数据，每页执行完立即释放连接。
+ * <p>
+ * next()返回一页的结果，{@link #getLastKey()}是已返回的最后一页的最后一个键，
+ * 保存下来后用{@link #setStartAfter(Object)}可以从该位置继续扫描。设置了prefetchExecutor时，
+ * 返回一页的同时在prefetchExecutor中查询下一页，与调用者处理当前页重叠。
+ * <p>
+ * 基础查询不能包含ORDER BY、LIMIT、GROUP BY、HAVING、UNION和FOR UPDATE；LIMIT语法适用于MySQL、
+ * PostgreSQL和SQLite。扫描器不是线程安全的。
+ *
+ * <pre>
+ * KeysetScanner&lt;Admin&gt; scanner = template.scanByKey(&quot;select * from admin where status = ?&quot;,
+ *         &quot;id&quot;, 1000, rowMapper, 1);
+ * scanner.setStartAfter(checkpoint);
+ * while (scanner.hasNext()) {
+ *     process(scanner.next());
+ *     checkpoint = scanner.getLastKey();
+ * }
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class KeysetScanner<T extends Object> implements Iterator<List<T>>, Closeable {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RowMapper<T> rowMapper;
+
+    private final Object[] args;
+
+    /** 结果集中键的列名 */
+    private final String keyLabel;
+
+    /** 第一页的sql，后面拼接LIMIT的行数 */
+    private final String firstPageSql;
+
+    /** 后续页的sql，最后一个参数是上一页的最后一个键 */
+    private final String nextPageSql;
+
+    private volatile int pageSize;
+
+    private Executor prefetchExecutor;
+
+    /** 已返回的最后一页的最后一个键 */
+    private Object lastKey;
+
+    /** 已查询但还没有返回的页 */
+    private Page<T> pending;
+
+    private FutureTask<Page<T>> prefetch;
+
+    private boolean started = false;
+
+    private boolean exhausted = false;
+
+    private boolean closed = false;
+
+    /**
+     * @param jdbcTemplate 执行查询的JdbcTemplate
+     * @param sql 基础查询，可以包含WHERE条件
+     * @param keyColumn 唯一且有序的键列，如<code>id</code>或<code>a.id</code>
+     * @param pageSize 每页的行数
+     * @param rowMapper 结果处理回调
+     * @param args 基础查询的参数
+     * @throws JDBCException 基础查询包含不支持的子句时
+     */
+    public KeysetScanner(JdbcTemplate jdbcTemplate, String sql, String keyColumn, int pageSize,
+            RowMapper<T> rowMapper, Object... args) throws JDBCException {
+        Assert.notNull(jdbcTemplate, "JdbcTemplate must not be null");
+        Assert.notNull(sql, "SQL must not be null!");
+        Assert.hasText(keyColumn, "Key column must not be empty");
+        Assert.notNull(rowMapper, "RowMapper is required");
+        Assert.isTrue(pageSize > 0, "Page size must be greater than 0");
+        this.jdbcTemplate = jdbcTemplate;
+        this.rowMapper = rowMapper;
+        this.args = (args != null ? args : new Object[0]);
+        this.pageSize = pageSize;
+        this.keyLabel = keyLabel(keyColumn);
+
+        String base = sql.trim();
+        if (base.endsWith(";")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        int whereEnd = whereEnd(base);
+        String orderBy = " ORDER BY " + keyColumn + " LIMIT ";
+        this.firstPageSql = base + orderBy;
+        if (whereEnd < 0) {
+            this.nextPageSql = base + " WHERE " + keyColumn + " > ?" + orderBy;
+        } else {
+            this.nextPageSql = base.substring(0, whereEnd) + " (" + base.substring(whereEnd)
+                    + ") AND " + keyColumn + " > ?" + orderBy;
+        }
+    }
+
+    /**
+     * @return 去掉表名和引号后的列名
+     */
+    private static String keyLabel(String keyColumn) {
+        String label = keyColumn.trim();
+        int dot = label.lastIndexOf('.');
+        if (dot >= 0) {
+            label = label.substring(dot + 1);
+        }
+        if (label.length() > 1 && (label.charAt(0) == '`' || label.charAt(0) == '"')) {
+            label = label.substring(1, label.length() - 1);
+        }
+        return label;
+    }
+
+    /**
+     * 查找顶层的WHERE关键字，不包括子查询、字符串和注释中的关键字
+     *
+     * @return WHERE后面的位置，没有WHERE时返回-1
+     * @throws JDBCException 包含不支持的子句时
+     */
+    private static int whereEnd(String sql) throws JDBCException {
+        int whereEnd = -1;
+        int depth = 0;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                char quote = c;
+                for (i++; i < length; i++) {
+                    c = sql.charAt(i);
+                    if (c == '\\' && quote == '\'') {
+                        i++;
+                    } else if (c == quote) {
+                        break;
+                    }
+                }
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = (end < 0 ? length : end + 2);
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                if (depth > 0) {
+                    continue;
+                }
+                String word = sql.substring(start, i).toLowerCase();
+                if ("where".equals(word)) {
+                    whereEnd = i;
+                } else if (isClause(sql, word, i)) {
+                    throw new JDBCException("Keyset scan does not support " + word.toUpperCase()
+                            + " in the base query: " + sql);
+                }
+            } else {
+                i++;
+            }
+        }
+        return whereEnd;
+    }
+
+    /**
+     * offset、fetch、for、lock也可以是列名，只有后面跟着子句的其余部分时才是子句
+     *
+     * @param word 顶层的单词（小写）
+     * @param end 单词后面的位置
+     * @return 单词是否开始一个不支持的子句
+     */
+    private static boolean isClause(String sql, String word, int end) {
+        if ("limit".equals(word) || "having".equals(word) || "union".equals(word)) {
+            return true;
+        } else if ("order".equals(word) || "group".equals(word)) {
+            return "by".equals(nextWord(sql, end));
+        } else if ("for".equals(word)) {
+            // FOR UPDATE、FOR SHARE、FOR NO KEY UPDATE、FOR KEY SHARE
+            String next = nextWord(sql, end);
+            return "update".equals(next) || "share".equals(next) || "no".equals(next)
+                    || "key".equals(next);
+        } else if ("lock".equals(word)) {
+            // LOCK IN SHARE MODE
+            return "in".equals(nextWord(sql, end));
+        } else if ("offset".equals(word)) {
+            int next = skipWhitespace(sql, end);
+            return next < sql.length()
+                    && (Character.isDigit(sql.charAt(next)) || sql.charAt(next) == '?');
+        } else if ("fetch".equals(word)) {
+            String next = nextWord(sql, end);
+            return "first".equals(next) || "next".equals(next);
+        }
+        return false;
+    }
+
+    /**
+     * @return from之后的下一个单词（小写），后面不是单词时返回null
+     */
+    private static String nextWord(String sql, int from) {
+        int start = skipWhitespace(sql, from);
+        int end = start;
+        while (end < sql.length() && Character.isJavaIdentifierPart(sql.charAt(end))) {
+            end++;
+        }
+        return (end > start ? sql.substring(start, end).toLowerCase() : null);
+    }
+
+    private static int skipWhitespace(String sql, int from) {
+        int i = from;
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    public boolean hasNext() {
+        if (this.closed) {
+            return false;
+        }
+        if (this.pending == null) {
+            if (this.exhausted) {
+                return false;
+            }
+            this.started = true;
+            Page<T> page = takePrefetch();
+            if (page == null) {
+                page = fetch(this.lastKey, this.pageSize);
+            }
+            if (page.rows.isEmpty()) {
+                this.exhausted = true;
+                return false;
+            }
+            this.pending = page;
+        }
+        return true;
+    }
+
+    /**
+     * @return 下一页的结果，不可修改
+     * @throws NoSuchElementException 没有更多数据时
+     */
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Page<T> page = this.pending;
+        this.pending = null;
+        this.lastKey = page.lastKey;
+        if (page.rows.size() < page.size) {
+            // 不满一页说明已经读到最后，不再查询
+            this.exhausted = true;
+        } else {
+            schedulePrefetch(page.lastKey);
+        }
+        return page.rows;
+    }
+
+    /**
+     * 在prefetchExecutor中查询下一页。线程绑定到主库时（如在事务中）不预取，
+     * 因为其他线程中的查询看不到本线程的修改。
+     */
+    private void schedulePrefetch(final Object afterKey) {
+        Executor executor = this.prefetchExecutor;
+        if (executor == null || Boolean.FALSE.equals(ReadOnlyContext.get())) {
+            return;
+        }
+        final int size = this.pageSize;
+        FutureTask<Page<T>> task = new FutureTask<Page<T>>(new Callable<Page<T>>() {
+            public Page<T> call() {
+                return fetch(afterKey, size);
+            }
+        });
+        this.prefetch = task;
+        executor.execute(task);
+    }
+
+    /**
+     * @return 预取的页，没有预取时返回null
+     */
+    private Page<T> takePrefetch() throws JDBCException {
+        FutureTask<Page<T>> task = this.prefetch;
+        if (task == null) {
+            return null;
+        }
+        this.prefetch = null;
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            task.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new JDBCException("Interrupted while waiting for the next keyset page", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new JDBCException(cause);
+        }
+    }
+
+    private Page<T> fetch(Object afterKey, final int size) throws JDBCException {
+        String sql;
+        Object[] pageArgs;
+        if (afterKey == null) {
+            sql = this.firstPageSql + size;
+            pageArgs = this.args;
+        } else {
+            sql = this.nextPageSql + size;
+            pageArgs = new Object[this.args.length + 1];
+            System.arraycopy(this.args, 0, pageArgs, 0, this.args.length);
+            pageArgs[this.args.length] = afterKey;
+        }
+        return this.jdbcTemplate.query(sql, new ResultSetExtractor<Page<T>>() {
+            public Page<T> extractData(ResultSet rs) throws SQLException {
+                List<T> rows = new ArrayList<T>(size);
+                Object key = null;
+                int keyIndex = keyIndex(rs);
+                int rowNum = 0;
+                while (rs.next()) {
+                    rows.add(rowMapper.mapRow(rs, rowNum++));
+                    key = rs.getObject(keyIndex);
+                    if (key == null) {
+                        throw new JDBCException("Keyset column '" + keyLabel
+                                + "' must not be null");
+                    }
+                }
+                return new Page<T>(Collections.unmodifiableList(rows), key, size);
+            }
+        }, pageArgs);
+    }
+
+    /**
+     * @return 键列在结果集中的位置
+     * @throws JDBCException 查询结果中没有键列时
+     */
+    private int keyIndex(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int columnCount = rsmd.getColumnCount();
+        for (int index = 1; index <= columnCount; index++) {
+            if (this.keyLabel.equalsIgnoreCase(JdbcUtils.lookupColumnName(rsmd, index))) {
+                return index;
+            }
+        }
+        throw new JDBCException("Keyset column '" + this.keyLabel
+                + "' is not in the select list of the base query");
+    }
+
+    /**
+     * 取消预取的页。每页查询完就已经释放了连接，没有读完时不调用close()也不会泄漏连接。
+     */
+    public void close() {
+        this.closed = true;
+        this.pending = null;
+        FutureTask<Page<T>> task = this.prefetch;
+        if (task != null) {
+            this.prefetch = null;
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * @return 按页遍历的Stream，关闭Stream时调用{@link #close()}
+     */
+    public Stream<List<T>> pageStream() {
+        Stream<List<T>> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return stream.onClose(new Runnable() {
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    /**
+     * @return 逐行遍历的Stream，关闭Stream时调用{@link #close()}
+     */
+    public Stream<T> stream() {
+        return pageStream().flatMap(new Function<List<T>, Stream<T>>() {
+            public Stream<T> apply(List<T> rows) {
+                return rows.stream();
+            }
+        });
+    }
+
+    /**
+     * @return 已返回的最后一页的最后一个键，可以作为断点保存；还没有返回任何一页时为起始键
+     */
+    public Object getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * 从断点继续扫描，只返回键大于startAfter的行。必须在读取第一页之前调用。
+     *
+     * @param startAfter 上次扫描保存的{@link #getLastKey()}，为null时从头开始
+     */
+    public void setStartAfter(Object startAfter) {
+        Assert.state(!this.started, "Keyset scan has already started");
+        this.lastKey = startAfter;
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize 每页的行数，从下一次查询开始生效，可以在扫描过程中调整
+     */
+    public void setPageSize(int pageSize) {
+        Assert.isTrue(pageSize > 0, "Page size must be greater than 0");
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the prefetchExecutor
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * @param prefetchExecutor 预取下一页的线程池，为null时不预取
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * 查询到的一页
+     */
+    private static final class Page<T> {
+
+        final List<T> rows;
+
+        final Object lastKey;
+
+        /** 查询时的每页行数 */
+        final int size;
+
+        Page(List<T> rows, Object lastKey, int size) {
+            this.rows = rows;
+            this.lastKey = lastKey;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+
+package com.zy.jdbclib.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.JdbcUtils;
+
+/**
+ * 逐行读取ResultSet的Iterator，每次next()只映射当前一行，不在内存中保存整个结果集。
+ * 读到最后一行或出错时自动调用{@link #close()}；提前结束时必须由使用者调用close()，
+ * 它会关闭ResultSet，再调用构造时传入的resources关闭Statement、释放连接。
+ * 
+ * @version 1.1
+ * @since 1.1
+ */
+public class ResultSetIterator<T extends Object> implements Iterator<T>, Closeable {
+
+	private final ResultSet rs;
+
+	private final RowMapper<T> rowMapper;
+
+	private final Closeable resources;
+
+	private int rowNum = 0;
+
+	/** 是否已经调用rs.next()读到了下一行但还没有返回 */
+	private boolean hasPending = false;
+
+	private boolean closed = false;
+
+	/**
+	 * @param rs 需要读取的ResultSet
+	 * @param rowMapper 行映射回调
+	 * @param resources ResultSet关闭后需要释放的资源（Statement、连接），可以为null
+	 */
+	public ResultSetIterator(ResultSet rs, RowMapper<T> rowMapper, Closeable resources) {
+		Assert.notNull(rs, "ResultSet must not be null");
+		Assert.notNull(rowMapper, "RowMapper is required");
+		this.rs = rs;
+		this.rowMapper = rowMapper;
+		this.resources = resources;
+	}
+
+	public boolean hasNext() {
+		if (this.closed) {
+			return false;
+		}
+		if (!this.hasPending) {
+			try {
+				this.hasPending = this.rs.next();
+			} catch (SQLException ex) {
+				close();
+				throw new JDBCException(ex);
+			}
+			if (!this.hasPending) {
+				close();
+			}
+		}
+		return this.hasPending;
+	}
+
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		this.hasPending = false;
+		try {
+			return this.rowMapper.mapRow(this.rs, this.rowNum++);
+		} catch (SQLException ex) {
+			close();
+			throw new JDBCException(ex);
+		} catch (RuntimeException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/**
+	 * 关闭ResultSet并释放资源，可以重复调用
+	 */
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.hasPending = false;
+		JdbcUtils.closeResultSet(this.rs);
+		if (this.resources != null) {
+			try {
+				this.resources.close();
+			} catch (IOException ex) {
+				throw new JDBCException(ex);
+			}
+		}
+	}
+
+	/**
+	 * @return 是否已经关闭
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+}
@@ -0,0 +1,211 @@
+
+package com.zy.jdbclib.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 把查询结果作为Flow.Publisher发布。每个订阅者各自执行一次查询（第一次request时才获取连接），
+ * 只在订阅者请求时才从ResultSet读取下一行，慢的订阅者会让数据库读取也变慢，而不是把结果缓存在内存中。
+ * 结果读完、出错或订阅被取消时关闭ResultSet、Statement并释放连接。发送完请求的行后不会预读下一行，
+ * 因此最后一行之后的onComplete()要等到下一次request()时才发送。
+ * <p>
+ * 读取ResultSet是阻塞的。没有指定Executor时在调用request()的线程中发送数据，否则在Executor中发送。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ResultSetPublisher<T extends Object> implements Flow.Publisher<T> {
+
+	private final Callable<ResultSetIterator<T>> query;
+
+	private final Executor executor;
+
+	/**
+	 * @param query 执行查询并返回结果的Iterator，每个订阅者调用一次
+	 * @param executor 发送数据的Executor，为null时在调用request()的线程中发送
+	 */
+	public ResultSetPublisher(Callable<ResultSetIterator<T>> query, Executor executor) {
+		Assert.notNull(query, "Query must not be null");
+		this.query = query;
+		this.executor = executor;
+	}
+
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		Assert.notNull(subscriber, "Subscriber must not be null");
+		subscriber.onSubscribe(new ResultSetSubscription<T>(subscriber, this.query,
+				this.executor));
+	}
+
+	/**
+	 * 一个订阅。所有对Iterator和订阅者的调用都在drain()中进行，由wip计数保证同一时间只有一个线程执行。
+	 */
+	private static class ResultSetSubscription<T> implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super T> subscriber;
+
+		private final Callable<ResultSetIterator<T>> query;
+
+		private final Executor executor;
+
+		private final AtomicLong requested = new AtomicLong();
+
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private volatile boolean cancelled;
+
+		private volatile Throwable invalidRequest;
+
+		/** 以下字段只在drain()中访问 */
+		private ResultSetIterator<T> iterator;
+
+		private boolean done;
+
+		ResultSetSubscription(Flow.Subscriber<? super T> subscriber,
+				Callable<ResultSetIterator<T>> query, Executor executor) {
+			this.subscriber = subscriber;
+			this.query = query;
+			this.executor = executor;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				this.invalidRequest = new IllegalArgumentException(
+						"Request must be positive, but was " + n);
+			} else {
+				long current;
+				long next;
+				do {
+					current = this.requested.get();
+					next = current + n;
+					if (next < 0) {
+						next = Long.MAX_VALUE;
+					}
+				} while (!this.requested.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			this.cancelled = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (this.wip.getAndIncrement() == 0) {
+				if (this.executor == null) {
+					run();
+				} else {
+					this.executor.execute(this);
+				}
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+			do {
+				try {
+					drain();
+				} catch (Throwable ex) {
+					// 订阅者的onComplete()或onError()抛出异常，订阅已经结束，只需保证连接被释放
+					finishQuietly();
+				}
+				missed = this.wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			if (this.done) {
+				return;
+			}
+			if (this.cancelled) {
+				finish();
+				return;
+			}
+			if (this.invalidRequest != null) {
+				fail(this.invalidRequest);
+				return;
+			}
+			long demand = this.requested.get();
+			if (demand == 0) {
+				return;
+			}
+			if (this.iterator == null) {
+				try {
+					this.iterator = this.query.call();
+				} catch (Throwable ex) {
+					fail(ex);
+					return;
+				}
+			}
+			long emitted = 0;
+			while (emitted != demand) {
+				if (this.cancelled) {
+					finish();
+					return;
+				}
+				T row = null;
+				boolean hasRow;
+				try {
+					hasRow = this.iterator.hasNext();
+					if (hasRow) {
+						row = this.iterator.next();
+					}
+				} catch (Throwable ex) {
+					fail(ex);
+					return;
+				}
+				if (!hasRow) {
+					complete();
+					return;
+				}
+				try {
+					this.subscriber.onNext(row);
+				} catch (Throwable ex) {
+					// 违反Reactive Streams规范2.13，视为取消订阅：只释放连接，不再通知订阅者
+					finishQuietly();
+					return;
+				}
+				emitted++;
+			}
+			// 请求的行已经发送完时不再读取下一行，结果集是否读完在下一次request时才知道
+			if (demand != Long.MAX_VALUE) {
+				this.requested.addAndGet(-emitted);
+			}
+		}
+
+		/**
+		 * onComplete()和onError()在释放连接之后调用，它们抛出的异常由run()处理
+		 */
+		private void complete() {
+			finishQuietly();
+			this.subscriber.onComplete();
+		}
+
+		private void fail(Throwable ex) {
+			finishQuietly();
+			this.subscriber.onError(ex);
+		}
+
+		private void finish() {
+			this.done = true;
+			if (this.iterator != null) {
+				this.iterator.close();
+			}
+		}
+
+		private void finishQuietly() {
+			try {
+				finish();
+			} catch (Throwable ex) {
+				// 关闭结果集失败，已经无法通知订阅者
+			}
+		}
+	}
+
+}
@@ -39,4 +39,30 @@ public class RowMapperResultSetExtractor<T extends Object> implements
 		return results;
 	}
 
+	/**
+	 * @return the rowMapper
+	 */
+	public RowMapper<T> getRowMapper() {
+		return rowMapper;
+	}
+
+	/**
+	 * RowMapper相等、预期行数相同的两个实例相等
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof RowMapperResultSetExtractor)) {
+			return false;
+		}
+		RowMapperResultSetExtractor<?> other = (RowMapperResultSetExtractor<?>) obj;
+		return this.rowsExpected == other.rowsExpected
+				&& this.rowMapper.equals(other.rowMapper);
+	}
+
+	public int hashCode() {
+		return this.rowMapper.hashCode() * 31 + this.rowsExpected;
+	}
+
 }
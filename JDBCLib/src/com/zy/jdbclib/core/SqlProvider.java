@@ -0,0 +1,17 @@
+
+package com.zy.jdbclib.core;
+
+/**
+ * 由能够提供所执行的sql语句的对象（如PreparedStatementCreator）实现，供缓存、日志等使用
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public interface SqlProvider {
+
+	/**
+	 * @return 执行的sql语句，不能确定时返回null
+	 */
+	public String getSql();
+
+}
@@ -3,6 +3,8 @@ package com.zy.jdbclib.dataSource;
 
 import java.io.PrintWriter;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
@@ -46,4 +48,24 @@ public abstract class AbstractDataSource implements DataSource {
         throw new UnsupportedOperationException("setLogWriter");
     }
 
+    /**
+     * java.util.logging is not used, commons-logging is.
+     */
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T)this;
+        }
+        throw new SQLException("DataSource of type [" + getClass().getName()
+                + "] cannot be unwrapped as [" + iface.getName() + "]");
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
 }
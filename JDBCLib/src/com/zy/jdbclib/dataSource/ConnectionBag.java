@@ -0,0 +1,225 @@
+
+package com.zy.jdbclib.dataSource;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.zy.jdbclib.utils.VirtualThreads;
+
+/**
+ * 连接池中连接的无锁容器。借出连接时依次尝试：
+ *
+ * <pre>
+ *   1、当前线程上次归还的连接（线程亲和，无竞争；虚拟线程跳过这一步）
+ *   2、遍历共享列表，用CAS抢占一个空闲连接
+ *   3、连接池耗尽时，在交接队列上等待其他线程归还的连接或新创建的连接
+ * </pre>
+ *
+ * 只有第3步会阻塞线程，借出和归还的正常路径上没有锁。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+class ConnectionBag {
+
+    /**
+     * 共享列表中没有空闲连接时的回调，用于异步创建新连接
+     */
+    interface Listener {
+
+        /**
+         * @param waiting 正在等待连接的线程数
+         */
+        void addBagItem(int waiting);
+    }
+
+    private final CopyOnWriteArrayList<PooledConnection> sharedList = new CopyOnWriteArrayList<PooledConnection>();
+
+    private final ThreadLocal<WeakReference<PooledConnection>> lastUsed = new ThreadLocal<WeakReference<PooledConnection>>();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<PooledConnection>(
+            true);
+
+    private final Listener listener;
+
+    private volatile boolean closed;
+
+    ConnectionBag(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 借出一个空闲连接
+     *
+     * @param timeout 连接池耗尽时的最长等待时间
+     * @param unit 时间单位
+     * @return 借到的连接，超时返回null
+     * @throws InterruptedException
+     */
+    PooledConnection borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean virtual = VirtualThreads.isVirtual(Thread.currentThread());
+        WeakReference<PooledConnection> ref = (virtual ? null : this.lastUsed.get());
+        if (ref != null) {
+            PooledConnection pc = ref.get();
+            if (pc != null && pc.compareAndSetState(PooledConnection.STATE_NOT_IN_USE,
+                    PooledConnection.STATE_IN_USE)) {
+                return pc;
+            }
+        }
+
+        int waiting = this.waiters.incrementAndGet();
+        try {
+            for (PooledConnection pc : this.sharedList) {
+                if (pc.compareAndSetState(PooledConnection.STATE_NOT_IN_USE,
+                        PooledConnection.STATE_IN_USE)) {
+                    // 可能抢走了为其他等待线程准备的连接，让监听器补充
+                    if (waiting > 1) {
+                        this.listener.addBagItem(waiting - 1);
+                    }
+                    return pc;
+                }
+            }
+
+            this.listener.addBagItem(waiting);
+
+            long nanos = unit.toNanos(timeout);
+            do {
+                long start = System.nanoTime();
+                PooledConnection pc = this.handoffQueue.poll(nanos, TimeUnit.NANOSECONDS);
+                if (pc == null) {
+                    return null;
+                }
+                if (pc.compareAndSetState(PooledConnection.STATE_NOT_IN_USE,
+                        PooledConnection.STATE_IN_USE)) {
+                    return pc;
+                }
+                nanos -= System.nanoTime() - start;
+            } while (nanos > 10000 && !this.closed);
+            return null;
+        } finally {
+            this.waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还连接。如果有线程在等待，直接交接给它，否则记入当前线程的亲和槽位。
+     */
+    void requite(PooledConnection pc) {
+        pc.setState(PooledConnection.STATE_NOT_IN_USE);
+
+        for (int i = 0; this.waiters.get() > 0; i++) {
+            if (pc.getState() != PooledConnection.STATE_NOT_IN_USE || this.handoffQueue.offer(pc)) {
+                return;
+            } else if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(10000);
+            } else {
+                Thread.yield();
+            }
+        }
+
+        // 虚拟线程一般只处理一个请求，记录亲和槽位只会产生垃圾
+        if (!VirtualThreads.isVirtual(Thread.currentThread())) {
+            this.lastUsed.set(new WeakReference<PooledConnection>(pc));
+        }
+    }
+
+    /**
+     * 加入一个新创建的空闲连接，如果有线程在等待，直接交接给它
+     */
+    void add(PooledConnection pc) {
+        if (this.closed) {
+            throw new IllegalStateException("ConnectionBag has been closed");
+        }
+        this.sharedList.add(pc);
+
+        while (this.waiters.get() > 0 && pc.getState() == PooledConnection.STATE_NOT_IN_USE
+                && !this.handoffQueue.offer(pc)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 从容器中移除一个借出的或者已保留的连接
+     *
+     * @return 移除成功返回true
+     */
+    boolean remove(PooledConnection pc) {
+        if (!pc.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_REMOVED)
+                && !pc.compareAndSetState(PooledConnection.STATE_RESERVED,
+                        PooledConnection.STATE_REMOVED)) {
+            return false;
+        }
+        return this.sharedList.remove(pc);
+    }
+
+    /**
+     * 保留一个空闲连接，使其不能被借出，用于回收空闲连接
+     */
+    boolean reserve(PooledConnection pc) {
+        return pc.compareAndSetState(PooledConnection.STATE_NOT_IN_USE,
+                PooledConnection.STATE_RESERVED);
+    }
+
+    /**
+     * 取消保留，连接重新变为空闲
+     */
+    void unreserve(PooledConnection pc) {
+        if (pc.compareAndSetState(PooledConnection.STATE_RESERVED,
+                PooledConnection.STATE_NOT_IN_USE)) {
+            while (this.waiters.get() > 0 && !this.handoffQueue.offer(pc)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return 处于给定状态的连接
+     */
+    List<PooledConnection> values(int state) {
+        List<PooledConnection> list = new ArrayList<PooledConnection>();
+        for (PooledConnection pc : this.sharedList) {
+            if (pc.getState() == state) {
+                list.add(pc);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return 所有连接的快照
+     */
+    List<PooledConnection> values() {
+        return new ArrayList<PooledConnection>(this.sharedList);
+    }
+
+    int getCount(int state) {
+        int count = 0;
+        for (PooledConnection pc : this.sharedList) {
+            if (pc.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int size() {
+        return this.sharedList.size();
+    }
+
+    int getWaitingThreadCount() {
+        return this.waiters.get();
+    }
+
+    void close() {
+        this.closed = true;
+    }
+
+}
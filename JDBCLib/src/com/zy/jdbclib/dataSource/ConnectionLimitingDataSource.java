@@ -0,0 +1,186 @@
+
+package com.zy.jdbclib.dataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 限制同时打开的连接数的DataSource包装。每次getConnection()先获取一个许可，连接close()时归还。
+ * 许可用完时调用线程在公平的Semaphore上排队，而不是同时向数据库发起连接。
+ * <p>
+ * 适合大量虚拟线程共用一个没有连接数上限的数据源（如SimpleDataSource）的场景：Semaphore的等待
+ * 不会占用平台线程，成千上万个等待的虚拟线程开销很小。PooledDataSource本身已经限制了maxPoolSize，
+ * 不需要再包装。
+ *
+ * <pre>
+ * DataSource ds = new ConnectionLimitingDataSource(new SimpleDataSource(url, user, pw), 20);
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ConnectionLimitingDataSource extends AbstractDataSource {
+
+    private final DataSource targetDataSource;
+
+    private final int maxConnections;
+
+    private final Semaphore permits;
+
+    /** 等待许可的最长时间（毫秒） */
+    private long connectionTimeout = 30000;
+
+    /**
+     * @param targetDataSource 实际提供连接的数据源
+     * @param maxConnections 同时打开的最大连接数
+     */
+    public ConnectionLimitingDataSource(DataSource targetDataSource, int maxConnections) {
+        Assert.notNull(targetDataSource, "targetDataSource must not be null");
+        Assert.isTrue(maxConnections > 0, "maxConnections must be greater than zero");
+        this.targetDataSource = targetDataSource;
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    public Connection getConnection() throws SQLException {
+        acquirePermit();
+        try {
+            return wrap(this.targetDataSource.getConnection());
+        } catch (SQLException ex) {
+            this.permits.release();
+            throw ex;
+        } catch (RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquirePermit();
+        try {
+            return wrap(this.targetDataSource.getConnection(username, password));
+        } catch (SQLException ex) {
+            this.permits.release();
+            throw ex;
+        } catch (RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    private void acquirePermit() throws SQLException {
+        try {
+            if (!this.permits.tryAcquire(this.connectionTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + this.connectionTimeout
+                        + "ms waiting for one of " + this.maxConnections + " connections", "08001");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", "08001", ex);
+        }
+    }
+
+    private Connection wrap(Connection target) {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new PermitHandle(target));
+    }
+
+    /**
+     * @return 当前可用的许可数
+     */
+    public int getAvailableConnections() {
+        return this.permits.availablePermits();
+    }
+
+    /**
+     * @return 正在等待许可的线程数（估计值）
+     */
+    public int getWaitingThreads() {
+        return this.permits.getQueueLength();
+    }
+
+    /**
+     * @return the targetDataSource
+     */
+    public DataSource getTargetDataSource() {
+        return targetDataSource;
+    }
+
+    /**
+     * @return the maxConnections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return the connectionTimeout
+     */
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * @param connectionTimeout 等待许可的最长时间（毫秒）
+     */
+    public void setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * 连接的代理，close()时归还许可，只归还一次
+     */
+    private class PermitHandle implements InvocationHandler {
+
+        private final Connection target;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        PermitHandle(Connection target) {
+            this.target = target;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (this.closed.compareAndSet(false, true)) {
+                    try {
+                        this.target.close();
+                    } finally {
+                        permits.release();
+                    }
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return Boolean.valueOf(this.closed.get() || this.target.isClosed());
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("toString".equals(name)) {
+                return "Limited connection [" + this.target + "]";
+            }
+
+            if (this.closed.get()) {
+                throw new SQLException("Connection is closed");
+            }
+            try {
+                return method.invoke(this.target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            }
+        }
+    }
+
+}
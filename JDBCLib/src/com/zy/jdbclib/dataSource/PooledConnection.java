@@ -0,0 +1,329 @@
+
+package com.zy.jdbclib.dataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.utils.JdbcUtils;
+
+/**
+ * 连接池中的一个物理连接。每次借出时都会创建一个新的Connection代理，代理的close()方法
+ * 只是把物理连接归还给连接池，而不会真正关闭它。代理创建的Statement和它们返回的ResultSet也被包装，
+ * 其中任何一个抛出连接异常时，物理连接都不会再放回连接池。使用者没有关闭的Statement在归还时关闭。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+class PooledConnection {
+
+    private static final Log log = LogFactory.getLog(PooledConnection.class);
+
+    static final int STATE_NOT_IN_USE = 0;
+
+    static final int STATE_IN_USE = 1;
+
+    static final int STATE_REMOVED = -1;
+
+    static final int STATE_RESERVED = -2;
+
+    private static final AtomicIntegerFieldUpdater<PooledConnection> STATE_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(PooledConnection.class, "state");
+
+    private volatile int state = STATE_NOT_IN_USE;
+
+    private final PooledDataSource pool;
+
+    private final Connection physical;
+
+    private final long createTime;
+
+    private volatile long lastAccessTime;
+
+    private volatile boolean broken;
+
+    private final boolean defaultAutoCommit;
+
+    private final boolean defaultReadOnly;
+
+    private final int defaultTransactionIsolation;
+
+    private final String defaultCatalog;
+
+    private final StatementCache statementCache;
+
+    /** 不在语句缓存中、还没有关闭的物理Statement，归还时关闭 */
+    private final List<Statement> openStatements = new ArrayList<Statement>();
+
+    private boolean dirtyAutoCommit;
+
+    private boolean dirtyReadOnly;
+
+    private boolean dirtyTransactionIsolation;
+
+    private boolean dirtyCatalog;
+
+    PooledConnection(PooledDataSource pool, Connection physical) throws SQLException {
+        this.pool = pool;
+        this.physical = physical;
+        this.createTime = System.currentTimeMillis();
+        this.lastAccessTime = this.createTime;
+        this.defaultAutoCommit = physical.getAutoCommit();
+        this.defaultReadOnly = physical.isReadOnly();
+        this.defaultTransactionIsolation = physical.getTransactionIsolation();
+        this.defaultCatalog = physical.getCatalog();
+        int statementCacheSize = pool.getStatementCacheSize();
+        this.statementCache = (statementCacheSize > 0 ? new StatementCache(this,
+                statementCacheSize) : null);
+    }
+
+    int getState() {
+        return this.state;
+    }
+
+    void setState(int state) {
+        STATE_UPDATER.set(this, state);
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return STATE_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    /**
+     * 借出该连接，返回一个新的逻辑连接代理
+     */
+    Connection borrow() {
+        this.lastAccessTime = System.currentTimeMillis();
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandle());
+    }
+
+    /**
+     * 归还连接前，撤销未提交的事务并恢复借出期间被修改过的连接属性
+     */
+    void reset() throws SQLException {
+        if (this.statementCache != null) {
+            this.statementCache.closeLeakedStatements();
+        }
+        if (!this.openStatements.isEmpty()) {
+            log.debug("Closing " + this.openStatements.size()
+                    + " Statement(s) that were not closed before their connection");
+            for (Statement stmt : this.openStatements) {
+                JdbcUtils.closeStatement(stmt);
+            }
+            this.openStatements.clear();
+        }
+        if (!this.physical.getAutoCommit()) {
+            this.physical.rollback();
+        }
+        if (this.dirtyAutoCommit) {
+            this.physical.setAutoCommit(this.defaultAutoCommit);
+            this.dirtyAutoCommit = false;
+        }
+        if (this.dirtyReadOnly) {
+            this.physical.setReadOnly(this.defaultReadOnly);
+            this.dirtyReadOnly = false;
+        }
+        if (this.dirtyTransactionIsolation) {
+            this.physical.setTransactionIsolation(this.defaultTransactionIsolation);
+            this.dirtyTransactionIsolation = false;
+        }
+        if (this.dirtyCatalog) {
+            if (this.defaultCatalog != null) {
+                this.physical.setCatalog(this.defaultCatalog);
+            }
+            this.dirtyCatalog = false;
+        }
+        this.physical.clearWarnings();
+        this.lastAccessTime = System.currentTimeMillis();
+    }
+
+    void closePhysical() {
+        if (this.statementCache != null) {
+            this.statementCache.closeAll();
+        }
+        this.openStatements.clear();
+        JdbcUtils.closeConnection(this.physical);
+    }
+
+    boolean isExpired(long now, long maxLifetime) {
+        return maxLifetime > 0 && now - this.createTime > maxLifetime;
+    }
+
+    boolean isIdleFor(long now, long idleTimeout) {
+        return idleTimeout > 0 && now - this.lastAccessTime > idleTimeout;
+    }
+
+    boolean isBroken() {
+        return this.broken;
+    }
+
+    Connection getPhysicalConnection() {
+        return this.physical;
+    }
+
+    long getLastAccessTime() {
+        return this.lastAccessTime;
+    }
+
+    /**
+     * SQLState以"08"开头表示连接异常，这样的连接不能再放回连接池中
+     */
+    void checkFatal(Throwable ex) {
+        if (ex instanceof SQLException) {
+            String sqlState = ((SQLException)ex).getSQLState();
+            if (sqlState != null && sqlState.startsWith("08")) {
+                this.broken = true;
+            }
+        }
+    }
+
+    /**
+     * 一次借出对应的逻辑连接。关闭后再调用任何方法都会抛出SQLException。
+     */
+    private class ConnectionHandle implements InvocationHandler {
+
+        private boolean closed;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!this.closed) {
+                    this.closed = true;
+                    pool.recycle(PooledConnection.this);
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return Boolean.valueOf(this.closed || physical.isClosed());
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("toString".equals(name)) {
+                return "Pooled connection [" + physical + "]";
+            }
+
+            if (this.closed) {
+                throw new SQLException("Connection is closed");
+            }
+            if ("setAutoCommit".equals(name)) {
+                dirtyAutoCommit = true;
+            } else if ("setReadOnly".equals(name)) {
+                dirtyReadOnly = true;
+            } else if ("setTransactionIsolation".equals(name)) {
+                dirtyTransactionIsolation = true;
+            } else if ("setCatalog".equals(name)) {
+                dirtyCatalog = true;
+            } else if (statementCache != null && "prepareStatement".equals(name)
+                    && args.length == 1) {
+                return statementCache.prepareStatement((Connection)proxy, (String)args[0]);
+            }
+
+            Object result;
+            try {
+                result = method.invoke(physical, args);
+            } catch (InvocationTargetException ex) {
+                checkFatal(ex.getTargetException());
+                throw ex.getTargetException();
+            }
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                // createStatement()、prepareStatement()、prepareCall()
+                return wrapStatement(method.getReturnType(), (Statement)result, (Connection)proxy);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 包装不缓存的Statement，并在它关闭之前记录下来，使用者没有关闭时在连接归还时关闭
+     *
+     * @param iface 代理实现的接口
+     * @param stmt 物理Statement
+     * @param connection Statement.getConnection()返回的逻辑连接
+     */
+    Object wrapStatement(Class<?> iface, Statement stmt, Connection connection) {
+        this.openStatements.add(stmt);
+        return wrap(iface, stmt, connection, null);
+    }
+
+    private void statementClosed(Object stmt) {
+        // 通常后创建的先关闭
+        for (int i = this.openStatements.size() - 1; i >= 0; i--) {
+            if (this.openStatements.get(i) == stmt) {
+                this.openStatements.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 包装Statement或ResultSet，使它们抛出的连接异常也记录到这个连接上
+     *
+     * @param iface 代理实现的接口
+     * @param target 被包装的对象
+     * @param connection Statement.getConnection()返回的逻辑连接
+     * @param statement ResultSet.getStatement()返回的Statement代理
+     */
+    Object wrap(Class<?> iface, Object target, Connection connection, Object statement) {
+        return Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] {iface},
+                new FatalErrorHandle(target, connection, statement));
+    }
+
+    /**
+     * Statement和ResultSet的代理，把调用抛出的异常交给{@link #checkFatal(Throwable)}
+     */
+    private class FatalErrorHandle implements InvocationHandler {
+
+        private final Object target;
+
+        private final Connection connection;
+
+        private final Object statement;
+
+        FatalErrorHandle(Object target, Connection connection, Object statement) {
+            this.target = target;
+            this.connection = connection;
+            this.statement = statement;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getConnection".equals(name) && this.connection != null) {
+                return this.connection;
+            } else if ("getStatement".equals(name) && this.statement != null) {
+                return this.statement;
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("close".equals(name) && this.target instanceof Statement) {
+                statementClosed(this.target);
+            }
+
+            Object result;
+            try {
+                result = method.invoke(this.target, args);
+            } catch (InvocationTargetException ex) {
+                checkFatal(ex.getTargetException());
+                throw ex.getTargetException();
+            }
+            if (result instanceof ResultSet && this.target instanceof Statement) {
+                // executeQuery()、getResultSet()、getGeneratedKeys()
+                return wrap(ResultSet.class, result, null, proxy);
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,533 @@
+
+package com.zy.jdbclib.dataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.DaemonThreadFactory;
+import com.zy.jdbclib.utils.JdbcUtils;
+
+/**
+ * 带连接池的数据源。物理连接由targetDataSource创建，借出的连接在close()时归还给连接池。
+ * 借出和归还连接的正常路径是无锁的，见{@link ConnectionBag}。
+ *
+ * <pre>
+ * PooledDataSource dataSource = new PooledDataSource(url, username, password);
+ * dataSource.setMaxPoolSize(20);
+ * JdbcTemplate template = new JdbcTemplate(dataSource);
+ * ...
+ * dataSource.close();
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class PooledDataSource extends AbstractDataSource {
+
+    /** 最近使用过的连接在这个时间内不再做有效性检查 */
+    private static final long ALIVE_BYPASS_WINDOW = 500;
+
+    private DataSource targetDataSource;
+
+    private int minIdle = 0;
+
+    private int maxPoolSize = 10;
+
+    private long idleTimeout = 10 * 60 * 1000L;
+
+    private long maxLifetime = 30 * 60 * 1000L;
+
+    private long connectionTimeout = 30 * 1000L;
+
+    private long housekeepingPeriod = 30 * 1000L;
+
+    private String validationQuery;
+
+    private int statementCacheSize = 0;
+
+    private final ConnectionBag bag = new ConnectionBag(new ConnectionBag.Listener() {
+        public void addBagItem(int waiting) {
+            requestConnections(waiting);
+        }
+    });
+
+    /** 已创建的和正在创建的连接数 */
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    /** 已提交但还未完成的创建连接任务数 */
+    private final AtomicInteger pendingConnections = new AtomicInteger();
+
+    /** 保护init()和close()中线程池的创建和关闭 */
+    private final Object lifecycleLock = new Object();
+
+    /** 线程池创建完成后才设置为true，看到true的线程可以使用connectionAdder */
+    private volatile boolean started;
+
+    private volatile boolean closed;
+
+    private volatile SQLException lastCreateException;
+
+    private volatile ScheduledExecutorService housekeeper;
+
+    private volatile ThreadPoolExecutor connectionAdder;
+
+    public PooledDataSource() {
+    }
+
+    public PooledDataSource(DataSource targetDataSource) {
+        setTargetDataSource(targetDataSource);
+    }
+
+    public PooledDataSource(String url, String username, String password) {
+        setTargetDataSource(new SimpleDataSource(url, username, password));
+    }
+
+    /**
+     * 预先创建minIdle个连接，并启动空闲连接回收线程。第一次获取连接时会自动调用。
+     */
+    public void init() throws SQLException {
+        if (this.started) {
+            return;
+        }
+        synchronized (this.lifecycleLock) {
+            if (this.started) {
+                return;
+            }
+            if (this.closed) {
+                throw new SQLException("Connection pool has been closed");
+            }
+            Assert.notNull(this.targetDataSource, "targetDataSource must not be null");
+            Assert.isTrue(this.maxPoolSize > 0, "maxPoolSize must be greater than zero");
+            Assert.isTrue(this.minIdle <= this.maxPoolSize, "minIdle must not exceed maxPoolSize");
+            Assert.isTrue(this.housekeepingPeriod > 0,
+                    "housekeepingPeriod must be greater than zero");
+
+            // 新连接在单独的线程中创建，等待连接的线程只需在交接队列上等待
+            ThreadPoolExecutor adder = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(
+                            "PooledDataSource-adder-"));
+            adder.allowCoreThreadTimeOut(true);
+            ScheduledExecutorService keeper = Executors
+                    .newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+                            "PooledDataSource-housekeeper-"));
+            try {
+                keeper.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        housekeep();
+                    }
+                }, this.housekeepingPeriod, this.housekeepingPeriod, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException ex) {
+                adder.shutdownNow();
+                keeper.shutdownNow();
+                throw ex;
+            }
+            this.connectionAdder = adder;
+            this.housekeeper = keeper;
+            this.started = true;
+        }
+
+        fillPool();
+        logger.info("Initialized connection pool: minIdle=" + this.minIdle + ", maxPoolSize="
+                + this.maxPoolSize);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (!this.started) {
+            init();
+        }
+        long startTime = System.currentTimeMillis();
+        long timeout = this.connectionTimeout;
+        do {
+            if (this.closed) {
+                throw new SQLException("Connection pool has been closed");
+            }
+            PooledConnection pc;
+            try {
+                pc = this.bag.borrow(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a pooled connection");
+            }
+            if (pc == null) {
+                break;
+            }
+            if (isUsable(pc)) {
+                return pc.borrow();
+            }
+            discard(pc);
+            timeout = this.connectionTimeout - (System.currentTimeMillis() - startTime);
+        } while (timeout > 0);
+
+        SQLException timeoutEx = new SQLException("Timeout after " + this.connectionTimeout
+                + "ms waiting for a pooled connection (maxPoolSize=" + this.maxPoolSize + ")");
+        if (this.lastCreateException != null) {
+            timeoutEx.initCause(this.lastCreateException);
+        }
+        throw timeoutEx;
+    }
+
+    /**
+     * 连接池中的连接都使用targetDataSource的用户名和密码创建，不支持使用其他用户获取连接
+     */
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException(
+                "PooledDataSource does not support getConnection(username, password)");
+    }
+
+    /**
+     * 关闭连接池，关闭所有空闲连接。正在使用的连接在归还时关闭。
+     */
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        synchronized (this.lifecycleLock) {
+            this.closed = true;
+            if (this.housekeeper != null) {
+                this.housekeeper.shutdownNow();
+            }
+            if (this.connectionAdder != null) {
+                this.connectionAdder.shutdownNow();
+            }
+        }
+        this.bag.close();
+        for (PooledConnection pc : this.bag.values(PooledConnection.STATE_NOT_IN_USE)) {
+            if (this.bag.reserve(pc)) {
+                discard(pc);
+            }
+        }
+        logger.info("Closed connection pool");
+    }
+
+    /**
+     * 借出的连接关闭时由连接代理调用，将连接放回连接池
+     */
+    void recycle(PooledConnection pc) {
+        if (this.closed || pc.isBroken()
+                || pc.isExpired(System.currentTimeMillis(), this.maxLifetime)) {
+            discard(pc);
+            return;
+        }
+        try {
+            pc.reset();
+        } catch (SQLException ex) {
+            logger.debug("Could not reset pooled JDBC Connection, discarding it", ex);
+            discard(pc);
+            return;
+        }
+        this.bag.requite(pc);
+    }
+
+    /**
+     * 关闭并移除一个借出的或已保留的连接
+     */
+    private void discard(PooledConnection pc) {
+        if (this.bag.remove(pc)) {
+            this.totalConnections.decrementAndGet();
+        }
+        pc.closePhysical();
+        if (!this.closed && this.bag.getWaitingThreadCount() > 0) {
+            requestConnections(1);
+        }
+    }
+
+    /**
+     * 连接池中没有空闲连接时，在连接数上限内异步创建新连接。已提交的创建任务足够满足等待线程时不再提交。
+     *
+     * @param waiting 正在等待连接的线程数
+     */
+    private void requestConnections(int waiting) {
+        while (this.pendingConnections.get() < waiting && reserveSlot()) {
+            this.pendingConnections.incrementAndGet();
+            try {
+                this.connectionAdder.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            addConnection();
+                        } finally {
+                            pendingConnections.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                this.pendingConnections.decrementAndGet();
+                this.totalConnections.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 在连接数上限内预留一个名额
+     */
+    private boolean reserveSlot() {
+        for (;;) {
+            int total = this.totalConnections.get();
+            if (this.closed || total >= this.maxPoolSize) {
+                return false;
+            }
+            if (this.totalConnections.compareAndSet(total, total + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 在已预留的名额上创建一个连接并放入连接池
+     */
+    private void addConnection() {
+        if (this.closed) {
+            this.totalConnections.decrementAndGet();
+            return;
+        }
+        Connection con = null;
+        try {
+            con = this.targetDataSource.getConnection();
+            PooledConnection pc = new PooledConnection(this, con);
+            this.lastCreateException = null;
+            this.bag.add(pc);
+        } catch (SQLException ex) {
+            JdbcUtils.closeConnection(con);
+            this.totalConnections.decrementAndGet();
+            this.lastCreateException = ex;
+            logger.debug("Could not create pooled JDBC Connection", ex);
+        } catch (RuntimeException ex) {
+            JdbcUtils.closeConnection(con);
+            this.totalConnections.decrementAndGet();
+            logger.debug("Could not create pooled JDBC Connection", ex);
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (pc.isExpired(now, this.maxLifetime)) {
+            return false;
+        }
+        if (now - pc.getLastAccessTime() < ALIVE_BYPASS_WINDOW) {
+            return true;
+        }
+        Connection con = pc.getPhysicalConnection();
+        try {
+            if (this.validationQuery == null) {
+                return !con.isClosed();
+            }
+            Statement stmt = con.createStatement();
+            try {
+                stmt.execute(this.validationQuery);
+            } finally {
+                JdbcUtils.closeStatement(stmt);
+            }
+            return true;
+        } catch (SQLException ex) {
+            logger.debug("Pooled JDBC Connection failed validation, discarding it", ex);
+            return false;
+        }
+    }
+
+    /**
+     * 回收空闲超时或超过最大存活时间的连接，并补足minIdle个连接
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> idle = this.bag.values(PooledConnection.STATE_NOT_IN_USE);
+        int removable = idle.size() - this.minIdle;
+        int evicted = 0;
+        for (PooledConnection pc : idle) {
+            boolean expired = pc.isExpired(now, this.maxLifetime);
+            if (!expired && (removable <= 0 || !pc.isIdleFor(now, this.idleTimeout))) {
+                continue;
+            }
+            if (this.bag.reserve(pc)) {
+                discard(pc);
+                removable--;
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted " + evicted + " pooled JDBC Connections");
+        }
+        fillPool();
+    }
+
+    private void fillPool() {
+        int missing = this.minIdle - this.bag.getCount(PooledConnection.STATE_NOT_IN_USE);
+        for (int i = 0; i < missing && !this.closed; i++) {
+            if (!reserveSlot()) {
+                return;
+            }
+            addConnection();
+        }
+    }
+
+    /**
+     * @return 当前连接池中的连接总数（空闲的和已借出的）
+     */
+    public int getTotalConnections() {
+        return this.bag.size();
+    }
+
+    /**
+     * @return 当前空闲的连接数
+     */
+    public int getIdleConnections() {
+        return this.bag.getCount(PooledConnection.STATE_NOT_IN_USE);
+    }
+
+    /**
+     * @return 当前借出的连接数
+     */
+    public int getActiveConnections() {
+        return this.bag.getCount(PooledConnection.STATE_IN_USE);
+    }
+
+    /**
+     * @return 正在等待连接的线程数
+     */
+    public int getWaitingThreads() {
+        return this.bag.getWaitingThreadCount();
+    }
+
+    /**
+     * @return the targetDataSource
+     */
+    public DataSource getTargetDataSource() {
+        return targetDataSource;
+    }
+
+    /**
+     * @param targetDataSource 用于创建物理连接的数据源
+     */
+    public void setTargetDataSource(DataSource targetDataSource) {
+        this.targetDataSource = targetDataSource;
+    }
+
+    /**
+     * @return the minIdle
+     */
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * @param minIdle 连接池中保持的最少空闲连接数
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    /**
+     * @return the maxPoolSize
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @param maxPoolSize 连接池中的最大连接数
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * @return the idleTimeout
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout 空闲连接的最长空闲时间（毫秒），0表示不回收空闲连接
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the maxLifetime
+     */
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * @param maxLifetime 连接的最长存活时间（毫秒），0表示不限制
+     */
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    /**
+     * @return the connectionTimeout
+     */
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * @param connectionTimeout 连接池耗尽时获取连接的最长等待时间（毫秒）
+     */
+    public void setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * @return the housekeepingPeriod
+     */
+    public long getHousekeepingPeriod() {
+        return housekeepingPeriod;
+    }
+
+    /**
+     * @param housekeepingPeriod 空闲连接回收线程的执行间隔（毫秒）
+     */
+    public void setHousekeepingPeriod(long housekeepingPeriod) {
+        this.housekeepingPeriod = housekeepingPeriod;
+    }
+
+    /**
+     * @return the statementCacheSize
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * 设置每个连接缓存的PreparedStatement的最大数目。开启后，同一连接上重复执行的sql不需要再次预编译，
+     * PreparedStatement的close()只是清空参数并放回缓存。默认为0，即不缓存。
+     * 需要在第一次获取连接之前设置。
+     *
+     * @param statementCacheSize 每个连接缓存的PreparedStatement的最大数目
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * @return the validationQuery
+     */
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    /**
+     * @param validationQuery 借出空闲连接前用于检查连接是否有效的sql，如"SELECT 1"
+     */
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+}
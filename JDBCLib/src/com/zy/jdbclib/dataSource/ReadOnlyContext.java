@@ -0,0 +1,89 @@
+
+package com.zy.jdbclib.dataSource;
+
+/**
+ * 当前线程的读写路由标记，由{@link ReadWriteRoutingDataSource}在getConnection()时读取。
+ * JdbcTemplate在查询时把它设置为只读（外层没有设置时），在更新时设置为读写。
+ * 需要读到刚写入的数据（或者SELECT ... FOR UPDATE）时，可以在外层设置为读写，使内层的查询也访问主库：
+ *
+ * <pre>
+ * Boolean previous = ReadOnlyContext.bind(Boolean.FALSE);
+ * try {
+ *     template.query(...);
+ * } finally {
+ *     ReadOnlyContext.restore(previous);
+ * }
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class ReadOnlyContext {
+
+    private static final ThreadLocal<Boolean> current = new ThreadLocal<Boolean>();
+
+    private ReadOnlyContext() {
+    }
+
+    /**
+     * 设置当前线程的读写标记
+     *
+     * @param readOnly TRUE表示只读，FALSE表示读写，null表示没有设置
+     * @return 原来的标记，用于{@link #restore(Boolean)}
+     */
+    public static Boolean bind(Boolean readOnly) {
+        Boolean previous = current.get();
+        if (readOnly == null ? previous != null : !readOnly.equals(previous)) {
+            set(readOnly);
+        }
+        return previous;
+    }
+
+    /**
+     * 外层没有设置时设置为只读
+     *
+     * @return 原来的标记，用于{@link #restore(Boolean)}
+     */
+    public static Boolean bindReadOnlyIfUnset() {
+        Boolean previous = current.get();
+        if (previous == null) {
+            current.set(Boolean.TRUE);
+        }
+        return previous;
+    }
+
+    /**
+     * 恢复原来的标记
+     *
+     * @param previous bind()返回的标记
+     */
+    public static void restore(Boolean previous) {
+        Boolean readOnly = current.get();
+        if (previous == null ? readOnly != null : !previous.equals(readOnly)) {
+            set(previous);
+        }
+    }
+
+    /**
+     * @return 当前线程的读写标记，null表示没有设置
+     */
+    public static Boolean get() {
+        return current.get();
+    }
+
+    /**
+     * @return 当前线程是否被设置为只读
+     */
+    public static boolean isReadOnly() {
+        return Boolean.TRUE.equals(current.get());
+    }
+
+    private static void set(Boolean readOnly) {
+        if (readOnly == null) {
+            current.remove();
+        } else {
+            current.set(readOnly);
+        }
+    }
+
+}
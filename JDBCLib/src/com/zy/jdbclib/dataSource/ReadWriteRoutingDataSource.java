@@ -0,0 +1,486 @@
+
+package com.zy.jdbclib.dataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 读写分离的数据源。当前线程被{@link ReadOnlyContext}标记为只读时从从库获取连接，否则从主库获取连接。
+ * JdbcTemplate的query方法会自动标记为只读，update、batchUpdate等方法标记为读写。
+ * <p>
+ * 从库的选择方式：
+ * <ul>
+ * <li>{@link LoadBalance#LEAST_OUTSTANDING}（默认）：选择正在使用的连接数与权重之比最小的从库；</li>
+ * <li>{@link LoadBalance#WEIGHTED_ROUND_ROBIN}：按权重轮流选择。</li>
+ * </ul>
+ * 每个从库记录语句执行耗时（从库连接上的Statement的execute、executeQuery、executeUpdate、executeBatch
+ * 等方法的耗时）的指数移动平均值和获取连接的连续失败次数。至少有{@link #MIN_SAMPLES}个样本、
+ * 平均耗时超过slowThreshold，或者连续maxFailures次获取连接失败的从库在ejectionPeriod内不再被选择，
+ * 之后重新参与选择；所有从库都不可用时使用主库。
+ * 读取结果集和应用持有连接的时间（流式查询、慢的业务代码等）不计入，不会使正常的从库被移除。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    /**
+     * 从库的选择方式
+     */
+    public enum LoadBalance {
+        LEAST_OUTSTANDING, WEIGHTED_ROUND_ROBIN
+    }
+
+    /** 根据平均耗时移除从库前至少需要的样本数 */
+    public static final int MIN_SAMPLES = 10;
+
+    /** 计算语句执行耗时的指数移动平均值时新样本的权重 */
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final DataSource primary;
+
+    private final Replica[] replicas;
+
+    /** 按权重展开的平滑轮询顺序，元素是从库的序号 */
+    private final int[] schedule;
+
+    private final AtomicInteger nextInSchedule = new AtomicInteger();
+
+    private LoadBalance loadBalance = LoadBalance.LEAST_OUTSTANDING;
+
+    /** 语句执行的平均耗时超过该值（毫秒）的从库被暂时移除，0表示不检查 */
+    private long slowThreshold = 2000;
+
+    /** 连续获取连接失败多少次后暂时移除从库 */
+    private int maxFailures = 3;
+
+    /** 从库被移除的时长（毫秒） */
+    private long ejectionPeriod = 30000;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this(primary, replicas, null);
+    }
+
+    /**
+     * @param primary 主库
+     * @param replicas 从库
+     * @param weights 从库的权重，为null时权重都为1
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, int[] weights) {
+        Assert.notNull(primary, "Primary DataSource must not be null");
+        Assert.notNull(replicas, "Replica DataSources must not be null");
+        Assert.isTrue(weights == null || weights.length == replicas.size(),
+                "weights must match replicas");
+        this.primary = primary;
+        this.replicas = new Replica[replicas.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            int weight = (weights != null ? weights[i] : 1);
+            Assert.isTrue(weight > 0, "weights must be greater than zero");
+            this.replicas[i] = new Replica(i, replicas.get(i), weight);
+        }
+        this.schedule = buildSchedule(this.replicas);
+    }
+
+    /**
+     * 用平滑加权轮询算法生成一个周期的选择顺序，权重为{5, 1, 1}时是{0, 0, 1, 0, 2, 0, 0}
+     */
+    private static int[] buildSchedule(Replica[] replicas) {
+        int total = 0;
+        for (Replica replica : replicas) {
+            total += replica.weight;
+        }
+        int[] schedule = new int[total];
+        int[] current = new int[replicas.length];
+        for (int n = 0; n < total; n++) {
+            int best = 0;
+            for (int i = 0; i < replicas.length; i++) {
+                current[i] += replicas[i].weight;
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[n] = best;
+        }
+        return schedule;
+    }
+
+    public Connection getConnection() throws SQLException {
+        return getConnection(null, null, false);
+    }
+
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection(username, password, true);
+    }
+
+    private Connection getConnection(String username, String password, boolean withCredentials)
+            throws SQLException {
+        if (ReadOnlyContext.isReadOnly()) {
+            long now = System.currentTimeMillis();
+            // 每个从库最多尝试一次
+            boolean[] tried = null;
+            for (int attempt = 0; attempt < this.replicas.length; attempt++) {
+                Replica replica = selectReplica(now, tried);
+                if (replica == null) {
+                    break;
+                }
+                try {
+                    Connection con = (withCredentials ? replica.dataSource.getConnection(username,
+                            password) : replica.dataSource.getConnection());
+                    replica.failures.set(0);
+                    return replica.wrap(con);
+                } catch (SQLException ex) {
+                    replica.fail(now, ex);
+                    if (tried == null) {
+                        tried = new boolean[this.replicas.length];
+                    }
+                    tried[replica.index] = true;
+                }
+            }
+            logger.debug("No replica available, routing read to primary");
+        }
+        return (withCredentials ? this.primary.getConnection(username, password) : this.primary
+                .getConnection());
+    }
+
+    /**
+     * @param tried 已经尝试过的从库，可以为null
+     */
+    private Replica selectReplica(long now, boolean[] tried) {
+        if (this.replicas.length == 0) {
+            return null;
+        }
+        if (this.loadBalance == LoadBalance.WEIGHTED_ROUND_ROBIN) {
+            for (int i = 0; i < this.schedule.length; i++) {
+                int index = this.schedule[Math.floorMod(this.nextInSchedule.getAndIncrement(),
+                        this.schedule.length)];
+                if ((tried == null || !tried[index]) && this.replicas[index].isAvailable(now)) {
+                    return this.replicas[index];
+                }
+            }
+            return null;
+        }
+        // 从随机位置开始扫描，使相同负载的从库被均匀选择
+        int start = (this.replicas.length > 1 ? ThreadLocalRandom.current().nextInt(
+                this.replicas.length) : 0);
+        Replica best = null;
+        for (int i = 0; i < this.replicas.length; i++) {
+            Replica replica = this.replicas[(start + i) % this.replicas.length];
+            if ((tried != null && tried[replica.index]) || !replica.isAvailable(now)) {
+                continue;
+            }
+            // outstanding / weight 最小
+            if (best == null
+                    || replica.outstanding.get() * best.weight < best.outstanding.get()
+                            * replica.weight) {
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return 从库的数量
+     */
+    public int getReplicaCount() {
+        return this.replicas.length;
+    }
+
+    /**
+     * @return 所有从库
+     */
+    public List<DataSource> getReplicas() {
+        List<DataSource> list = new ArrayList<DataSource>(this.replicas.length);
+        for (Replica replica : this.replicas) {
+            list.add(replica.dataSource);
+        }
+        return list;
+    }
+
+    /**
+     * @param index 从库序号
+     * @return 从库正在使用的连接数
+     */
+    public int getOutstanding(int index) {
+        return this.replicas[index].outstanding.get();
+    }
+
+    /**
+     * @param index 从库序号
+     * @return 从库语句执行的平均耗时（毫秒）
+     */
+    public double getAverageLatency(int index) {
+        return this.replicas[index].ewmaLatency / 1000000.0;
+    }
+
+    /**
+     * @param index 从库序号
+     * @return 从库当前是否被移除
+     */
+    public boolean isEjected(int index) {
+        return !this.replicas[index].isAvailable(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the primary
+     */
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    /**
+     * @return the loadBalance
+     */
+    public LoadBalance getLoadBalance() {
+        return loadBalance;
+    }
+
+    /**
+     * @param loadBalance the loadBalance to set
+     */
+    public void setLoadBalance(LoadBalance loadBalance) {
+        Assert.notNull(loadBalance, "loadBalance must not be null");
+        this.loadBalance = loadBalance;
+    }
+
+    /**
+     * @return the slowThreshold
+     */
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    /**
+     * @param slowThreshold 语句执行的平均耗时超过该值（毫秒）的从库被暂时移除，0表示不检查
+     */
+    public void setSlowThreshold(long slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * @return the maxFailures
+     */
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    /**
+     * @param maxFailures 连续获取连接失败多少次后暂时移除从库
+     */
+    public void setMaxFailures(int maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    /**
+     * @return the ejectionPeriod
+     */
+    public long getEjectionPeriod() {
+        return ejectionPeriod;
+    }
+
+    /**
+     * @param ejectionPeriod 从库被移除的时长（毫秒）
+     */
+    public void setEjectionPeriod(long ejectionPeriod) {
+        this.ejectionPeriod = ejectionPeriod;
+    }
+
+    /**
+     * 一个从库及其状态
+     */
+    private class Replica {
+
+        final int index;
+
+        final DataSource dataSource;
+
+        final int weight;
+
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        /** 语句执行耗时的指数移动平均值（纳秒），并发更新时丢失个别样本不影响结果 */
+        volatile double ewmaLatency;
+
+        /** 计入平均值的样本数 */
+        final AtomicInteger samples = new AtomicInteger();
+
+        /** 被移除到什么时候，0表示没有被移除 */
+        volatile long ejectedUntil;
+
+        Replica(int index, DataSource dataSource, int weight) {
+            this.index = index;
+            this.dataSource = dataSource;
+            this.weight = weight;
+        }
+
+        boolean isAvailable(long now) {
+            long until = this.ejectedUntil;
+            if (until == 0) {
+                return true;
+            }
+            if (now < until) {
+                return false;
+            }
+            // 移除期结束，重新参与选择；平均时长从头计算，避免刚恢复就因为旧的数据再次被移除
+            this.ejectedUntil = 0;
+            this.ewmaLatency = 0;
+            this.samples.set(0);
+            this.failures.set(0);
+            return true;
+        }
+
+        void fail(long now, SQLException ex) {
+            int count = this.failures.incrementAndGet();
+            logger.warn("Could not get connection from replica " + this.dataSource + " (" + count
+                    + " consecutive failures)", ex);
+            if (count >= maxFailures) {
+                eject(now, count + " consecutive failures");
+            }
+        }
+
+        void eject(long now, String reason) {
+            if (this.ejectedUntil == 0) {
+                this.ejectedUntil = now + ejectionPeriod;
+                logger.warn("Ejecting replica " + this.dataSource + " for " + ejectionPeriod
+                        + "ms: " + reason);
+            }
+        }
+
+        /**
+         * @param latency 一次语句执行的耗时（纳秒）
+         */
+        void sample(long latency) {
+            int count = this.samples.incrementAndGet();
+            double ewma = this.ewmaLatency;
+            ewma = (count == 1 ? latency : ewma + EWMA_ALPHA * (latency - ewma));
+            this.ewmaLatency = ewma;
+            if (slowThreshold > 0 && count >= MIN_SAMPLES && ewma > slowThreshold * 1000000.0) {
+                eject(System.currentTimeMillis(), "average execute latency "
+                        + (long)(ewma / 1000000) + "ms");
+            }
+        }
+
+        void release() {
+            this.outstanding.decrementAndGet();
+        }
+
+        Connection wrap(Connection con) {
+            this.outstanding.incrementAndGet();
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new ReplicaConnectionHandle(this, con));
+        }
+    }
+
+    /**
+     * 从库连接的代理，close()时减少从库正在使用的连接数，创建的Statement也被代理以记录执行耗时
+     */
+    private static class ReplicaConnectionHandle implements InvocationHandler {
+
+        private final Replica replica;
+
+        private final Connection target;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ReplicaConnectionHandle(Replica replica, Connection target) {
+            this.replica = replica;
+            this.target = target;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (this.closed.compareAndSet(false, true)) {
+                    try {
+                        this.target.close();
+                    } finally {
+                        this.replica.release();
+                    }
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return Boolean.valueOf(this.closed.get() || this.target.isClosed());
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("toString".equals(name)) {
+                return "Replica connection [" + this.target + "]";
+            }
+
+            if (this.closed.get()) {
+                throw new SQLException("Connection is closed");
+            }
+            Object result;
+            try {
+                result = method.invoke(this.target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            }
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                Class<?> iface = method.getReturnType();
+                return Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] {iface},
+                        new ReplicaStatementHandle(this.replica, (Connection)proxy, result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 从库Statement的代理，记录execute*方法的耗时
+     */
+    private static class ReplicaStatementHandle implements InvocationHandler {
+
+        private final Replica replica;
+
+        private final Connection connection;
+
+        private final Object target;
+
+        ReplicaStatementHandle(Replica replica, Connection connection, Object target) {
+            this.replica = replica;
+            this.connection = connection;
+            this.target = target;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getConnection".equals(name)) {
+                return this.connection;
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            boolean timed = name.startsWith("execute");
+            long start = (timed ? System.nanoTime() : 0);
+            try {
+                return method.invoke(this.target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            } finally {
+                // 执行超时等失败也计入，使变慢的从库被移除
+                if (timed) {
+                    this.replica.sample(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,352 @@
+
+package com.zy.jdbclib.dataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.utils.JdbcUtils;
+
+/**
+ * 绑定在一个物理连接上的PreparedStatement缓存，以sql语句为key，按LRU淘汰。
+ * 借出的是PreparedStatement代理，它的close()只是关闭没有关闭的ResultSet、清空参数、恢复fetchSize、
+ * maxRows、queryTimeout、fetchDirection、maxFieldSize、poolable、escapeProcessing等设置并放回缓存，
+ * 物理的PreparedStatement只在被淘汰或连接关闭时才关闭。调用过setCursorName()或closeOnCompletion()
+ * 的语句无法恢复，关闭时不再缓存。语句和ResultSet抛出的连接异常交给所属连接检查。
+ * <p>
+ * 一个连接同一时间只被一个线程使用，所以这里不需要同步。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+class StatementCache {
+
+    private static final Log log = LogFactory.getLog(StatementCache.class);
+
+    private final PooledConnection owner;
+
+    private final Connection physical;
+
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    StatementCache(PooledConnection owner, final int maxSize) {
+        this.owner = owner;
+        this.physical = owner.getPhysicalConnection();
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                // 正在使用的语句在归还时才关闭
+                CachedStatement cs = eldest.getValue();
+                cs.evicted = true;
+                if (cs.handle == null) {
+                    cs.closePhysical();
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 返回sql对应的PreparedStatement。缓存中的语句正在被使用时（同一连接上嵌套执行同一sql），
+     * 创建一个不缓存的PreparedStatement。
+     *
+     * @param connection 逻辑连接，作为PreparedStatement.getConnection()的返回值
+     * @param sql sql语句
+     */
+    PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        CachedStatement cs = this.statements.get(sql);
+        if (cs == null) {
+            cs = new CachedStatement(sql, this.physical.prepareStatement(sql));
+            this.statements.put(sql, cs);
+        } else if (cs.handle != null) {
+            return (PreparedStatement)this.owner.wrapStatement(PreparedStatement.class,
+                    this.physical.prepareStatement(sql), connection);
+        }
+        return cs.checkout(connection);
+    }
+
+    /**
+     * 连接归还连接池时调用，强制关闭使用者没有关闭的PreparedStatement代理
+     */
+    void closeLeakedStatements() {
+        for (Iterator<CachedStatement> it = this.statements.values().iterator(); it.hasNext();) {
+            CachedStatement cs = it.next();
+            if (cs.handle != null) {
+                log.debug("Closing PreparedStatement that was not closed before its connection");
+                if (!cs.checkin()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 物理连接关闭前调用，关闭缓存中的所有PreparedStatement
+     */
+    void closeAll() {
+        List<CachedStatement> list = new ArrayList<CachedStatement>(this.statements.values());
+        this.statements.clear();
+        for (CachedStatement cs : list) {
+            cs.closePhysical();
+        }
+    }
+
+    int size() {
+        return this.statements.size();
+    }
+
+    /**
+     * 缓存中的一个物理PreparedStatement，以及创建时的默认设置
+     */
+    private class CachedStatement {
+
+        private final String sql;
+
+        private final PreparedStatement statement;
+
+        private final int defaultFetchSize;
+
+        private final int defaultMaxRows;
+
+        private final int defaultQueryTimeout;
+
+        private final int defaultFetchDirection;
+
+        private final int defaultMaxFieldSize;
+
+        private final boolean defaultPoolable;
+
+        private boolean dirtyFetchSize;
+
+        private boolean dirtyMaxRows;
+
+        private boolean dirtyQueryTimeout;
+
+        private boolean dirtyFetchDirection;
+
+        private boolean dirtyMaxFieldSize;
+
+        private boolean dirtyPoolable;
+
+        private boolean dirtyEscapeProcessing;
+
+        private boolean dirtyBatch;
+
+        /** 调用过无法恢复的方法，归还时关闭 */
+        private boolean unresettable;
+
+        private boolean evicted;
+
+        /** 借出期间返回的ResultSet，归还时关闭 */
+        private List<ResultSet> resultSets;
+
+        /** 当前借出的代理，没有借出时为null */
+        private StatementHandle handle;
+
+        CachedStatement(String sql, PreparedStatement statement) throws SQLException {
+            this.sql = sql;
+            this.statement = statement;
+            this.defaultFetchSize = statement.getFetchSize();
+            this.defaultMaxRows = statement.getMaxRows();
+            this.defaultQueryTimeout = statement.getQueryTimeout();
+            this.defaultFetchDirection = statement.getFetchDirection();
+            this.defaultMaxFieldSize = statement.getMaxFieldSize();
+            this.defaultPoolable = statement.isPoolable();
+        }
+
+        PreparedStatement checkout(Connection connection) {
+            this.handle = new StatementHandle(this, connection);
+            return (PreparedStatement)Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, this.handle);
+        }
+
+        /**
+         * 逻辑关闭：恢复语句的状态并放回缓存
+         *
+         * @return 语句可以继续缓存时返回true，否则物理语句已被关闭
+         */
+        boolean checkin() {
+            this.handle.closed = true;
+            this.handle = null;
+            if (this.resultSets != null) {
+                for (ResultSet rs : this.resultSets) {
+                    JdbcUtils.closeResultSet(rs);
+                }
+                this.resultSets = null;
+            }
+            if (this.evicted || this.unresettable) {
+                this.evicted = true;
+                closePhysical();
+                return false;
+            }
+            try {
+                this.statement.clearParameters();
+                if (this.dirtyBatch) {
+                    this.statement.clearBatch();
+                    this.dirtyBatch = false;
+                }
+                if (this.dirtyFetchSize) {
+                    this.statement.setFetchSize(this.defaultFetchSize);
+                    this.dirtyFetchSize = false;
+                }
+                if (this.dirtyMaxRows) {
+                    this.statement.setMaxRows(this.defaultMaxRows);
+                    this.dirtyMaxRows = false;
+                }
+                if (this.dirtyQueryTimeout) {
+                    this.statement.setQueryTimeout(this.defaultQueryTimeout);
+                    this.dirtyQueryTimeout = false;
+                }
+                if (this.dirtyFetchDirection) {
+                    this.statement.setFetchDirection(this.defaultFetchDirection);
+                    this.dirtyFetchDirection = false;
+                }
+                if (this.dirtyMaxFieldSize) {
+                    this.statement.setMaxFieldSize(this.defaultMaxFieldSize);
+                    this.dirtyMaxFieldSize = false;
+                }
+                if (this.dirtyPoolable) {
+                    this.statement.setPoolable(this.defaultPoolable);
+                    this.dirtyPoolable = false;
+                }
+                if (this.dirtyEscapeProcessing) {
+                    this.statement.setEscapeProcessing(true);
+                    this.dirtyEscapeProcessing = false;
+                }
+                this.statement.clearWarnings();
+                return true;
+            } catch (SQLException ex) {
+                log.debug("Could not reset cached PreparedStatement, closing it", ex);
+                this.evicted = true;
+                closePhysical();
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            JdbcUtils.closeStatement(this.statement);
+        }
+
+        /**
+         * 记录借出期间被修改过的设置，和默认值相同的设置不需要恢复
+         */
+        void trackSetting(String name, Object[] args) {
+            if ("addBatch".equals(name)) {
+                this.dirtyBatch = true;
+            } else if ("setFetchSize".equals(name)) {
+                this.dirtyFetchSize |= ((Integer)args[0]).intValue() != this.defaultFetchSize;
+            } else if ("setMaxRows".equals(name)) {
+                this.dirtyMaxRows |= ((Integer)args[0]).intValue() != this.defaultMaxRows;
+            } else if ("setLargeMaxRows".equals(name)) {
+                this.dirtyMaxRows |= ((Long)args[0]).longValue() != this.defaultMaxRows;
+            } else if ("setQueryTimeout".equals(name)) {
+                this.dirtyQueryTimeout |= ((Integer)args[0]).intValue() != this.defaultQueryTimeout;
+            } else if ("setFetchDirection".equals(name)) {
+                this.dirtyFetchDirection |= ((Integer)args[0]).intValue()
+                        != this.defaultFetchDirection;
+            } else if ("setMaxFieldSize".equals(name)) {
+                this.dirtyMaxFieldSize |= ((Integer)args[0]).intValue() != this.defaultMaxFieldSize;
+            } else if ("setPoolable".equals(name)) {
+                this.dirtyPoolable |= ((Boolean)args[0]).booleanValue() != this.defaultPoolable;
+            } else if ("setEscapeProcessing".equals(name)) {
+                this.dirtyEscapeProcessing |= !((Boolean)args[0]).booleanValue();
+            } else if ("setCursorName".equals(name) || "closeOnCompletion".equals(name)) {
+                this.unresettable = true;
+            }
+        }
+
+        /**
+         * 记录新的ResultSet，同时丢弃已经关闭的，避免一次借出中多次执行时一直累积
+         */
+        void addResultSet(ResultSet rs) {
+            if (this.resultSets == null) {
+                this.resultSets = new ArrayList<ResultSet>(2);
+            }
+            for (Iterator<ResultSet> it = this.resultSets.iterator(); it.hasNext();) {
+                try {
+                    if (it.next().isClosed()) {
+                        it.remove();
+                    }
+                } catch (SQLException ex) {
+                    // 无法判断时保留，归还时再关闭
+                }
+            }
+            this.resultSets.add(rs);
+        }
+    }
+
+    /**
+     * 一次借出对应的PreparedStatement代理
+     */
+    private class StatementHandle implements InvocationHandler {
+
+        private final CachedStatement cached;
+
+        private final Connection connection;
+
+        private boolean closed;
+
+        StatementHandle(CachedStatement cached, Connection connection) {
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!this.closed && !this.cached.checkin()) {
+                    statements.remove(this.cached.sql, this.cached);
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return Boolean.valueOf(this.closed);
+            } else if ("getConnection".equals(name)) {
+                return this.connection;
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("toString".equals(name)) {
+                return "Cached statement [" + this.cached.statement + "]";
+            }
+
+            if (this.closed) {
+                throw new SQLException("PreparedStatement is closed");
+            }
+            this.cached.trackSetting(name, args);
+            Object result;
+            try {
+                result = method.invoke(this.cached.statement, args);
+            } catch (InvocationTargetException ex) {
+                owner.checkFatal(ex.getTargetException());
+                throw ex.getTargetException();
+            }
+            if (result instanceof ResultSet) {
+                // executeQuery()、getResultSet()、getGeneratedKeys()
+                this.cached.addResultSet((ResultSet)result);
+                return owner.wrap(ResultSet.class, result, null, proxy);
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+
+package com.zy.jdbclib.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import com.zy.jdbclib.dataSource.AbstractDataSource;
+import com.zy.jdbclib.dataSource.PooledDataSource;
+
+/**
+ * 比较PooledDataSource和一个用synchronized保护的简单连接队列在多线程竞争下借出/归还连接的吞吐量。
+ * 物理连接是不做任何事的内存代理，所以测出的只是连接池本身的开销。
+ *
+ * <pre>
+ * java com.zy.jdbclib.example.PoolContentionBenchmark [线程数] [连接池大小] [每轮秒数]
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class PoolContentionBenchmark {
+
+    /** 每次借出连接后模拟的工作量（纳秒） */
+    private static final long WORK_NANOS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("threads=" + threads + ", poolSize=" + poolSize + ", seconds="
+                + seconds);
+
+        for (int round = 0; round < 2; round++) {
+            String prefix = (round == 0 ? "warmup   " : "measure  ");
+
+            SynchronizedQueueDataSource syncPool = new SynchronizedQueueDataSource(
+                    new NoopDataSource(), poolSize);
+            long syncOps = run(syncPool, threads, seconds);
+            System.out.println(prefix + "synchronized queue : " + syncOps / seconds + " ops/s");
+
+            PooledDataSource pool = new PooledDataSource(new NoopDataSource());
+            pool.setMaxPoolSize(poolSize);
+            pool.setMinIdle(poolSize);
+            pool.init();
+            long pooledOps = run(pool, threads, seconds);
+            pool.close();
+            System.out.println(prefix + "PooledDataSource   : " + pooledOps / seconds + " ops/s");
+        }
+    }
+
+    private static long run(final DataSource dataSource, int threads, int seconds)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    long count = 0;
+                    try {
+                        start.await();
+                        while (running.get()) {
+                            Connection con = dataSource.getConnection();
+                            try {
+                                spin(WORK_NANOS);
+                            } finally {
+                                con.close();
+                            }
+                            count++;
+                        }
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    } finally {
+                        ops.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        done.await();
+        return ops.get();
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+    }
+
+    /**
+     * 作为对照的连接池：空闲连接放在一个LinkedList中，借出和归还都在同一把锁上同步
+     */
+    private static class SynchronizedQueueDataSource extends AbstractDataSource {
+
+        private final LinkedList<Connection> idle = new LinkedList<Connection>();
+
+        SynchronizedQueueDataSource(DataSource target, int size) throws SQLException {
+            for (int i = 0; i < size; i++) {
+                this.idle.add(target.getConnection());
+            }
+        }
+
+        public Connection getConnection() throws SQLException {
+            final Connection physical;
+            synchronized (this.idle) {
+                while (this.idle.isEmpty()) {
+                    try {
+                        this.idle.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted");
+                    }
+                }
+                physical = this.idle.removeFirst();
+            }
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                                throws Throwable {
+                            if ("close".equals(method.getName())) {
+                                synchronized (idle) {
+                                    idle.addFirst(physical);
+                                    idle.notify();
+                                }
+                                return null;
+                            }
+                            return method.invoke(physical, args);
+                        }
+                    });
+        }
+
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+
+    /**
+     * 返回不做任何事的内存连接
+     */
+    private static class NoopDataSource extends AbstractDataSource {
+
+        public Connection getConnection() throws SQLException {
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            Class<?> type = method.getReturnType();
+                            if (type == boolean.class) {
+                                return Boolean.FALSE;
+                            } else if (type == int.class) {
+                                return Integer.valueOf(Connection.TRANSACTION_READ_COMMITTED);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+
+}
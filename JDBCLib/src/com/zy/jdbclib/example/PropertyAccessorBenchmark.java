@@ -0,0 +1,101 @@
+
+package com.zy.jdbclib.example;
+
+import java.beans.PropertyDescriptor;
+import java.util.Date;
+
+import com.zy.jdbclib.utils.PropertyAccessor;
+import com.zy.jdbclib.utils.ReflectionUtils;
+
+/**
+ * 比较给Admin的5个属性赋值时，ReflectionUtils.setFieldValue（每次查找字段并setAccessible）
+ * 和预先解析的PropertyAccessor的耗时。直接调用setter作为下限参考。
+ *
+ * <pre>
+ * java com.zy.jdbclib.example.PropertyAccessorBenchmark [每轮行数]
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class PropertyAccessorBenchmark {
+
+    private static final String[] PROPERTIES = {"id", "username", "password", "lastIp",
+            "lastTime"};
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int MEASURE_ROUNDS = 5;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Object[] values = {Integer.valueOf(1), "admin", "secret", "127.0.0.1", new Date()};
+
+        PropertyAccessor[] accessors = new PropertyAccessor[PROPERTIES.length];
+        PropertyDescriptor[] pds = ReflectionUtils.getPropertyDescriptors(Admin.class);
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            for (PropertyDescriptor pd : pds) {
+                if (pd.getName().equals(PROPERTIES[i])) {
+                    accessors[i] = PropertyAccessor.forProperty(Admin.class, pd);
+                }
+            }
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            boolean measure = round >= WARMUP_ROUNDS;
+
+            long start = System.nanoTime();
+            reflection(rows, values);
+            long reflection = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            accessor(rows, values, accessors);
+            long accessor = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            direct(rows, values);
+            long direct = System.nanoTime() - start;
+
+            if (measure) {
+                System.out.println("ReflectionUtils.setFieldValue: " + (reflection / rows)
+                        + " ns/row, PropertyAccessor: " + (accessor / rows)
+                        + " ns/row, direct setters: " + (direct / rows) + " ns/row");
+            }
+        }
+    }
+
+    private static void reflection(int rows, Object[] values) {
+        for (int row = 0; row < rows; row++) {
+            Admin admin = new Admin();
+            for (int i = 0; i < PROPERTIES.length; i++) {
+                ReflectionUtils.setFieldValue(admin, PROPERTIES[i], values[i]);
+            }
+            sink = admin;
+        }
+    }
+
+    private static void accessor(int rows, Object[] values, PropertyAccessor[] accessors) {
+        for (int row = 0; row < rows; row++) {
+            Admin admin = new Admin();
+            for (int i = 0; i < accessors.length; i++) {
+                accessors[i].setValue(admin, values[i]);
+            }
+            sink = admin;
+        }
+    }
+
+    private static void direct(int rows, Object[] values) {
+        for (int row = 0; row < rows; row++) {
+            Admin admin = new Admin();
+            admin.setId((Integer)values[0]);
+            admin.setUsername((String)values[1]);
+            admin.setPassword((String)values[2]);
+            admin.setLastIp((String)values[3]);
+            admin.setLastTime((Date)values[4]);
+            sink = admin;
+        }
+    }
+
+}
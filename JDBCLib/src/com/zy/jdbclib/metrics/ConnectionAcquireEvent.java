@@ -0,0 +1,64 @@
+
+package com.zy.jdbclib.metrics;
+
+import javax.sql.DataSource;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import com.zy.jdbclib.dataSource.ReadOnlyContext;
+
+/**
+ * JdbcTemplate从数据源获取连接的JFR事件，持续时间包括在连接池中等待的时间。使用事务的连接时不产生事件。
+ * 通过{@link JfrEvents#beginConnectionAcquire()}使用，没有jdk.jfr模块时不使用本类。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+@Name("com.zy.jdbclib.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category( { "JDBCLib" })
+@Description("Time spent obtaining a connection from the DataSource")
+public final class ConnectionAcquireEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(ConnectionAcquireEvent.class);
+
+    @Label("DataSource")
+    String dataSource;
+
+    @Label("Read Only")
+    @Description("Whether the thread was routed to a read-only DataSource")
+    boolean readOnly;
+
+    @Label("Acquired")
+    @Description("False when getConnection() threw an exception")
+    boolean acquired;
+
+    /**
+     * @return 是否有正在进行的录制开启了这个事件
+     */
+    static boolean isEventEnabled() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * 结束事件，超过录制设置的阈值时提交
+     *
+     * @param dataSource 获取连接的数据源
+     * @param acquired 是否成功获取了连接
+     */
+    void commit(DataSource dataSource, boolean acquired) {
+        end();
+        if (shouldCommit()) {
+            this.dataSource = dataSource.getClass().getName();
+            this.readOnly = ReadOnlyContext.isReadOnly();
+            this.acquired = acquired;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+
+package com.zy.jdbclib.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.SqlFingerprint;
+
+/**
+ * 按sql分别统计各阶段耗时直方图、执行次数、失败次数和行数的{@link SqlMetrics}。sql按{@link SqlFingerprint}
+ * 归类，只有常量或IN列表长度不同的语句合并统计。
+ * 记录时只有ConcurrentHashMap的查找和LongAdder的累加，不加锁，可以在生产环境中一直开启。
+ * 统计的sql条数有上限，超过后新的sql合并到{@link #OTHER_STATEMENTS}中。
+ *
+ * <pre>
+ * DefaultSqlMetrics metrics = new DefaultSqlMetrics();
+ * metrics.registerMBean(&quot;com.zy.jdbclib:type=SqlMetrics,name=main&quot;);
+ * template.setSqlMetrics(metrics);
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class DefaultSqlMetrics implements SqlMetrics, DefaultSqlMetricsMBean {
+
+    public static final int DEFAULT_MAX_STATEMENTS = 1000;
+
+    /** 超过上限后新出现的sql使用的统计名 */
+    public static final String OTHER_STATEMENTS = "[other]";
+
+    /** 在用户的ConnectionCallback中执行、无法得知sql时使用的统计名 */
+    public static final String UNKNOWN_STATEMENT = "[unknown]";
+
+    private static final Long UNKNOWN_KEY = Long.valueOf(0);
+
+    private static final Long OTHER_KEY = Long.valueOf(1);
+
+    /** 以指纹的64位哈希为key */
+    private volatile ConcurrentHashMap<Long, StatementMetrics> statements = new ConcurrentHashMap<Long, StatementMetrics>();
+
+    private volatile long startTime = System.nanoTime();
+
+    private int maxStatements = DEFAULT_MAX_STATEMENTS;
+
+    public void record(SqlExecution execution) {
+        SqlFingerprint fingerprint = execution.getFingerprint();
+        Long key = (fingerprint != null ? Long.valueOf(fingerprint.getHash()) : UNKNOWN_KEY);
+        ConcurrentHashMap<Long, StatementMetrics> map = this.statements;
+        StatementMetrics metrics = map.get(key);
+        if (metrics == null) {
+            String name = (fingerprint != null ? fingerprint.getNormalizedSql()
+                    : UNKNOWN_STATEMENT);
+            if (map.size() >= this.maxStatements) {
+                key = OTHER_KEY;
+                name = OTHER_STATEMENTS;
+            }
+            metrics = new StatementMetrics(name);
+            StatementMetrics existing = map.putIfAbsent(key, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        metrics.record(execution);
+    }
+
+    /**
+     * @return 所有sql的统计，按总耗时从大到小排列
+     */
+    public List<SqlStatementSnapshot> snapshot() {
+        long interval = System.nanoTime() - this.startTime;
+        List<SqlStatementSnapshot> snapshots = new ArrayList<SqlStatementSnapshot>();
+        for (StatementMetrics metrics : this.statements.values()) {
+            snapshots.add(metrics.snapshot(interval));
+        }
+        Collections.sort(snapshots, new Comparator<SqlStatementSnapshot>() {
+            public int compare(SqlStatementSnapshot o1, SqlStatementSnapshot o2) {
+                return Long.compare(o2.getTotal().getTotalNanos(), o1.getTotal().getTotalNanos());
+            }
+        });
+        return snapshots;
+    }
+
+    /**
+     * @param sql 执行的sql
+     * @return 该sql的统计，没有执行过时返回null
+     */
+    public SqlStatementSnapshot snapshot(String sql) {
+        StatementMetrics metrics = this.statements.get(Long.valueOf(SqlFingerprint.of(sql)
+                .getHash()));
+        return (metrics != null ? metrics.snapshot(System.nanoTime() - this.startTime) : null);
+    }
+
+    public int getStatementCount() {
+        return this.statements.size();
+    }
+
+    public long getExecutionCount() {
+        long count = 0;
+        for (SqlStatementSnapshot snapshot : snapshot()) {
+            count += snapshot.getExecutions();
+        }
+        return count;
+    }
+
+    public long getErrorCount() {
+        long count = 0;
+        for (SqlStatementSnapshot snapshot : snapshot()) {
+            count += snapshot.getErrors();
+        }
+        return count;
+    }
+
+    public String[] topStatements(int limit) {
+        List<SqlStatementSnapshot> snapshots = snapshot();
+        int size = Math.min(Math.max(limit, 0), snapshots.size());
+        String[] result = new String[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = snapshots.get(i).toString();
+        }
+        return result;
+    }
+
+    /**
+     * 清除所有统计。正在记录的数据可能计入旧的统计中。
+     */
+    public void reset() {
+        this.statements = new ConcurrentHashMap<Long, StatementMetrics>();
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * 注册到平台MBeanServer
+     *
+     * @param name ObjectName，如<code>com.zy.jdbclib:type=SqlMetrics,name=main</code>
+     * @throws JDBCException 注册失败时
+     */
+    public void registerMBean(String name) throws JDBCException {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(name));
+        } catch (JMException ex) {
+            throw new JDBCException("Could not register SQL metrics MBean [" + name + "]", ex);
+        }
+    }
+
+    /**
+     * 从平台MBeanServer注销
+     *
+     * @param name 注册时使用的ObjectName
+     */
+    public void unregisterMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(name));
+        } catch (JMException ex) {
+            throw new JDBCException("Could not unregister SQL metrics MBean [" + name + "]", ex);
+        }
+    }
+
+    /**
+     * @return the maxStatements
+     */
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    /**
+     * @param maxStatements 分别统计的sql的最大条数
+     */
+    public void setMaxStatements(int maxStatements) {
+        Assert.isTrue(maxStatements > 0, "maxStatements must be greater than 0");
+        this.maxStatements = maxStatements;
+    }
+
+}
@@ -0,0 +1,38 @@
+
+package com.zy.jdbclib.metrics;
+
+/**
+ * {@link DefaultSqlMetrics}的JMX接口
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public interface DefaultSqlMetricsMBean {
+
+	/**
+	 * @return 统计的sql条数
+	 */
+	public int getStatementCount();
+
+	/**
+	 * @return 所有sql的执行次数
+	 */
+	public long getExecutionCount();
+
+	/**
+	 * @return 所有sql的失败次数
+	 */
+	public long getErrorCount();
+
+	/**
+	 * @param limit 最多返回的条数
+	 * @return 按总耗时从大到小排列的sql统计
+	 */
+	public String[] topStatements(int limit);
+
+	/**
+	 * 清除所有统计
+	 */
+	public void reset();
+
+}
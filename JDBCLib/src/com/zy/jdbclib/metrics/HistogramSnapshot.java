@@ -0,0 +1,88 @@
+
+package com.zy.jdbclib.metrics;
+
+/**
+ * {@link LatencyHistogram}的快照，不可变。时间都以纳秒为单位。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long totalNanos;
+
+    private final long maxNanos;
+
+    HistogramSnapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+        this.counts = counts;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return 记录的次数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 总耗时
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return 最大耗时
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return 平均耗时
+     */
+    public long getMeanNanos() {
+        return (this.count > 0 ? this.totalNanos / this.count : 0);
+    }
+
+    /**
+     * @param percentile 百分位，如99.9
+     * @return 不小于该百分位的桶的上界，不超过最大耗时
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        for (long c : this.counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min((LatencyHistogram.upperBound(i) + 1) * 1000 - 1, this.maxNanos);
+            }
+        }
+        return this.maxNanos;
+    }
+
+    public String toString() {
+        return "count=" + this.count + ", mean=" + micros(getMeanNanos()) + "us, p50="
+                + micros(getPercentileNanos(50)) + "us, p99=" + micros(getPercentileNanos(99))
+                + "us, max=" + micros(this.maxNanos) + "us";
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+}
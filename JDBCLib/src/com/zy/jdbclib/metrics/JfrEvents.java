@@ -0,0 +1,104 @@
+
+package com.zy.jdbclib.metrics;
+
+import javax.sql.DataSource;
+
+/**
+ * {@link SqlEvent}和{@link ConnectionAcquireEvent}的入口。运行时没有jdk.jfr模块（如jlink裁剪过的JRE）时
+ * 只在加载本类时检测一次，之后所有方法都按未开启处理，不会抛出NoClassDefFoundError。
+ * 事件对象以Object传递，调用者不需要引用jdk.jfr中的类型。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class JfrEvents {
+
+    /** jdk.jfr模块是否可用 */
+    private static final boolean AVAILABLE;
+
+    static {
+        boolean available;
+        try {
+            SqlEvent.isEventEnabled();
+            ConnectionAcquireEvent.isEventEnabled();
+            available = true;
+        } catch (LinkageError ex) {
+            available = false;
+        }
+        AVAILABLE = available;
+    }
+
+    private JfrEvents() {
+    }
+
+    /**
+     * @return jdk.jfr模块是否可用
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * @return 是否有正在进行的录制开启了{@link SqlEvent}
+     */
+    public static boolean isSqlEventEnabled() {
+        return AVAILABLE && SqlEvent.isEventEnabled();
+    }
+
+    /**
+     * @return 已经begin的{@link SqlEvent}，没有开启时返回null
+     */
+    static Object beginSqlEvent() {
+        if (!isSqlEventEnabled()) {
+            return null;
+        }
+        SqlEvent event = new SqlEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event {@link #beginSqlEvent()}的返回值，不能为null
+     * @param execution 已经结束的执行
+     */
+    static void commitSqlEvent(Object event, SqlExecution execution) {
+        ((SqlEvent)event).commit(execution);
+    }
+
+    /**
+     * 开始获取连接，用法：
+     *
+     * <pre>
+     * Object event = JfrEvents.beginConnectionAcquire();
+     * Connection con = null;
+     * try {
+     *     con = dataSource.getConnection();
+     * } finally {
+     *     JfrEvents.commitConnectionAcquire(event, dataSource, con != null);
+     * }
+     * </pre>
+     *
+     * @return 已经begin的{@link ConnectionAcquireEvent}，没有开启时返回null
+     */
+    public static Object beginConnectionAcquire() {
+        if (!AVAILABLE || !ConnectionAcquireEvent.isEventEnabled()) {
+            return null;
+        }
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event {@link #beginConnectionAcquire()}的返回值，为null时什么也不做
+     * @param dataSource 获取连接的数据源
+     * @param acquired 是否成功获取了连接
+     */
+    public static void commitConnectionAcquire(Object event, DataSource dataSource,
+            boolean acquired) {
+        if (event != null) {
+            ((ConnectionAcquireEvent)event).commit(dataSource, acquired);
+        }
+    }
+
+}
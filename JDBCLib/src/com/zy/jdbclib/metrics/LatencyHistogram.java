@@ -0,0 +1,102 @@
+
+package com.zy.jdbclib.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的耗时直方图。按微秒计，每个2的幂区间再分成8个子区间（与HdrHistogram的对数-线性分桶相同），
+ * 相对误差不超过12.5%，范围约19小时。每个桶是一个LongAdder，第一次用到时才创建，
+ * 多个线程同时记录时分散到不同的Cell，不互相竞争。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** 最大的2的幂（微秒），超过的值计入最后一个桶 */
+    private static final int MAX_EXPONENT = 36;
+
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1)
+            * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<LongAdder>(
+            BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int index = index(nanos / 1000);
+        LongAdder bucket = this.buckets.get(index);
+        if (bucket == null) {
+            bucket = new LongAdder();
+            if (!this.buckets.compareAndSet(index, null, bucket)) {
+                bucket = this.buckets.get(index);
+            }
+        }
+        bucket.increment();
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        long max = this.maxNanos.get();
+        while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int)micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int)(micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return 桶中的最大值（微秒）
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long)(SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 复制当前的计数。记录和复制同时进行时，各个计数之间可能有微小的不一致。
+     *
+     * @return 快照
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            LongAdder bucket = this.buckets.get(i);
+            if (bucket != null) {
+                counts[i] = bucket.sum();
+            }
+        }
+        return new HistogramSnapshot(counts, this.count.sum(), this.totalNanos.sum(),
+                this.maxNanos.get());
+    }
+
+}
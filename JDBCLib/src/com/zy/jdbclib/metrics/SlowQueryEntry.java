@@ -0,0 +1,204 @@
+
+package com.zy.jdbclib.metrics;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+
+import javax.sql.DataSource;
+
+/**
+ * 慢查询日志的一条记录，在请求线程中从{@link SqlExecution}复制，由写日志的线程格式化
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class SlowQueryEntry {
+
+    /** 字符串参数超过这个长度时截断 */
+    private static final int MAX_VALUE_LENGTH = 100;
+
+    private final long timestamp;
+
+    private final String threadName;
+
+    private final String sql;
+
+    private final Object[] parameters;
+
+    private final int[] parameterTypes;
+
+    private final long totalNanos;
+
+    private final long[] phaseNanos;
+
+    private final long rowsReturned;
+
+    private final long rowsAffected;
+
+    private final Throwable error;
+
+    /** 执行EXPLAIN使用的数据源，不需要EXPLAIN时为null */
+    private final DataSource dataSource;
+
+    private volatile String plan;
+
+    SlowQueryEntry(SqlExecution execution, DataSource dataSource) {
+        this.timestamp = System.currentTimeMillis();
+        this.threadName = Thread.currentThread().getName();
+        this.sql = execution.getSql();
+        Object[] args = execution.getParameters();
+        this.parameters = (args != null ? args.clone() : null);
+        this.parameterTypes = execution.getParameterTypes();
+        this.totalNanos = execution.getTotalNanos();
+        SqlPhase[] phases = SqlPhase.values();
+        this.phaseNanos = new long[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            this.phaseNanos[i] = execution.getPhaseNanos(phases[i]);
+        }
+        this.rowsReturned = execution.getRowsReturned();
+        this.rowsAffected = execution.getRowsAffected();
+        this.error = execution.getError();
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return 记录的时间
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return 执行sql的线程名
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return the sql
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return 绑定的参数，不是通过参数数组设置的参数时为null
+     */
+    public Object[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return 参数类型，没有指定时为null
+     */
+    public int[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    /**
+     * @return 总耗时（纳秒）
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @param phase 阶段
+     * @return 该阶段的耗时（纳秒）
+     */
+    public long getPhaseNanos(SqlPhase phase) {
+        return this.phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the rowsReturned
+     */
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    /**
+     * @return the rowsAffected
+     */
+    public long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    /**
+     * @return 执行失败时的异常
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @return EXPLAIN的结果，没有执行EXPLAIN时为null
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Slow SQL (").append(this.totalNanos / 1000000).append(" ms");
+        for (SqlPhase phase : SqlPhase.values()) {
+            sb.append(", ").append(phase.name().toLowerCase()).append('=').append(
+                    this.phaseNanos[phase.ordinal()] / 1000000).append(" ms");
+        }
+        sb.append(", rowsReturned=").append(this.rowsReturned);
+        sb.append(", rowsAffected=").append(this.rowsAffected);
+        sb.append(", thread=").append(this.threadName);
+        sb.append(", at ").append(new Date(this.timestamp)).append("): ").append(this.sql);
+        if (this.parameters != null) {
+            sb.append(" [");
+            for (int i = 0; i < this.parameters.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                appendValue(sb, this.parameters[i]);
+            }
+            sb.append(']');
+        }
+        if (this.error != null) {
+            sb.append("\n  error: ").append(this.error);
+        }
+        if (this.plan != null) {
+            sb.append("\n  plan:\n").append(this.plan);
+        }
+        return sb.toString();
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof byte[]) {
+            sb.append("<").append(((byte[])value).length).append(" bytes>");
+        } else if (value instanceof Collection || value.getClass().isArray()) {
+            int size = (value instanceof Collection ? ((Collection<?>)value).size() : Array
+                    .getLength(value));
+            sb.append("<").append(size).append(" elements>");
+        } else if (value instanceof CharSequence) {
+            String text = value.toString();
+            sb.append('\'');
+            if (text.length() > MAX_VALUE_LENGTH) {
+                sb.append(text, 0, MAX_VALUE_LENGTH).append("...");
+            } else {
+                sb.append(text);
+            }
+            sb.append('\'');
+        } else {
+            sb.append(value);
+        }
+    }
+
+}
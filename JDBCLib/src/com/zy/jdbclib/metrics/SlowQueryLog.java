@@ -0,0 +1,323 @@
+
+package com.zy.jdbclib.metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.dataSource.ReadOnlyContext;
+import com.zy.jdbclib.utils.ArgPreparedStatementSetter;
+import com.zy.jdbclib.utils.ArgTypePreparedStatementSetter;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.BoundedCache;
+import com.zy.jdbclib.utils.JdbcUtils;
+import com.zy.jdbclib.utils.SqlFingerprint;
+
+/**
+ * 慢查询日志。执行线程只把记录放入固定大小的环形缓冲区（CAS，不加锁、不等待），
+ * 由一个后台线程取出后写日志；缓冲区满时丢弃新的记录并计数，不会阻塞执行线程。
+ * <p>
+ * 开启{@link #setExplain(boolean)}后，后台线程对慢的SELECT语句用原来的参数在另外一个只读连接上执行
+ * <code>EXPLAIN</code>，把执行计划附加到日志中。同一个指纹的语句在{@link #setExplainInterval(long)}
+ * 内只EXPLAIN一次。
+ *
+ * <pre>
+ * template.setSlowQueryThreshold(500);
+ * template.setSlowQueryLog(new SlowQueryLog(1024));
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class SlowQueryLog {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public static final long DEFAULT_EXPLAIN_INTERVAL = 60000;
+
+    private static final Log log = LogFactory.getLog(SlowQueryLog.class);
+
+    private static final int MAX_EXPLAIN_ROWS = 50;
+
+    private static SlowQueryLog defaultLog;
+
+    private final AtomicReferenceArray<SlowQueryEntry> buffer;
+
+    private final int mask;
+
+    /** 关闭后后台线程写完所有记录时设置的tail，之后不能再占用位置 */
+    private static final long SEALED = Long.MAX_VALUE;
+
+    /** 下一个写入的位置，由执行线程CAS递增 */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** 下一个读取的位置，只由后台线程修改 */
+    private volatile long head = 0;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile Thread writer;
+
+    private volatile boolean closed = false;
+
+    private volatile boolean explain = false;
+
+    private volatile long explainInterval = DEFAULT_EXPLAIN_INTERVAL;
+
+    /** 指纹哈希 -> 最后一次EXPLAIN的时间，只在后台线程中使用 */
+    private final BoundedCache<Long, Long> lastExplained = new BoundedCache<Long, Long>(1024);
+
+    public SlowQueryLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 缓冲区大小，向上取整为2的幂
+     */
+    public SlowQueryLog(int capacity) {
+        Assert.isTrue(capacity > 0 && capacity <= (1 << 20),
+                "capacity must be between 1 and 1048576");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<SlowQueryEntry>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return 共享的默认实例，JdbcTemplate设置了阈值但没有设置日志时使用
+     */
+    public static synchronized SlowQueryLog getDefault() {
+        if (defaultLog == null) {
+            defaultLog = new SlowQueryLog();
+        }
+        return defaultLog;
+    }
+
+    /**
+     * 记录一次慢的执行，由执行线程调用，不会阻塞
+     *
+     * @param execution 已经结束的执行
+     * @param dataSource 执行使用的数据源，用于EXPLAIN，可以为null
+     * @return 缓冲区满或者已经关闭时返回false
+     */
+    public boolean log(SqlExecution execution, DataSource dataSource) {
+        if (this.closed) {
+            this.dropped.increment();
+            return false;
+        }
+        SlowQueryEntry entry = new SlowQueryEntry(execution, (this.explain ? dataSource : null));
+        long t;
+        do {
+            t = this.tail.get();
+            // 已经SEALED时同样视为满
+            if (t - this.head >= this.buffer.length()) {
+                this.dropped.increment();
+                return false;
+            }
+        } while (!this.tail.compareAndSet(t, t + 1));
+        this.buffer.set((int)(t & this.mask), entry);
+        Thread thread = this.writer;
+        if (thread == null) {
+            thread = startWriter();
+        }
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    private synchronized Thread startWriter() {
+        if (this.writer == null) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            }, "jdbclib-slow-query-log");
+            thread.setDaemon(true);
+            thread.start();
+            this.writer = thread;
+        }
+        return this.writer;
+    }
+
+    private void drain() {
+        while (true) {
+            long h = this.head;
+            int index = (int)(h & this.mask);
+            SlowQueryEntry entry = this.buffer.get(index);
+            if (entry == null) {
+                if (h != this.tail.get()) {
+                    // 位置已经被占用，执行线程还没有写入
+                    Thread.yield();
+                } else if (this.closed) {
+                    // 检查closed之前通过检查的执行线程可能还会占用位置，只有封住tail之后才能结束
+                    if (this.tail.compareAndSet(h, SEALED)) {
+                        return;
+                    }
+                } else {
+                    LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+                }
+                continue;
+            }
+            this.buffer.set(index, null);
+            this.head = h + 1;
+            try {
+                if (entry.getDataSource() != null) {
+                    explain(entry);
+                }
+                write(entry);
+            } catch (RuntimeException ex) {
+                log.warn("Could not write slow query log entry", ex);
+            }
+        }
+    }
+
+    /**
+     * 写一条记录，在后台线程中调用。默认以WARN级别写到commons-logging
+     *
+     * @param entry 记录
+     */
+    protected void write(SlowQueryEntry entry) {
+        if (log.isWarnEnabled()) {
+            log.warn(entry);
+        }
+    }
+
+    private void explain(SlowQueryEntry entry) {
+        if (entry.getError() != null || entry.getSql() == null) {
+            return;
+        }
+        SqlFingerprint fingerprint = SqlFingerprint.of(entry.getSql());
+        String normalized = fingerprint.getNormalizedSql();
+        if (!normalized.startsWith("select ") && !normalized.startsWith("with ")) {
+            return;
+        }
+        Long key = Long.valueOf(fingerprint.getHash());
+        long now = System.currentTimeMillis();
+        Long last = this.lastExplained.get(key);
+        if (last != null && now - last.longValue() < this.explainInterval) {
+            return;
+        }
+        // put()不覆盖已有的值
+        this.lastExplained.remove(key);
+        this.lastExplained.put(key, Long.valueOf(now));
+
+        Boolean previous = ReadOnlyContext.bind(Boolean.TRUE);
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = entry.getDataSource().getConnection();
+            ps = con.prepareStatement("EXPLAIN " + entry.getSql());
+            if (entry.getParameterTypes() != null) {
+                new ArgTypePreparedStatementSetter(entry.getParameters(), entry
+                        .getParameterTypes()).setValues(ps);
+            } else {
+                new ArgPreparedStatementSetter(entry.getParameters()).setValues(ps);
+            }
+            rs = ps.executeQuery();
+            entry.setPlan(formatPlan(rs));
+        } catch (SQLException ex) {
+            entry.setPlan("  EXPLAIN failed: " + ex.getMessage());
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            JdbcUtils.closeConnection(con);
+            ReadOnlyContext.restore(previous);
+        }
+    }
+
+    private static String formatPlan(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        StringBuilder sb = new StringBuilder();
+        int rows = 0;
+        while (rs.next() && rows++ < MAX_EXPLAIN_ROWS) {
+            sb.append("  ");
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    sb.append(", ");
+                }
+                sb.append(JdbcUtils.lookupColumnName(metaData, i)).append('=').append(
+                        rs.getObject(i));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 关闭日志，后台线程写完缓冲区中已有的记录后结束
+     */
+    public void close() {
+        this.closed = true;
+        Thread thread = this.writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return 因为缓冲区满或者已经关闭而丢弃的记录数
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return 缓冲区中等待写入的记录数
+     */
+    public int getPendingCount() {
+        long t = this.tail.get();
+        return (t == SEALED ? 0 : (int)Math.max(0, t - this.head));
+    }
+
+    /**
+     * @return 缓冲区大小
+     */
+    public int getCapacity() {
+        return this.buffer.length();
+    }
+
+    /**
+     * @return the explain
+     */
+    public boolean isExplain() {
+        return explain;
+    }
+
+    /**
+     * @param explain 是否对慢的SELECT语句在另外的连接上执行EXPLAIN
+     */
+    public void setExplain(boolean explain) {
+        this.explain = explain;
+    }
+
+    /**
+     * @return the explainInterval
+     */
+    public long getExplainInterval() {
+        return explainInterval;
+    }
+
+    /**
+     * @param explainInterval 同一个指纹的语句两次EXPLAIN的最小间隔（毫秒）
+     */
+    public void setExplainInterval(long explainInterval) {
+        Assert.isTrue(explainInterval >= 0, "explainInterval must not be negative");
+        this.explainInterval = explainInterval;
+    }
+
+}
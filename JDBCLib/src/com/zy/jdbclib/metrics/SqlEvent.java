@@ -0,0 +1,105 @@
+
+package com.zy.jdbclib.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import com.zy.jdbclib.utils.SqlFingerprint;
+
+/**
+ * 一次JdbcTemplate调用（execute、query、update、batchUpdate等）的JFR事件，持续时间从获取连接到释放连接。
+ * 由{@link SqlExecution}通过{@link JfrEvents}在开始时begin，结束时提交，线程、开始时间和调用栈由JFR记录。
+ * 没有正在进行的录制时不创建事件对象，几乎没有开销；没有jdk.jfr模块时不使用本类。
+ *
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start name=sql settings=profile
+ * jfr print --events com.zy.jdbclib.SqlExecution recording.jfr
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+@Name("com.zy.jdbclib.SqlExecution")
+@Label("SQL Execution")
+@Category( { "JDBCLib" })
+@Description("A JdbcTemplate call from connection acquisition to release")
+public final class SqlEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(SqlEvent.class);
+
+    @Label("SQL")
+    @Description("Fingerprint of the statement, constants replaced by ?")
+    String sql;
+
+    @Label("Fingerprint")
+    @Description("64-bit hash of the normalized statement")
+    long fingerprint;
+
+    @Label("Rows Returned")
+    long rowsReturned;
+
+    @Label("Rows Affected")
+    long rowsAffected;
+
+    @Label("Acquire Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long acquireTime;
+
+    @Label("Prepare Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long prepareTime;
+
+    @Label("Execute Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long executeTime;
+
+    @Label("Mapping Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long mappingTime;
+
+    @Label("Close Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long closeTime;
+
+    @Label("Error")
+    String error;
+
+    /**
+     * @return 是否有正在进行的录制开启了这个事件
+     */
+    static boolean isEventEnabled() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * 结束事件，超过录制设置的阈值时填入执行的统计数据并提交
+     */
+    void commit(SqlExecution execution) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        SqlFingerprint fp = execution.getFingerprint();
+        if (fp != null) {
+            this.sql = fp.getNormalizedSql();
+            this.fingerprint = fp.getHash();
+        }
+        this.rowsReturned = execution.getRowsReturned();
+        this.rowsAffected = execution.getRowsAffected();
+        this.acquireTime = execution.getPhaseNanos(SqlPhase.ACQUIRE);
+        this.prepareTime = execution.getPhaseNanos(SqlPhase.PREPARE);
+        this.executeTime = execution.getPhaseNanos(SqlPhase.EXECUTE);
+        this.mappingTime = execution.getPhaseNanos(SqlPhase.MAPPING);
+        this.closeTime = execution.getPhaseNanos(SqlPhase.CLOSE);
+        if (execution.getError() != null) {
+            this.error = execution.getError().toString();
+        }
+        commit();
+    }
+
+}
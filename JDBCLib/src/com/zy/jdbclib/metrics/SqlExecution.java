@@ -0,0 +1,220 @@
+
+package com.zy.jdbclib.metrics;
+
+import java.util.Collection;
+
+import com.zy.jdbclib.utils.SqlFingerprint;
+
+/**
+ * 一次JdbcTemplate调用的统计数据：sql、各阶段的耗时、返回和影响的行数、异常。
+ * 由JdbcTemplate在获取连接时创建并绑定到当前线程，执行过程中各阶段的代码通过{@link #current()}累加耗时，
+ * 结束后交给{@link SqlMetrics}。不是线程安全的，只在创建它的线程中使用。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class SqlExecution {
+
+    private static final ThreadLocal<SqlExecution> current = new ThreadLocal<SqlExecution>();
+
+    private static final int PHASE_COUNT = SqlPhase.values().length;
+
+    /** 嵌套调用时外层的执行 */
+    private final SqlExecution previous;
+
+    private final long startTime;
+
+    private final long[] phaseNanos = new long[PHASE_COUNT];
+
+    private long totalNanos = -1;
+
+    private String sql;
+
+    private SqlFingerprint fingerprint;
+
+    private long rowsReturned = 0;
+
+    private long rowsAffected = 0;
+
+    private Throwable error;
+
+    private Object[] parameters;
+
+    private int[] parameterTypes;
+
+    /** 有正在进行的JFR录制时的{@link SqlEvent} */
+    private final Object event;
+
+    private SqlExecution(SqlExecution previous) {
+        this.previous = previous;
+        this.event = JfrEvents.beginSqlEvent();
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * 开始一次执行并绑定到当前线程
+     *
+     * @return 新的执行，结束时必须调用{@link #finish()}
+     */
+    public static SqlExecution begin() {
+        SqlExecution execution = new SqlExecution(current.get());
+        current.set(execution);
+        return execution;
+    }
+
+    /**
+     * @return 当前线程中正在进行的执行，没有时返回null
+     */
+    public static SqlExecution current() {
+        return current.get();
+    }
+
+    /**
+     * 结束执行，计算总耗时，提交JFR事件，恢复外层的执行
+     */
+    public void finish() {
+        this.totalNanos = System.nanoTime() - this.startTime;
+        if (this.previous == null) {
+            current.remove();
+        } else {
+            current.set(this.previous);
+        }
+        if (this.event != null) {
+            JfrEvents.commitSqlEvent(this.event, this);
+        }
+    }
+
+    /**
+     * 累加一个阶段的耗时
+     *
+     * @param phase 阶段
+     * @param since 阶段开始时的System.nanoTime()
+     * @return 当前的System.nanoTime()，可以作为下一个阶段的开始时间
+     */
+    public long end(SqlPhase phase, long since) {
+        long now = System.nanoTime();
+        this.phaseNanos[phase.ordinal()] += now - since;
+        return now;
+    }
+
+    /**
+     * @param result 查询结果，是Collection时累加其大小
+     */
+    public void addRowsReturned(Object result) {
+        if (result instanceof Collection) {
+            this.rowsReturned += ((Collection<?>)result).size();
+        }
+    }
+
+    public void addRowsReturned(long rows) {
+        this.rowsReturned += rows;
+    }
+
+    public void addRowsAffected(long rows) {
+        this.rowsAffected += rows;
+    }
+
+    /**
+     * @param rows 批量执行的结果，只累加确定的行数
+     */
+    public void addRowsAffected(int[] rows) {
+        for (int r : rows) {
+            if (r > 0) {
+                this.rowsAffected += r;
+            }
+        }
+    }
+
+    /**
+     * @return 执行的sql，用户自己的ConnectionCallback中执行的sql无法得知，为null
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @param sql 执行的sql，为null时不修改
+     */
+    public void setSql(String sql) {
+        if (sql != null && !sql.equals(this.sql)) {
+            this.sql = sql;
+            this.fingerprint = null;
+        }
+    }
+
+    /**
+     * @return sql的指纹，只有常量或IN列表长度不同的sql相同；sql未知时返回null
+     */
+    public SqlFingerprint getFingerprint() {
+        if (this.fingerprint == null && this.sql != null) {
+            this.fingerprint = SqlFingerprint.of(this.sql);
+        }
+        return this.fingerprint;
+    }
+
+    /**
+     * @param phase 阶段
+     * @return 该阶段的耗时（纳秒）
+     */
+    public long getPhaseNanos(SqlPhase phase) {
+        return this.phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return 从获取连接到释放连接的总耗时（纳秒），还没有结束时为-1
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the rowsReturned
+     */
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    /**
+     * @return the rowsAffected
+     */
+    public long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    /**
+     * @return 执行失败时的异常，成功时为null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public void setError(Throwable error) {
+        this.error = error;
+    }
+
+    /**
+     * @return 最后一次执行时绑定的参数，不是通过参数数组设置时为null
+     */
+    public Object[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return 参数类型，没有指定时为null
+     */
+    public int[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    /**
+     * 记录绑定的参数，只保存引用，慢查询日志需要时才复制
+     *
+     * @param parameters 参数
+     * @param parameterTypes 参数类型，可以为null
+     */
+    public void setParameters(Object[] parameters, int[] parameterTypes) {
+        this.parameters = parameters;
+        this.parameterTypes = parameterTypes;
+    }
+
+}
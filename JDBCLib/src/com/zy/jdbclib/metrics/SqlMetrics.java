@@ -0,0 +1,18 @@
+
+package com.zy.jdbclib.metrics;
+
+/**
+ * 接收每次sql执行的统计数据。JdbcTemplate设置了SqlMetrics时，在每次调用结束后（释放连接之后）
+ * 以调用线程调用{@link #record(SqlExecution)}，实现必须是线程安全的，并且应当足够快。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public interface SqlMetrics {
+
+	/**
+	 * @param execution 已经结束的一次执行，调用返回后不应再持有
+	 */
+	public void record(SqlExecution execution);
+
+}
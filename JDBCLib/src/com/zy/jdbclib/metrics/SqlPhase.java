@@ -0,0 +1,27 @@
+
+package com.zy.jdbclib.metrics;
+
+/**
+ * 一次sql执行的各个阶段
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public enum SqlPhase {
+
+    /** 获取连接 */
+    ACQUIRE,
+
+    /** 创建Statement并应用fetchSize、超时等设置，不包括设置参数值 */
+    PREPARE,
+
+    /** 执行语句，包括设置参数值 */
+    EXECUTE,
+
+    /** 读取并映射结果集 */
+    MAPPING,
+
+    /** 关闭Statement、释放连接 */
+    CLOSE
+
+}
@@ -0,0 +1,100 @@
+
+package com.zy.jdbclib.metrics;
+
+/**
+ * 一条sql的统计快照，不可变
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class SqlStatementSnapshot {
+
+    private final String sql;
+
+    private final HistogramSnapshot total;
+
+    private final HistogramSnapshot[] phases;
+
+    private final long errors;
+
+    private final long rowsReturned;
+
+    private final long rowsAffected;
+
+    /** 统计的时间段长度（纳秒） */
+    private final long intervalNanos;
+
+    SqlStatementSnapshot(String sql, HistogramSnapshot total, HistogramSnapshot[] phases,
+            long errors, long rowsReturned, long rowsAffected, long intervalNanos) {
+        this.sql = sql;
+        this.total = total;
+        this.phases = phases;
+        this.errors = errors;
+        this.rowsReturned = rowsReturned;
+        this.rowsAffected = rowsAffected;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * @return 统计使用的sql
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return 执行次数
+     */
+    public long getExecutions() {
+        return this.total.getCount();
+    }
+
+    /**
+     * @return 每秒的执行次数，按开始统计以来的时间计算
+     */
+    public double getThroughput() {
+        return (this.intervalNanos > 0 ? this.total.getCount() * 1e9 / this.intervalNanos : 0);
+    }
+
+    /**
+     * @return 从获取连接到释放连接的总耗时
+     */
+    public HistogramSnapshot getTotal() {
+        return total;
+    }
+
+    /**
+     * @param phase 阶段
+     * @return 该阶段的耗时，只包括经过了该阶段的执行
+     */
+    public HistogramSnapshot getPhase(SqlPhase phase) {
+        return this.phases[phase.ordinal()];
+    }
+
+    /**
+     * @return the errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the rowsReturned
+     */
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    /**
+     * @return the rowsAffected
+     */
+    public long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    public String toString() {
+        return "[" + this.total + ", errors=" + this.errors + ", rowsReturned="
+                + this.rowsReturned + ", rowsAffected=" + this.rowsAffected + "] " + this.sql;
+    }
+
+}
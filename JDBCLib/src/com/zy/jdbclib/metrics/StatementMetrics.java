@@ -0,0 +1,64 @@
+
+package com.zy.jdbclib.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一条sql的累计统计，所有计数都是无锁的
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+class StatementMetrics {
+
+    private final String sql;
+
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    private final LatencyHistogram[] phases;
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder rowsReturned = new LongAdder();
+
+    private final LongAdder rowsAffected = new LongAdder();
+
+    StatementMetrics(String sql) {
+        this.sql = sql;
+        SqlPhase[] values = SqlPhase.values();
+        this.phases = new LatencyHistogram[values.length];
+        for (int i = 0; i < values.length; i++) {
+            this.phases[i] = new LatencyHistogram();
+        }
+    }
+
+    void record(SqlExecution execution) {
+        this.total.record(execution.getTotalNanos());
+        for (SqlPhase phase : SqlPhase.values()) {
+            long nanos = execution.getPhaseNanos(phase);
+            if (nanos > 0) {
+                this.phases[phase.ordinal()].record(nanos);
+            }
+        }
+        if (execution.getError() != null) {
+            this.errors.increment();
+        }
+        if (execution.getRowsReturned() > 0) {
+            this.rowsReturned.add(execution.getRowsReturned());
+        }
+        if (execution.getRowsAffected() > 0) {
+            this.rowsAffected.add(execution.getRowsAffected());
+        }
+    }
+
+    SqlStatementSnapshot snapshot(long intervalNanos) {
+        HistogramSnapshot[] phaseSnapshots = new HistogramSnapshot[this.phases.length];
+        for (int i = 0; i < this.phases.length; i++) {
+            phaseSnapshots[i] = this.phases[i].snapshot();
+        }
+        return new SqlStatementSnapshot(this.sql, this.total.snapshot(), phaseSnapshots,
+                this.errors.sum(), this.rowsReturned.sum(), this.rowsAffected.sum(),
+                intervalNanos);
+    }
+
+}
@@ -0,0 +1,34 @@
+
+package com.zy.jdbclib.namedparam;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.zy.jdbclib.core.SqlTypeValue;
+
+/**
+ * 保存参数sql类型的SqlParameterSource基类
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public abstract class AbstractSqlParameterSource implements SqlParameterSource {
+
+    private final Map<String, Integer> sqlTypes = new HashMap<String, Integer>();
+
+    /**
+     * 指定参数的sql类型
+     *
+     * @param paramName 参数名
+     * @param sqlType java.sql.Types中的类型
+     */
+    public void registerSqlType(String paramName, int sqlType) {
+        this.sqlTypes.put(paramName, Integer.valueOf(sqlType));
+    }
+
+    public int getSqlType(String paramName) {
+        Integer sqlType = this.sqlTypes.get(paramName);
+        return (sqlType != null ? sqlType.intValue() : SqlTypeValue.TYPE_UNKNOWN);
+    }
+
+}
@@ -0,0 +1,96 @@
+
+package com.zy.jdbclib.namedparam;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.BoundedCache;
+import com.zy.jdbclib.utils.ReflectionUtils;
+
+/**
+ * 从JavaBean的属性中取得参数值，参数名即属性名。每个类的getter只查找一次。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class BeanPropertySqlParameterSource extends AbstractSqlParameterSource {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class,
+            Object.class);
+
+    private static final BoundedCache<Class<?>, Map<String, MethodHandle>> gettersCache = new BoundedCache<Class<?>, Map<String, MethodHandle>>(
+            256);
+
+    private final Object bean;
+
+    private final Map<String, MethodHandle> getters;
+
+    public BeanPropertySqlParameterSource(Object bean) {
+        Assert.notNull(bean, "Bean must not be null");
+        this.bean = bean;
+        this.getters = gettersFor(bean.getClass());
+    }
+
+    private static Map<String, MethodHandle> gettersFor(Class<?> clazz) {
+        Map<String, MethodHandle> getters = gettersCache.get(clazz);
+        if (getters == null) {
+            getters = new HashMap<String, MethodHandle>();
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (PropertyDescriptor pd : ReflectionUtils.getPropertyDescriptors(clazz)) {
+                Method readMethod = pd.getReadMethod();
+                if (readMethod == null || "class".equals(pd.getName())) {
+                    continue;
+                }
+                try {
+                    if (!Modifier.isPublic(readMethod.getModifiers())
+                            || !Modifier.isPublic(readMethod.getDeclaringClass().getModifiers())) {
+                        readMethod.setAccessible(true);
+                    }
+                    getters.put(pd.getName(), lookup.unreflect(readMethod).asType(GETTER_TYPE));
+                } catch (IllegalAccessException ex) {
+                    throw new JDBCException("Could not access property [" + pd.getName()
+                            + "] on class [" + clazz.getName() + "]", ex);
+                }
+            }
+            getters = gettersCache.put(clazz, getters);
+        }
+        return getters;
+    }
+
+    public boolean hasValue(String paramName) {
+        return this.getters.containsKey(paramName);
+    }
+
+    public Object getValue(String paramName) {
+        MethodHandle getter = this.getters.get(paramName);
+        if (getter == null) {
+            throw new IllegalArgumentException("No readable property '" + paramName
+                    + "' on class [" + this.bean.getClass().getName() + "]");
+        }
+        try {
+            return getter.invokeExact(this.bean);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Error err) {
+            throw err;
+        } catch (Throwable ex) {
+            throw new JDBCException("Could not get property [" + paramName + "]", ex);
+        }
+    }
+
+    /**
+     * @return 所有可读的属性名
+     */
+    public String[] getReadablePropertyNames() {
+        return this.getters.keySet().toArray(new String[this.getters.size()]);
+    }
+
+}
@@ -0,0 +1,45 @@
+
+package com.zy.jdbclib.namedparam;
+
+/**
+ * 绑定了参数值的sql：使用?占位符的sql语句、展开后的参数和参数类型
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class BoundSql {
+
+    private final String sql;
+
+    private final Object[] args;
+
+    private final int[] argTypes;
+
+    public BoundSql(String sql, Object[] args, int[] argTypes) {
+        this.sql = sql;
+        this.args = args;
+        this.argTypes = argTypes;
+    }
+
+    /**
+     * @return 使用?占位符的sql语句
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the args
+     */
+    public Object[] getArgs() {
+        return args;
+    }
+
+    /**
+     * @return the argTypes
+     */
+    public int[] getArgTypes() {
+        return argTypes;
+    }
+
+}
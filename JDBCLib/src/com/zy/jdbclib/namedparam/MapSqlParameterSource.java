@@ -0,0 +1,83 @@
+
+package com.zy.jdbclib.namedparam;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 从Map中取得参数值。
+ *
+ * <pre>
+ * new MapSqlParameterSource(&quot;id&quot;, id).addValue(&quot;name&quot;, name)
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class MapSqlParameterSource extends AbstractSqlParameterSource {
+
+    private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+    public MapSqlParameterSource() {
+    }
+
+    public MapSqlParameterSource(String paramName, Object value) {
+        addValue(paramName, value);
+    }
+
+    public MapSqlParameterSource(Map<String, ?> values) {
+        addValues(values);
+    }
+
+    /**
+     * 添加一个参数
+     *
+     * @return this，可以连续调用
+     */
+    public MapSqlParameterSource addValue(String paramName, Object value) {
+        this.values.put(paramName, value);
+        return this;
+    }
+
+    /**
+     * 添加一个参数并指定sql类型
+     *
+     * @return this，可以连续调用
+     */
+    public MapSqlParameterSource addValue(String paramName, Object value, int sqlType) {
+        this.values.put(paramName, value);
+        registerSqlType(paramName, sqlType);
+        return this;
+    }
+
+    /**
+     * 添加多个参数
+     *
+     * @return this，可以连续调用
+     */
+    public MapSqlParameterSource addValues(Map<String, ?> values) {
+        if (values != null) {
+            this.values.putAll(values);
+        }
+        return this;
+    }
+
+    public boolean hasValue(String paramName) {
+        return this.values.containsKey(paramName);
+    }
+
+    public Object getValue(String paramName) {
+        if (!hasValue(paramName)) {
+            throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+        }
+        return this.values.get(paramName);
+    }
+
+    /**
+     * @return 所有参数
+     */
+    public Map<String, Object> getValues() {
+        return this.values;
+    }
+
+}
@@ -0,0 +1,232 @@
+
+package com.zy.jdbclib.namedparam;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import com.zy.jdbclib.JdbcTemplate;
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.core.ResultSetExtractor;
+import com.zy.jdbclib.core.RowCallbackHandler;
+import com.zy.jdbclib.core.RowMapper;
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 支持命名参数（<code>:name</code>）的模板，参数值来自Map或{@link SqlParameterSource}。
+ * sql被转换成使用?占位符的语句后交给内部的JdbcTemplate执行，因此JdbcTemplate的所有设置（以及
+ * CachingJdbcTemplate等子类的功能）仍然有效。
+ * <p>
+ * 集合或数组参数展开成IN列表，长度向上取到固定的档位（参见{@link com.zy.jdbclib.utils.InClauseBuckets}），
+ * 使不同长度的列表共用少数几种sql语句，语句缓存仍然能够命中。
+ *
+ * <pre>
+ * NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
+ * Map&lt;String, Object&gt; params = new HashMap&lt;String, Object&gt;();
+ * params.put(&quot;ids&quot;, Arrays.asList(1, 2, 3));
+ * List&lt;Admin&gt; admins = template.query(&quot;select * from admin where id in (:ids)&quot;, params, mapper);
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class NamedParameterJdbcTemplate {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public NamedParameterJdbcTemplate(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * @param jdbcTemplate 实际执行sql的JdbcTemplate
+     */
+    public NamedParameterJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        Assert.notNull(jdbcTemplate, "JdbcTemplate must not be null");
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return 实际执行sql的JdbcTemplate，可以用来执行使用?占位符的语句
+     */
+    public JdbcTemplate getJdbcOperations() {
+        return this.jdbcTemplate;
+    }
+
+    /**
+     * 解析sql并绑定参数
+     */
+    protected BoundSql bind(String sql, SqlParameterSource paramSource) {
+        Assert.notNull(sql, "SQL must not be null!");
+        Assert.notNull(paramSource, "SqlParameterSource must not be null");
+        return NamedParameterUtils.parseSqlStatement(sql).bind(paramSource);
+    }
+
+    /*
+     * 与JdbcTemplate的query(String, ResultSetExtractor)/query(String, RowCallbackHandler)保持一致，
+     * 以lambda调用时需要显式转换为其中一个接口，下面三个重载同理
+     */
+    @SuppressWarnings("overloads")
+    public <T extends Object> T query(String sql, SqlParameterSource paramSource,
+            ResultSetExtractor<T> rse) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.query(bound.getSql(), rse, bound.getArgs(), bound.getArgTypes());
+    }
+
+    @SuppressWarnings("overloads")
+    public <T extends Object> T query(String sql, Map<String, ?> paramMap,
+            ResultSetExtractor<T> rse) throws JDBCException {
+        return query(sql, new MapSqlParameterSource(paramMap), rse);
+    }
+
+    @SuppressWarnings("overloads")
+    public void query(String sql, SqlParameterSource paramSource, RowCallbackHandler rch)
+            throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        this.jdbcTemplate.query(bound.getSql(), rch, bound.getArgs(), bound.getArgTypes());
+    }
+
+    @SuppressWarnings("overloads")
+    public void query(String sql, Map<String, ?> paramMap, RowCallbackHandler rch)
+            throws JDBCException {
+        query(sql, new MapSqlParameterSource(paramMap), rch);
+    }
+
+    public <T extends Object> List<T> query(String sql, SqlParameterSource paramSource,
+            RowMapper<T> rowMapper) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.query(bound.getSql(), rowMapper, bound.getArgs(), bound
+                .getArgTypes());
+    }
+
+    public <T extends Object> List<T> query(String sql, Map<String, ?> paramMap,
+            RowMapper<T> rowMapper) throws JDBCException {
+        return query(sql, new MapSqlParameterSource(paramMap), rowMapper);
+    }
+
+    public <T extends Object> T queryForObject(String sql, SqlParameterSource paramSource,
+            RowMapper<T> rowMapper) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForObject(bound.getSql(), rowMapper, bound.getArgs(), bound
+                .getArgTypes());
+    }
+
+    public <T extends Object> T queryForObject(String sql, Map<String, ?> paramMap,
+            RowMapper<T> rowMapper) throws JDBCException {
+        return queryForObject(sql, new MapSqlParameterSource(paramMap), rowMapper);
+    }
+
+    public <T extends Object> T queryForObject(String sql, SqlParameterSource paramSource,
+            Class<T> requiredType) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForObject(bound.getSql(), requiredType, bound.getArgs(),
+                bound.getArgTypes());
+    }
+
+    public <T extends Object> T queryForObject(String sql, Map<String, ?> paramMap,
+            Class<T> requiredType) throws JDBCException {
+        return queryForObject(sql, new MapSqlParameterSource(paramMap), requiredType);
+    }
+
+    public Map<String, Object> queryForMap(String sql, SqlParameterSource paramSource)
+            throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForMap(bound.getSql(), bound.getArgs(), bound.getArgTypes());
+    }
+
+    public Map<String, Object> queryForMap(String sql, Map<String, ?> paramMap)
+            throws JDBCException {
+        return queryForMap(sql, new MapSqlParameterSource(paramMap));
+    }
+
+    public <T extends Object> List<T> queryForList(String sql, SqlParameterSource paramSource,
+            Class<T> elementType) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForList(bound.getSql(), elementType, bound.getArgs(), bound
+                .getArgTypes());
+    }
+
+    public <T extends Object> List<T> queryForList(String sql, Map<String, ?> paramMap,
+            Class<T> elementType) throws JDBCException {
+        return queryForList(sql, new MapSqlParameterSource(paramMap), elementType);
+    }
+
+    public List<Map<String, Object>> queryForList(String sql, SqlParameterSource paramSource)
+            throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForList(bound.getSql(), bound.getArgs(), bound.getArgTypes());
+    }
+
+    public List<Map<String, Object>> queryForList(String sql, Map<String, ?> paramMap)
+            throws JDBCException {
+        return queryForList(sql, new MapSqlParameterSource(paramMap));
+    }
+
+    public long queryForLong(String sql, SqlParameterSource paramSource) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForLong(bound.getSql(), bound.getArgs(), bound.getArgTypes());
+    }
+
+    public long queryForLong(String sql, Map<String, ?> paramMap) throws JDBCException {
+        return queryForLong(sql, new MapSqlParameterSource(paramMap));
+    }
+
+    public int queryForInt(String sql, SqlParameterSource paramSource) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.queryForInt(bound.getSql(), bound.getArgs(), bound.getArgTypes());
+    }
+
+    public int queryForInt(String sql, Map<String, ?> paramMap) throws JDBCException {
+        return queryForInt(sql, new MapSqlParameterSource(paramMap));
+    }
+
+    public int update(String sql, SqlParameterSource paramSource) throws JDBCException {
+        BoundSql bound = bind(sql, paramSource);
+        return this.jdbcTemplate.update(bound.getSql(), bound.getArgs(), bound.getArgTypes());
+    }
+
+    public int update(String sql, Map<String, ?> paramMap) throws JDBCException {
+        return update(sql, new MapSqlParameterSource(paramMap));
+    }
+
+    /**
+     * 批量执行同一条语句。集合参数在每一行中展开后的长度档位必须相同，参数类型使用第一行的类型。
+     *
+     * @param sql 带命名参数的sql语句
+     * @param batchArgs 每一行的参数
+     * @return 每一行影响的行数
+     * @throws JDBCException
+     */
+    public int[] batchUpdate(String sql, SqlParameterSource[] batchArgs) throws JDBCException {
+        Assert.notNull(batchArgs, "batchArgs must not be null");
+        if (batchArgs.length == 0) {
+            return new int[0];
+        }
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+        List<Object[]> rows = new ArrayList<Object[]>(batchArgs.length);
+        BoundSql first = null;
+        for (SqlParameterSource paramSource : batchArgs) {
+            BoundSql bound = parsedSql.bind(paramSource);
+            if (first == null) {
+                first = bound;
+            } else if (!first.getSql().equals(bound.getSql())) {
+                throw new JDBCException("Collection parameters expand differently in batch rows: "
+                        + sql);
+            }
+            rows.add(bound.getArgs());
+        }
+        return this.jdbcTemplate.batchUpdate(first.getSql(), rows, first.getArgTypes());
+    }
+
+    public int[] batchUpdate(String sql, Map<String, ?>[] batchValues) throws JDBCException {
+        Assert.notNull(batchValues, "batchValues must not be null");
+        SqlParameterSource[] batchArgs = new SqlParameterSource[batchValues.length];
+        for (int i = 0; i < batchValues.length; i++) {
+            batchArgs[i] = new MapSqlParameterSource(batchValues[i]);
+        }
+        return batchUpdate(sql, batchArgs);
+    }
+
+}
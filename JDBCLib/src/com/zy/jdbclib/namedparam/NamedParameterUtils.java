@@ -0,0 +1,108 @@
+
+package com.zy.jdbclib.namedparam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.utils.BoundedCache;
+
+/**
+ * 解析带命名参数（<code>:name</code>）的sql语句。解析结果缓存在有上限的并发Map中，每条不同的语句只解析一次。
+ * 字符串、带引号的标识符、注释中的冒号以及PostgreSQL的<code>::</code>类型转换不被当作参数。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public abstract class NamedParameterUtils {
+
+    /** 解析缓存的默认大小 */
+    public static final int DEFAULT_CACHE_LIMIT = 2048;
+
+    private static final BoundedCache<String, ParsedSql> parsedSqlCache = new BoundedCache<String, ParsedSql>(
+            DEFAULT_CACHE_LIMIT);
+
+    /**
+     * 解析sql语句，使用缓存
+     *
+     * @param sql 带命名参数的sql语句
+     * @return 解析结果
+     * @throws JDBCException 同时使用了命名参数和?占位符时
+     */
+    public static ParsedSql parseSqlStatement(String sql) throws JDBCException {
+        ParsedSql parsedSql = parsedSqlCache.get(sql);
+        if (parsedSql == null) {
+            parsedSql = parsedSqlCache.put(sql, doParse(sql));
+        }
+        return parsedSql;
+    }
+
+    private static ParsedSql doParse(String sql) {
+        List<String> names = new ArrayList<String>();
+        List<int[]> indexes = new ArrayList<int[]>();
+        int positional = 0;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, c);
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = (end < 0 ? length : end + 2);
+            } else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+                i += 2;
+            } else if (c == ':' && i + 1 < length
+                    && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < length
+                        && (Character.isJavaIdentifierPart(sql.charAt(end)) || sql.charAt(end) == '.')) {
+                    end++;
+                }
+                names.add(sql.substring(i + 1, end));
+                indexes.add(new int[] {i, end});
+                i = end;
+            } else {
+                if (c == '?') {
+                    positional++;
+                }
+                i++;
+            }
+        }
+        if (positional > 0 && !names.isEmpty()) {
+            throw new JDBCException("SQL must not mix named parameters and '?' placeholders: "
+                    + sql);
+        }
+        int[] starts = new int[names.size()];
+        int[] ends = new int[names.size()];
+        for (int k = 0; k < starts.length; k++) {
+            starts[k] = indexes.get(k)[0];
+            ends[k] = indexes.get(k)[1];
+        }
+        return new ParsedSql(sql, names.toArray(new String[names.size()]), starts, ends);
+    }
+
+    /**
+     * @return 结束引号后面的位置
+     */
+    private static int skipQuoted(String sql, int i, char quote) {
+        for (i++; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote == '\'') {
+                i++;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i + 1;
+                }
+            }
+        }
+        return sql.length();
+    }
+
+}
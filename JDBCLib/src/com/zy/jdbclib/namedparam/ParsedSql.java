@@ -0,0 +1,137 @@
+
+package com.zy.jdbclib.namedparam;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.core.SqlParameterValue;
+import com.zy.jdbclib.core.SqlTypeValue;
+import com.zy.jdbclib.utils.InClauseBuckets;
+
+/**
+ * 解析后的带命名参数的sql语句，不可变，可以在线程间共享。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ParsedSql {
+
+    private final String originalSql;
+
+    /** 每个参数出现的位置，同一个参数可以出现多次 */
+    private final String[] parameterNames;
+
+    private final int[] starts;
+
+    private final int[] ends;
+
+    /** 没有集合参数时使用的sql，每个参数替换为一个? */
+    private final String positionalSql;
+
+    ParsedSql(String originalSql, String[] parameterNames, int[] starts, int[] ends) {
+        this.originalSql = originalSql;
+        this.parameterNames = parameterNames;
+        this.starts = starts;
+        this.ends = ends;
+        this.positionalSql = substitute(null, null);
+    }
+
+    /**
+     * 用参数值生成使用?占位符的sql和参数数组。集合或数组参数展开成IN列表，长度按
+     * {@link InClauseBuckets}填充，元素为Object[]时展开成<code>(?, ?)</code>形式的多列值。
+     *
+     * @param paramSource 参数来源
+     * @return 可以直接交给JdbcTemplate执行的sql和参数
+     * @throws JDBCException 缺少参数或集合参数为空时
+     */
+    public BoundSql bind(SqlParameterSource paramSource) throws JDBCException {
+        List<Object> args = new ArrayList<Object>(this.parameterNames.length);
+        List<Integer> argTypes = new ArrayList<Integer>(this.parameterNames.length);
+        // 集合参数展开后的元素个数和每个元素的列数，没有集合参数时为null
+        int[] expansions = null;
+        int[] columns = null;
+        for (int i = 0; i < this.parameterNames.length; i++) {
+            String name = this.parameterNames[i];
+            if (!paramSource.hasValue(name)) {
+                throw new JDBCException("No value supplied for the SQL parameter '" + name
+                        + "': " + this.originalSql);
+            }
+            Object value = paramSource.getValue(name);
+            int sqlType = paramSource.getSqlType(name);
+            if (value instanceof SqlParameterValue) {
+                SqlParameterValue parameterValue = (SqlParameterValue)value;
+                if (parameterValue.getSqlType() != SqlTypeValue.TYPE_UNKNOWN) {
+                    sqlType = parameterValue.getSqlType();
+                }
+                value = parameterValue.getValue();
+            }
+            Object[] elements = (sqlType != Types.ARRAY ? InClauseBuckets.toElements(value) : null);
+            if (elements == null) {
+                args.add(value);
+                argTypes.add(Integer.valueOf(sqlType));
+                continue;
+            }
+            if (elements.length == 0) {
+                throw new JDBCException("Empty collection for the SQL parameter '" + name
+                        + "': " + this.originalSql);
+            }
+            if (expansions == null) {
+                expansions = new int[this.parameterNames.length];
+                columns = new int[this.parameterNames.length];
+            }
+            int size = InClauseBuckets.bucketSize(elements.length);
+            expansions[i] = size;
+            columns[i] = InClauseBuckets.columnCount(elements);
+            InClauseBuckets.addPadded(elements, 0, elements.length, size, sqlType, args, argTypes);
+        }
+        int[] types = new int[argTypes.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = argTypes.get(i).intValue();
+        }
+        String sql = (expansions == null ? this.positionalSql : substitute(expansions, columns));
+        return new BoundSql(sql, args.toArray(), types);
+    }
+
+    /**
+     * @param expansions 每个参数展开后的元素个数，0或expansions为null表示不展开
+     * @param columns 展开的元素为Object[]时的列数，否则为0
+     */
+    private String substitute(int[] expansions, int[] columns) {
+        StringBuilder sql = new StringBuilder(this.originalSql.length()
+                + (expansions != null ? 64 : 0));
+        int last = 0;
+        for (int i = 0; i < this.parameterNames.length; i++) {
+            sql.append(this.originalSql, last, this.starts[i]);
+            int size = (expansions != null ? expansions[i] : 0);
+            if (size == 0) {
+                sql.append('?');
+            } else {
+                InClauseBuckets.appendPlaceholders(sql, size, columns[i]);
+            }
+            last = this.ends[i];
+        }
+        sql.append(this.originalSql, last, this.originalSql.length());
+        return sql.toString();
+    }
+
+    /**
+     * @return 原始的sql语句
+     */
+    public String getOriginalSql() {
+        return originalSql;
+    }
+
+    /**
+     * @return 按出现顺序排列的参数名，同一个参数出现多次时重复
+     */
+    public String[] getParameterNames() {
+        return parameterNames.clone();
+    }
+
+    public String toString() {
+        return this.originalSql;
+    }
+
+}
@@ -0,0 +1,31 @@
+
+package com.zy.jdbclib.namedparam;
+
+/**
+ * 命名参数的值的来源
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public interface SqlParameterSource {
+
+	/**
+	 * @param paramName 参数名
+	 * @return 是否有该参数的值（值可以为null）
+	 */
+	public boolean hasValue(String paramName);
+
+	/**
+	 * @param paramName 参数名
+	 * @return 参数的值
+	 * @throws IllegalArgumentException 没有该参数时
+	 */
+	public Object getValue(String paramName) throws IllegalArgumentException;
+
+	/**
+	 * @param paramName 参数名
+	 * @return 参数的sql类型，没有指定时返回SqlTypeValue.TYPE_UNKNOWN
+	 */
+	public int getSqlType(String paramName);
+
+}
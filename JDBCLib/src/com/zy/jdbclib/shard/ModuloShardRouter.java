@@ -0,0 +1,26 @@
+
+package com.zy.jdbclib.shard;
+
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 默认的分片路由：整数键按值取模，其他键按hashCode取模。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ModuloShardRouter implements ShardRouter {
+
+    public int route(Object shardKey, int shardCount) {
+        Assert.notNull(shardKey, "Shard key must not be null");
+        long value;
+        if (shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short
+                || shardKey instanceof Byte) {
+            value = ((Number)shardKey).longValue();
+        } else {
+            value = shardKey.hashCode();
+        }
+        return (int)Math.floorMod(value, (long)shardCount);
+    }
+
+}
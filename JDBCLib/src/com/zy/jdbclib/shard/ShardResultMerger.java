@@ -0,0 +1,20 @@
+
+package com.zy.jdbclib.shard;
+
+import java.util.List;
+
+/**
+ * 合并各个分片的查询结果，例如把各分片的count相加
+ * 
+ * @version 1.1
+ * @since 1.1
+ */
+public interface ShardResultMerger<T extends Object> {
+
+	/**
+	 * @param shardResults 各个分片的结果，按分片序号排列
+	 * @return 合并后的结果
+	 */
+	public T merge(List<T> shardResults);
+
+}
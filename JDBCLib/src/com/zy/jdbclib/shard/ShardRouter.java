@@ -0,0 +1,19 @@
+
+package com.zy.jdbclib.shard;
+
+/**
+ * 根据分片键决定数据所在的分片
+ * 
+ * @version 1.1
+ * @since 1.1
+ */
+public interface ShardRouter {
+
+	/**
+	 * @param shardKey 分片键
+	 * @param shardCount 分片数量
+	 * @return 分片序号，范围是[0, shardCount)
+	 */
+	public int route(Object shardKey, int shardCount);
+
+}
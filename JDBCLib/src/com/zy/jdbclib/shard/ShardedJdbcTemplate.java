@@ -0,0 +1,425 @@
+
+package com.zy.jdbclib.shard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.AsyncJdbcTemplate;
+import com.zy.jdbclib.JdbcTemplate;
+import com.zy.jdbclib.core.ConnectionCallback;
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.core.ResultSetExtractor;
+import com.zy.jdbclib.core.RowMapper;
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 按分片键把数据分布在多个数据源上时使用的模板。
+ * <ul>
+ * <li>单个分片键的操作通过{@link #forKey(Object)}找到对应分片的JdbcTemplate执行；</li>
+ * <li>跨分片的查询（queryAll等）在所有分片上并行执行，再把结果拼接、按顺序归并或用
+ * {@link ShardResultMerger}合并。</li>
+ * </ul>
+ * 并行查询时第一个分片在调用线程中执行，其他分片交给线程池，总耗时取决于最慢的分片而不是所有分片之和。
+ * 任何一个分片失败或超时，其他分片的查询被取消，抛出JDBCException。
+ *
+ * <pre>
+ * ShardedJdbcTemplate sharded = new ShardedJdbcTemplate(Arrays.asList(ds0, ds1, ds2));
+ * Admin admin = sharded.forKey(id).queryForObject(&quot;select * from admin where id=?&quot;, mapper, id);
+ * List&lt;Admin&gt; recent = sharded.queryAllSorted(
+ *         &quot;select * from admin order by lastTime desc limit 20&quot;, mapper, byLastTimeDesc);
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ShardedJdbcTemplate {
+
+    private static final Log log = LogFactory.getLog(ShardedJdbcTemplate.class);
+
+    /** 默认线程池中每个分片的线程数 */
+    private static final int THREADS_PER_SHARD = 4;
+
+    private final List<JdbcTemplate> shards;
+
+    private final ShardRouter router;
+
+    private final ExecutorService executor;
+
+    /** 线程池是否由本类创建 */
+    private final boolean ownedExecutor;
+
+    /** 跨分片查询等待所有分片的最长时间（毫秒），0表示不限制 */
+    private long fanOutTimeout = 0;
+
+    public ShardedJdbcTemplate(List<DataSource> dataSources) {
+        this(dataSources, new ModuloShardRouter());
+    }
+
+    public ShardedJdbcTemplate(List<DataSource> dataSources, ShardRouter router) {
+        this(toTemplates(dataSources), router, null);
+    }
+
+    /**
+     * @param shards 每个分片的JdbcTemplate，按分片序号排列
+     * @param router 分片路由
+     * @param executor 跨分片查询使用的线程池，为null时创建默认的有界线程池；外部线程池由调用者关闭
+     */
+    public ShardedJdbcTemplate(List<JdbcTemplate> shards, ShardRouter router,
+            ExecutorService executor) {
+        Assert.isTrue(shards != null && !shards.isEmpty(), "At least one shard is required");
+        Assert.notNull(router, "ShardRouter must not be null");
+        this.shards = Collections.unmodifiableList(new ArrayList<JdbcTemplate>(shards));
+        this.router = router;
+        this.ownedExecutor = (executor == null);
+        this.executor = (executor != null ? executor : AsyncJdbcTemplate.newBoundedExecutor(
+                Math.max(1, shards.size() - 1) * THREADS_PER_SHARD,
+                AsyncJdbcTemplate.DEFAULT_QUEUE_CAPACITY));
+    }
+
+    private static List<JdbcTemplate> toTemplates(List<DataSource> dataSources) {
+        Assert.notNull(dataSources, "DataSources must not be null");
+        List<JdbcTemplate> templates = new ArrayList<JdbcTemplate>(dataSources.size());
+        for (DataSource dataSource : dataSources) {
+            templates.add(new JdbcTemplate(dataSource));
+        }
+        return templates;
+    }
+
+    // -------------------------------------------------------------------------
+    // 单个分片的操作
+    // -------------------------------------------------------------------------
+    /**
+     * @param shardKey 分片键
+     * @return 分片键所在分片的序号
+     */
+    public int shardOf(Object shardKey) {
+        int shard = this.router.route(shardKey, this.shards.size());
+        if (shard < 0 || shard >= this.shards.size()) {
+            throw new JDBCException("ShardRouter returned invalid shard " + shard + " for key ["
+                    + shardKey + "]");
+        }
+        return shard;
+    }
+
+    /**
+     * @param shardKey 分片键
+     * @return 分片键所在分片的JdbcTemplate
+     */
+    public JdbcTemplate forKey(Object shardKey) {
+        return this.shards.get(shardOf(shardKey));
+    }
+
+    /**
+     * @param shard 分片序号
+     * @return 分片的JdbcTemplate
+     */
+    public JdbcTemplate getShard(int shard) {
+        return this.shards.get(shard);
+    }
+
+    public int getShardCount() {
+        return this.shards.size();
+    }
+
+    // -------------------------------------------------------------------------
+    // 跨分片的操作
+    // -------------------------------------------------------------------------
+    /**
+     * 在所有分片上并行执行ConnectionCallback
+     *
+     * @param action 每个分片执行的回调
+     * @return 各个分片的结果，按分片序号排列
+     * @throws JDBCException
+     */
+    public <T extends Object> List<T> executeAll(final ConnectionCallback<T> action)
+            throws JDBCException {
+        Assert.notNull(action, "Callback object must not be null!");
+        return fanOut(new ShardTask<T>() {
+
+            public T run(JdbcTemplate template) {
+                return template.execute(action);
+            }
+        });
+    }
+
+    /**
+     * 在所有分片上并行查询，按分片序号拼接结果
+     *
+     * @param sql 预编译sql语句
+     * @param rowMapper 结果处理回调
+     * @param args sql参数列表
+     * @return 所有分片的结果
+     * @throws JDBCException
+     */
+    public <T extends Object> List<T> queryAll(final String sql, final RowMapper<T> rowMapper,
+            final Object... args) throws JDBCException {
+        List<List<T>> results = fanOut(new ShardTask<List<T>>() {
+
+            public List<T> run(JdbcTemplate template) {
+                return template.query(sql, rowMapper, args);
+            }
+        });
+        int size = 0;
+        for (List<T> result : results) {
+            size += result.size();
+        }
+        List<T> all = new ArrayList<T>(size);
+        for (List<T> result : results) {
+            all.addAll(result);
+        }
+        return all;
+    }
+
+    /**
+     * 在所有分片上并行查询，再按comparator归并各分片的结果。每个分片的结果必须已经按同样的顺序排列
+     * （sql中有对应的ORDER BY）。
+     *
+     * @param sql 预编译sql语句，需要有与comparator一致的ORDER BY
+     * @param rowMapper 结果处理回调
+     * @param comparator 结果的顺序
+     * @param args sql参数列表
+     * @return 所有分片的结果，按comparator排列
+     * @throws JDBCException
+     */
+    public <T extends Object> List<T> queryAllSorted(String sql, RowMapper<T> rowMapper,
+            Comparator<? super T> comparator, Object... args) throws JDBCException {
+        return queryTop(sql, rowMapper, comparator, 0, args);
+    }
+
+    /**
+     * 在所有分片上并行查询，再按comparator归并各分片的结果，只返回前limit行，用于跨分片的分页和Top N。
+     * 每个分片的sql也应该只返回limit行。
+     *
+     * @param sql 预编译sql语句，需要有与comparator一致的ORDER BY
+     * @param rowMapper 结果处理回调
+     * @param comparator 结果的顺序
+     * @param limit 最多返回的行数，0表示不限制
+     * @param args sql参数列表
+     * @return 所有分片的前limit行，按comparator排列
+     * @throws JDBCException
+     */
+    public <T extends Object> List<T> queryTop(final String sql, final RowMapper<T> rowMapper,
+            Comparator<? super T> comparator, int limit, final Object... args)
+            throws JDBCException {
+        Assert.notNull(comparator, "Comparator must not be null");
+        List<List<T>> results = fanOut(new ShardTask<List<T>>() {
+
+            public List<T> run(JdbcTemplate template) {
+                return template.query(sql, rowMapper, args);
+            }
+        });
+        return mergeSorted(results, comparator, limit);
+    }
+
+    /**
+     * 在所有分片上并行执行ResultSetExtractor，再用merger合并各分片的结果，例如跨分片的count、sum。
+     *
+     * @param sql 预编译sql语句
+     * @param rse 每个分片的结果处理回调
+     * @param merger 合并各分片的结果
+     * @param args sql参数列表
+     * @return 合并后的结果
+     * @throws JDBCException
+     */
+    public <T extends Object> T queryAll(final String sql, final ResultSetExtractor<T> rse,
+            ShardResultMerger<T> merger, final Object... args) throws JDBCException {
+        Assert.notNull(merger, "ShardResultMerger must not be null");
+        return merger.merge(fanOut(new ShardTask<T>() {
+
+            public T run(JdbcTemplate template) {
+                return template.query(sql, rse, args);
+            }
+        }));
+    }
+
+    /**
+     * 在所有分片上并行执行更新语句
+     *
+     * @return 所有分片影响的总行数
+     * @throws JDBCException
+     */
+    public int updateAll(final String sql, final Object... args) throws JDBCException {
+        int rows = 0;
+        for (Integer shardRows : fanOut(new ShardTask<Integer>() {
+
+            public Integer run(JdbcTemplate template) {
+                return Integer.valueOf(template.update(sql, args));
+            }
+        })) {
+            rows += shardRows.intValue();
+        }
+        return rows;
+    }
+
+    /**
+     * 在所有分片上并行执行任务，第一个分片在调用线程中执行
+     */
+    private <T> List<T> fanOut(final ShardTask<T> task) {
+        int count = this.shards.size();
+        List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(count - 1);
+        for (int i = 1; i < count; i++) {
+            final JdbcTemplate template = this.shards.get(i);
+            FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+
+                public T call() {
+                    return task.run(template);
+                }
+            });
+            futures.add(future);
+            this.executor.execute(future);
+        }
+
+        long deadline = (this.fanOutTimeout > 0 ? System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(this.fanOutTimeout) : 0);
+        List<T> results = new ArrayList<T>(count);
+        try {
+            results.add(task.run(this.shards.get(0)));
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> future = futures.get(i);
+                if (deadline == 0) {
+                    results.add(future.get());
+                } else {
+                    results.add(future.get(Math.max(0, deadline - System.nanoTime()),
+                            TimeUnit.NANOSECONDS));
+                }
+            }
+            return results;
+        } catch (ExecutionException ex) {
+            cancel(futures);
+            Throwable cause = ex.getCause();
+            if (cause instanceof JDBCException) {
+                throw (JDBCException)cause;
+            }
+            throw new JDBCException("Shard query failed", cause);
+        } catch (TimeoutException ex) {
+            cancel(futures);
+            throw new JDBCException("Shard query did not complete within " + this.fanOutTimeout
+                    + "ms", ex);
+        } catch (InterruptedException ex) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new JDBCException("Interrupted while waiting for shard results", ex);
+        } catch (RuntimeException ex) {
+            cancel(futures);
+            throw ex;
+        }
+    }
+
+    private static <T> void cancel(List<FutureTask<T>> futures) {
+        for (FutureTask<T> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 用优先队列对k个有序列表做归并
+     */
+    static <T> List<T> mergeSorted(List<List<T>> lists, final Comparator<? super T> comparator,
+            int limit) {
+        int size = 0;
+        for (List<T> list : lists) {
+            size += list.size();
+        }
+        if (limit > 0) {
+            size = Math.min(size, limit);
+        }
+        List<T> merged = new ArrayList<T>(size);
+        PriorityQueue<Cursor<T>> queue = new PriorityQueue<Cursor<T>>(Math.max(1, lists.size()),
+                new Comparator<Cursor<T>>() {
+
+                    public int compare(Cursor<T> c1, Cursor<T> c2) {
+                        int result = comparator.compare(c1.current(), c2.current());
+                        // 相等时按分片序号，使结果稳定
+                        return (result != 0 ? result : c1.shard - c2.shard);
+                    }
+                });
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                queue.add(new Cursor<T>(i, lists.get(i)));
+            }
+        }
+        while (merged.size() < size) {
+            Cursor<T> cursor = queue.poll();
+            merged.add(cursor.current());
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Merged " + merged.size() + " rows from " + lists.size() + " shards");
+        }
+        return merged;
+    }
+
+    /**
+     * @return the fanOutTimeout
+     */
+    public long getFanOutTimeout() {
+        return fanOutTimeout;
+    }
+
+    /**
+     * @param fanOutTimeout 跨分片查询等待所有分片的最长时间（毫秒），0表示不限制
+     */
+    public void setFanOutTimeout(long fanOutTimeout) {
+        this.fanOutTimeout = fanOutTimeout;
+    }
+
+    /**
+     * 关闭默认线程池。使用外部线程池时什么也不做。
+     */
+    public void shutdown() {
+        if (this.ownedExecutor) {
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * 在一个分片上执行的任务
+     */
+    private interface ShardTask<T> {
+
+        T run(JdbcTemplate template);
+    }
+
+    /**
+     * 归并时一个分片结果中的当前位置
+     */
+    private static class Cursor<T> {
+
+        final int shard;
+
+        private final List<T> list;
+
+        private int index;
+
+        Cursor(int shard, List<T> list) {
+            this.shard = shard;
+            this.list = list;
+        }
+
+        T current() {
+            return this.list.get(this.index);
+        }
+
+        boolean advance() {
+            return ++this.index < this.list.size();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+
+package com.zy.jdbclib.transaction;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.zy.jdbclib.core.JDBCException;
+
+/**
+ * 绑定到当前线程的事务连接，由{@link DataSourceTransactionManager}创建，
+ * JdbcTemplate通过{@link TransactionContext}取得。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class ConnectionHolder {
+
+    private final Connection connection;
+
+    /** 事务的截止时间（毫秒），0表示不限制 */
+    private final long deadline;
+
+    private boolean rollbackOnly = false;
+
+    /** 提交成功后执行的回调 */
+    private List<Runnable> afterCommit;
+
+    ConnectionHolder(Connection connection, int timeout) {
+        this.connection = connection;
+        this.deadline = (timeout > 0 ? System.currentTimeMillis() + timeout * 1000L : 0);
+    }
+
+    /**
+     * @return the connection
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return 是否设置了超时时间
+     */
+    public boolean hasTimeout() {
+        return this.deadline > 0;
+    }
+
+    /**
+     * @return 事务剩余的时间（秒），不足一秒按一秒计
+     * @throws JDBCException 已经超时时，同时把事务标记为只能回滚
+     */
+    public int getTimeToLiveInSeconds() throws JDBCException {
+        long timeToLive = this.deadline - System.currentTimeMillis();
+        if (timeToLive <= 0) {
+            this.rollbackOnly = true;
+            throw new JDBCException("Transaction timed out: deadline was " + new Date(this.deadline));
+        }
+        return (int)((timeToLive + 999) / 1000);
+    }
+
+    /**
+     * @return the rollbackOnly
+     */
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    void setRollbackOnly() {
+        this.rollbackOnly = true;
+    }
+
+    void registerAfterCommit(Runnable callback) {
+        if (this.afterCommit == null) {
+            this.afterCommit = new ArrayList<Runnable>();
+        }
+        this.afterCommit.add(callback);
+    }
+
+    List<Runnable> getAfterCommit() {
+        return afterCommit;
+    }
+
+}
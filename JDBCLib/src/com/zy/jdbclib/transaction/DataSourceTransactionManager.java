@@ -0,0 +1,213 @@
+
+package com.zy.jdbclib.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.dataSource.ReadOnlyContext;
+import com.zy.jdbclib.utils.Assert;
+import com.zy.jdbclib.utils.JdbcUtils;
+
+/**
+ * 基于单个DataSource的事务管理器。开始事务时从DataSource获取一个连接，关闭自动提交后绑定到当前线程，
+ * 使用同一个DataSource的JdbcTemplate在事务中的所有语句都使用这个连接，事务结束时只提交（或回滚）一次。
+ * <p>
+ * 事务中线程的{@link ReadOnlyContext}被设置为读写，查询不使用查询缓存、不合并、不在其他线程中执行。
+ * 只读事务的连接在获取时按只读路由（{@link com.zy.jdbclib.dataSource.ReadWriteRoutingDataSource}
+ * 返回从库连接）。已经有事务时加入外层事务，内层的回滚使整个事务回滚。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class DataSourceTransactionManager {
+
+    private final Log log = LogFactory.getLog(DataSourceTransactionManager.class);
+
+    private DataSource dataSource;
+
+    public DataSourceTransactionManager() {
+    }
+
+    public DataSourceTransactionManager(DataSource dataSource) {
+        setDataSource(dataSource);
+    }
+
+    /**
+     * @return the dataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @param dataSource 与JdbcTemplate使用的同一个DataSource实例
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 开始事务，当前线程已经有事务时加入该事务
+     *
+     * @param definition 事务属性，为null时使用默认属性
+     * @return 事务状态，必须交给{@link #commit(TransactionStatus)}或{@link #rollback(TransactionStatus)}
+     * @throws JDBCException 获取连接或设置连接属性失败时
+     */
+    public TransactionStatus getTransaction(TransactionDefinition definition) throws JDBCException {
+        DataSource ds = getDataSource();
+        Assert.notNull(ds, "DataSource must not be null");
+        if (definition == null) {
+            definition = new TransactionDefinition();
+        }
+        ConnectionHolder existing = TransactionContext.getConnectionHolder(ds);
+        if (existing != null) {
+            return new TransactionStatus(existing, false, null,
+                    TransactionDefinition.ISOLATION_DEFAULT, false);
+        }
+
+        Boolean previousReadOnly = ReadOnlyContext.bind(Boolean.valueOf(definition.isReadOnly()));
+        Connection con = null;
+        try {
+            con = ds.getConnection();
+            int previousIsolationLevel = TransactionDefinition.ISOLATION_DEFAULT;
+            int isolationLevel = definition.getIsolationLevel();
+            if (isolationLevel != TransactionDefinition.ISOLATION_DEFAULT) {
+                int current = con.getTransactionIsolation();
+                if (current != isolationLevel) {
+                    previousIsolationLevel = current;
+                    con.setTransactionIsolation(isolationLevel);
+                }
+            }
+            boolean resetReadOnly = false;
+            if (definition.isReadOnly() && !con.isReadOnly()) {
+                con.setReadOnly(true);
+                resetReadOnly = true;
+            }
+            if (con.getAutoCommit()) {
+                con.setAutoCommit(false);
+            }
+            ConnectionHolder holder = new ConnectionHolder(con, definition.getTimeout());
+            // 连接已经取得，事务中的语句都在这个连接上执行，对其他逻辑来说线程绑定到了这个连接
+            ReadOnlyContext.bind(Boolean.FALSE);
+            TransactionContext.bind(ds, holder);
+            if (log.isDebugEnabled()) {
+                log.debug("Began JDBC transaction [" + definition + "] on Connection [" + con
+                        + "]");
+            }
+            return new TransactionStatus(holder, true, previousReadOnly, previousIsolationLevel,
+                    resetReadOnly);
+        } catch (SQLException ex) {
+            JdbcUtils.closeConnection(con);
+            ReadOnlyContext.restore(previousReadOnly);
+            throw new JDBCException("Could not open JDBC Connection for transaction", ex);
+        } catch (RuntimeException ex) {
+            JdbcUtils.closeConnection(con);
+            ReadOnlyContext.restore(previousReadOnly);
+            throw ex;
+        }
+    }
+
+    /**
+     * 提交事务。事务被标记为只能回滚时回滚；加入外层事务时什么也不做，由外层提交。
+     *
+     * @param status 事务状态
+     * @throws JDBCException 提交失败，或事务被内层参与者标记为只能回滚而回滚时
+     */
+    public void commit(TransactionStatus status) throws JDBCException {
+        Assert.notNull(status, "TransactionStatus must not be null");
+        Assert.state(!status.isCompleted(), "Transaction is already completed");
+        if (!status.isNewTransaction()) {
+            status.setCompleted();
+            if (status.isLocalRollbackOnly()) {
+                status.getConnectionHolder().setRollbackOnly();
+            }
+            return;
+        }
+        if (status.isRollbackOnly()) {
+            boolean global = !status.isLocalRollbackOnly();
+            rollback(status);
+            if (global) {
+                throw new JDBCException(
+                        "Transaction rolled back because it has been marked as rollback-only");
+            }
+            return;
+        }
+        ConnectionHolder holder = status.getConnectionHolder();
+        status.setCompleted();
+        try {
+            holder.getConnection().commit();
+        } catch (SQLException ex) {
+            try {
+                holder.getConnection().rollback();
+            } catch (SQLException rollbackEx) {
+                log.debug("Could not roll back JDBC transaction after commit failure", rollbackEx);
+            }
+            cleanup(status);
+            throw new JDBCException("Could not commit JDBC transaction", ex);
+        }
+        cleanup(status);
+        List<Runnable> callbacks = holder.getAfterCommit();
+        if (callbacks != null) {
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (RuntimeException ex) {
+                    log.error("After-commit callback threw exception", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 回滚事务；加入外层事务时把外层事务标记为只能回滚
+     *
+     * @param status 事务状态
+     * @throws JDBCException 回滚失败时
+     */
+    public void rollback(TransactionStatus status) throws JDBCException {
+        Assert.notNull(status, "TransactionStatus must not be null");
+        Assert.state(!status.isCompleted(), "Transaction is already completed");
+        status.setCompleted();
+        ConnectionHolder holder = status.getConnectionHolder();
+        if (!status.isNewTransaction()) {
+            holder.setRollbackOnly();
+            return;
+        }
+        try {
+            holder.getConnection().rollback();
+        } catch (SQLException ex) {
+            throw new JDBCException("Could not roll back JDBC transaction", ex);
+        } finally {
+            cleanup(status);
+        }
+    }
+
+    /**
+     * 解除绑定，恢复连接属性和线程的读写标记，关闭连接
+     */
+    private void cleanup(TransactionStatus status) {
+        TransactionContext.unbind(getDataSource());
+        ReadOnlyContext.restore(status.getPreviousReadOnly());
+        Connection con = status.getConnectionHolder().getConnection();
+        try {
+            con.setAutoCommit(true);
+            if (status.isResetReadOnly()) {
+                con.setReadOnly(false);
+            }
+            if (status.getPreviousIsolationLevel() != TransactionDefinition.ISOLATION_DEFAULT) {
+                con.setTransactionIsolation(status.getPreviousIsolationLevel());
+            }
+        } catch (SQLException ex) {
+            log.debug("Could not reset JDBC Connection after transaction", ex);
+        }
+        JdbcUtils.closeConnection(con);
+    }
+
+}
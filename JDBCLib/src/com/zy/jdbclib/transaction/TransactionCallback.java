@@ -0,0 +1,18 @@
+
+package com.zy.jdbclib.transaction;
+
+/**
+ * 在事务中执行的回调，参见{@link TransactionTemplate}
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public interface TransactionCallback<T extends Object> {
+
+	/**
+	 * @param status 当前事务，可以调用setRollbackOnly()回滚而不抛出异常
+	 * @return 结果
+	 */
+	public T doInTransaction(TransactionStatus status);
+
+}
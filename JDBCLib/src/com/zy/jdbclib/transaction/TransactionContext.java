@@ -0,0 +1,84 @@
+
+package com.zy.jdbclib.transaction;
+
+import java.sql.Connection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * 当前线程中按DataSource绑定的事务连接。JdbcTemplate在获取连接时先从这里查找，找到时复用该连接，
+ * 并且不在每条语句之后提交和关闭，由事务管理器在事务结束时统一提交。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class TransactionContext {
+
+    private static final ThreadLocal<Map<DataSource, ConnectionHolder>> holders = new ThreadLocal<Map<DataSource, ConnectionHolder>>();
+
+    private TransactionContext() {
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @return 当前线程中该数据源的事务连接，没有事务时返回null
+     */
+    public static ConnectionHolder getConnectionHolder(DataSource dataSource) {
+        Map<DataSource, ConnectionHolder> map = holders.get();
+        return (map != null && dataSource != null ? map.get(dataSource) : null);
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @return 当前线程中该数据源的事务连接，没有事务时返回null
+     */
+    public static Connection getConnection(DataSource dataSource) {
+        ConnectionHolder holder = getConnectionHolder(dataSource);
+        return (holder != null ? holder.getConnection() : null);
+    }
+
+    /**
+     * @return 当前线程中是否有事务
+     */
+    public static boolean isActive() {
+        return holders.get() != null;
+    }
+
+    /**
+     * 注册在当前事务提交成功后执行的回调，如使缓存失效
+     *
+     * @param dataSource 数据源
+     * @param callback 回调
+     * @return 当前线程中该数据源没有事务时返回false，回调不会被执行
+     */
+    public static boolean registerAfterCommit(DataSource dataSource, Runnable callback) {
+        ConnectionHolder holder = getConnectionHolder(dataSource);
+        if (holder == null) {
+            return false;
+        }
+        holder.registerAfterCommit(callback);
+        return true;
+    }
+
+    static void bind(DataSource dataSource, ConnectionHolder holder) {
+        Map<DataSource, ConnectionHolder> map = holders.get();
+        if (map == null) {
+            map = new IdentityHashMap<DataSource, ConnectionHolder>(4);
+            holders.set(map);
+        }
+        map.put(dataSource, holder);
+    }
+
+    static void unbind(DataSource dataSource) {
+        Map<DataSource, ConnectionHolder> map = holders.get();
+        if (map != null) {
+            map.remove(dataSource);
+            if (map.isEmpty()) {
+                holders.remove();
+            }
+        }
+    }
+
+}
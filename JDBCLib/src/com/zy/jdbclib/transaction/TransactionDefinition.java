@@ -0,0 +1,100 @@
+
+package com.zy.jdbclib.transaction;
+
+import java.sql.Connection;
+
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 事务属性：隔离级别、是否只读和超时时间。已经有事务时加入外层事务，内层的属性不起作用。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class TransactionDefinition {
+
+    /** 使用连接默认的隔离级别 */
+    public static final int ISOLATION_DEFAULT = -1;
+
+    public static final int ISOLATION_READ_UNCOMMITTED = Connection.TRANSACTION_READ_UNCOMMITTED;
+
+    public static final int ISOLATION_READ_COMMITTED = Connection.TRANSACTION_READ_COMMITTED;
+
+    public static final int ISOLATION_REPEATABLE_READ = Connection.TRANSACTION_REPEATABLE_READ;
+
+    public static final int ISOLATION_SERIALIZABLE = Connection.TRANSACTION_SERIALIZABLE;
+
+    /** 不限制事务的执行时间 */
+    public static final int TIMEOUT_DEFAULT = -1;
+
+    private int isolationLevel = ISOLATION_DEFAULT;
+
+    private boolean readOnly = false;
+
+    private int timeout = TIMEOUT_DEFAULT;
+
+    public TransactionDefinition() {
+    }
+
+    /**
+     * 复制另一个事务定义的属性
+     */
+    public TransactionDefinition(TransactionDefinition other) {
+        Assert.notNull(other, "TransactionDefinition must not be null");
+        this.isolationLevel = other.isolationLevel;
+        this.readOnly = other.readOnly;
+        this.timeout = other.timeout;
+    }
+
+    /**
+     * @return the isolationLevel
+     */
+    public int getIsolationLevel() {
+        return isolationLevel;
+    }
+
+    /**
+     * @param isolationLevel 隔离级别，ISOLATION_*常量之一
+     */
+    public void setIsolationLevel(int isolationLevel) {
+        this.isolationLevel = isolationLevel;
+    }
+
+    /**
+     * @return the readOnly
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @param readOnly 是否只读。只读事务从{@link com.zy.jdbclib.dataSource.ReadWriteRoutingDataSource}
+     *            的从库获取连接，并调用Connection.setReadOnly(true)
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return the timeout
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout 事务的超时时间（秒），语句的queryTimeout不超过剩余时间，超时后的语句抛出异常；
+     *            TIMEOUT_DEFAULT表示不限制
+     */
+    public void setTimeout(int timeout) {
+        Assert.isTrue(timeout >= TIMEOUT_DEFAULT,
+                "Timeout must be a positive integer or TIMEOUT_DEFAULT");
+        this.timeout = timeout;
+    }
+
+    public String toString() {
+        return "isolation=" + this.isolationLevel + ", readOnly=" + this.readOnly + ", timeout="
+                + this.timeout;
+    }
+
+}
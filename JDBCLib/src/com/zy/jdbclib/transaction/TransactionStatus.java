@@ -0,0 +1,90 @@
+
+package com.zy.jdbclib.transaction;
+
+/**
+ * 一次{@link DataSourceTransactionManager#getTransaction(TransactionDefinition)}的状态
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class TransactionStatus {
+
+    private final ConnectionHolder holder;
+
+    /** 是否由本次调用开始的事务，加入外层事务时为false */
+    private final boolean newTransaction;
+
+    /** 开始事务前线程的读写标记，结束时恢复 */
+    private final Boolean previousReadOnly;
+
+    /** 开始事务时修改过的连接属性，结束时恢复 */
+    private final int previousIsolationLevel;
+
+    private final boolean resetReadOnly;
+
+    private boolean rollbackOnly = false;
+
+    private boolean completed = false;
+
+    TransactionStatus(ConnectionHolder holder, boolean newTransaction, Boolean previousReadOnly,
+            int previousIsolationLevel, boolean resetReadOnly) {
+        this.holder = holder;
+        this.newTransaction = newTransaction;
+        this.previousReadOnly = previousReadOnly;
+        this.previousIsolationLevel = previousIsolationLevel;
+        this.resetReadOnly = resetReadOnly;
+    }
+
+    /**
+     * @return 是否由本次调用开始的事务
+     */
+    public boolean isNewTransaction() {
+        return newTransaction;
+    }
+
+    /**
+     * 把事务标记为只能回滚。加入外层事务时，整个外层事务都会回滚。
+     */
+    public void setRollbackOnly() {
+        this.rollbackOnly = true;
+    }
+
+    /**
+     * @return 本次调用或者事务中的其他参与者是否把事务标记为只能回滚
+     */
+    public boolean isRollbackOnly() {
+        return this.rollbackOnly || this.holder.isRollbackOnly();
+    }
+
+    /**
+     * @return 是否已经提交或回滚
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    void setCompleted() {
+        this.completed = true;
+    }
+
+    boolean isLocalRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    ConnectionHolder getConnectionHolder() {
+        return holder;
+    }
+
+    Boolean getPreviousReadOnly() {
+        return previousReadOnly;
+    }
+
+    int getPreviousIsolationLevel() {
+        return previousIsolationLevel;
+    }
+
+    boolean isResetReadOnly() {
+        return resetReadOnly;
+    }
+
+}
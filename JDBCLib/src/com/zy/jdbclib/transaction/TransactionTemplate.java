@@ -0,0 +1,100 @@
+
+package com.zy.jdbclib.transaction;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.utils.Assert;
+
+/**
+ * 在事务中执行回调：回调正常返回时提交，抛出RuntimeException或Error时回滚。事务中同一个DataSource的
+ * 所有JdbcTemplate调用共用一个连接，只在最后提交一次。
+ *
+ * <pre>
+ * TransactionTemplate tx = new TransactionTemplate(dataSource);
+ * tx.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+ * tx.setTimeout(10);
+ * tx.execute(new TransactionCallback&lt;Object&gt;() {
+ *     public Object doInTransaction(TransactionStatus status) {
+ *         template.update(&quot;update account set balance = balance - ? where id = ?&quot;, 100, from);
+ *         template.update(&quot;update account set balance = balance + ? where id = ?&quot;, 100, to);
+ *         return null;
+ *     }
+ * });
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class TransactionTemplate extends TransactionDefinition {
+
+    private final Log log = LogFactory.getLog(TransactionTemplate.class);
+
+    private DataSourceTransactionManager transactionManager;
+
+    public TransactionTemplate() {
+    }
+
+    public TransactionTemplate(DataSource dataSource) {
+        this(new DataSourceTransactionManager(dataSource));
+    }
+
+    public TransactionTemplate(DataSourceTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * @return the transactionManager
+     */
+    public DataSourceTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    /**
+     * @param transactionManager the transactionManager to set
+     */
+    public void setTransactionManager(DataSourceTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * 在事务中执行回调
+     *
+     * @param action 回调
+     * @return 回调的结果
+     * @throws JDBCException 开始、提交或回滚事务失败时；回调抛出的异常原样抛出
+     */
+    public <T extends Object> T execute(TransactionCallback<T> action) throws JDBCException {
+        Assert.notNull(action, "Callback object must not be null!");
+        Assert.notNull(this.transactionManager, "TransactionManager must not be null");
+        TransactionStatus status = this.transactionManager.getTransaction(this);
+        T result;
+        try {
+            result = action.doInTransaction(status);
+        } catch (RuntimeException ex) {
+            rollbackOnException(status, ex);
+            throw ex;
+        } catch (Error err) {
+            rollbackOnException(status, err);
+            throw err;
+        }
+        this.transactionManager.commit(status);
+        return result;
+    }
+
+    /**
+     * 回滚。回滚失败时记录被覆盖的回调异常，抛出回滚的异常
+     */
+    private void rollbackOnException(TransactionStatus status, Throwable ex) {
+        try {
+            this.transactionManager.rollback(status);
+        } catch (RuntimeException rollbackEx) {
+            log.error("Application exception overridden by rollback exception", ex);
+            throw rollbackEx;
+        }
+    }
+
+}
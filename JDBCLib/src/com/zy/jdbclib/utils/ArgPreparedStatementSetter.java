@@ -36,4 +36,11 @@ public class ArgPreparedStatementSetter implements PreparedStatementSetter {
         }
     }
 
+    /**
+     * @return the args
+     */
+    public Object[] getArgs() {
+        return args;
+    }
+
 }
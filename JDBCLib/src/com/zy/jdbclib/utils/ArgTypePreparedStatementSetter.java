@@ -71,4 +71,18 @@ public class ArgTypePreparedStatementSetter implements PreparedStatementSetter {
 		}
 	}
 
+	/**
+	 * @return the args
+	 */
+	public Object[] getArgs() {
+		return args;
+	}
+
+	/**
+	 * @return the argTypes
+	 */
+	public int[] getArgTypes() {
+		return argTypes;
+	}
+
 }
@@ -2,9 +2,12 @@
 package com.zy.jdbclib.utils;
 
 import java.beans.PropertyDescriptor;
+import java.lang.ref.WeakReference;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,12 +23,23 @@ import com.zy.jdbclib.core.RowMapper;
  */
 public class BeanPropertyRowMapper<T extends Object> implements RowMapper<T> {
 
+    /** 各个类的属性名到PropertyDescriptor的映射 */
+    private static final BoundedCache<Class<?>, Map<String, PropertyDescriptor>> mappedFieldsCache = new BoundedCache<Class<?>, Map<String, PropertyDescriptor>>(
+            256);
+
+    /** 映射类和列名组合到列映射的缓存，同一个查询的不同执行共享同一个列映射 */
+    private static final BoundedCache<MappingKey, ColumnMapping> mappingCache = new BoundedCache<MappingKey, ColumnMapping>(
+            1024);
+
     protected final Log log = LogFactory.getLog(getClass());
 
     protected Class<T> mappedClass;
 
     private Map<String, PropertyDescriptor> mappedFields;
 
+    /** 当前ResultSet使用的列映射，只保存ResultSet的弱引用，以免查询结束后仍持有结果数据 */
+    private volatile ResultSetMapping currentMapping;
+
     public BeanPropertyRowMapper(Class<T> mappedClass) {
         initialize(mappedClass);
     }
@@ -37,18 +51,23 @@ public class BeanPropertyRowMapper<T extends Object> implements RowMapper<T> {
      */
     protected void initialize(Class<T> mappedClass) {
         this.mappedClass = mappedClass;
-        this.mappedFields = new HashMap<String, PropertyDescriptor>();
-        PropertyDescriptor[] pds = ReflectionUtils.getPropertyDescriptors(mappedClass);
-        for (int i = 0; i < pds.length; i++) {
-            PropertyDescriptor pd = pds[i];
-            if (pd.getWriteMethod() != null) {
-                this.mappedFields.put(pd.getName().toLowerCase(), pd);
-                String underscoredName = underscoreName(pd.getName());
-                if (!pd.getName().toLowerCase().equals(underscoredName)) {
-                    this.mappedFields.put(underscoredName, pd);
+        Map<String, PropertyDescriptor> fields = mappedFieldsCache.get(mappedClass);
+        if (fields == null) {
+            fields = new HashMap<String, PropertyDescriptor>();
+            PropertyDescriptor[] pds = ReflectionUtils.getPropertyDescriptors(mappedClass);
+            for (int i = 0; i < pds.length; i++) {
+                PropertyDescriptor pd = pds[i];
+                if (pd.getWriteMethod() != null) {
+                    fields.put(pd.getName().toLowerCase(), pd);
+                    String underscoredName = underscoreName(pd.getName());
+                    if (!pd.getName().toLowerCase().equals(underscoredName)) {
+                        fields.put(underscoredName, pd);
+                    }
                 }
             }
+            fields = mappedFieldsCache.put(mappedClass, Collections.unmodifiableMap(fields));
         }
+        this.mappedFields = fields;
     }
 
     /**
@@ -84,38 +103,173 @@ public class BeanPropertyRowMapper<T extends Object> implements RowMapper<T> {
     }
 
     /**
-	 * 
-	 */
+     * 映射到同一个类的同类型RowMapper相等，查询结果缓存据此识别相同的查询
+     */
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        return this.mappedClass == ((BeanPropertyRowMapper<?>)obj).mappedClass;
+    }
+
+    public int hashCode() {
+        return getClass().hashCode() * 31 + (this.mappedClass != null ? this.mappedClass.hashCode() : 0);
+    }
+
+    /**
+     * 第一行时根据ResultSet的元数据确定每一列对应的属性，以后的行直接使用该映射
+     */
     public T mapRow(ResultSet rs, int rowNumber) throws SQLException {
         Assert.notNull(mappedClass, "Mapped class was not specified");
 
+        ColumnMapping mapping = getColumnMapping(rs, rowNumber);
         T mappedObject = ReflectionUtils.instantiateClass(this.mappedClass);
 
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int columnCount = rsmd.getColumnCount();
-        for (int index = 1; index <= columnCount; index++) {
-            String column = JdbcUtils.lookupColumnName(rsmd, index).toLowerCase();
-            PropertyDescriptor pd = (PropertyDescriptor)this.mappedFields.get(column);
+        PropertyDescriptor[] pds = mapping.properties;
+        PropertyAccessor[] accessors = mapping.accessors;
+        for (int i = 0; i < pds.length; i++) {
+            PropertyDescriptor pd = pds[i];
             if (pd != null) {
                 try {
-                    Object value = getColumnValue(rs, index, pd);
-                    if (log.isDebugEnabled() && rowNumber == 0) {
-                        log.debug("Mapping column '" + column + "' to property '" + pd.getName()
-                                + "' of type " + pd.getPropertyType());
-                    }
-                    ReflectionUtils.setFieldValue(mappedObject, pd.getName(), value);
+                    Object value = getColumnValue(rs, i + 1, pd);
+                    accessors[i].setValue(mappedObject, value);
                 } catch (Exception ex) {
-                    throw new JDBCException("Unable to map column " + column + " to property "
-                            + pd.getName(), ex);
+                    throw new JDBCException("Unable to map column " + mapping.columns[i]
+                            + " to property " + pd.getName(), ex);
                 }
             }
         }
         return mappedObject;
     }
 
+    /**
+     * 返回给定ResultSet的列映射。同一个ResultSet只在第一行时读取元数据。
+     */
+    protected ColumnMapping getColumnMapping(ResultSet rs, int rowNumber) throws SQLException {
+        ResultSetMapping current = this.currentMapping;
+        if (current != null && rowNumber > 0 && current.resultSet.get() == rs) {
+            return current.mapping;
+        }
+
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int columnCount = rsmd.getColumnCount();
+        String[] columns = new String[columnCount];
+        for (int index = 1; index <= columnCount; index++) {
+            columns[index - 1] = JdbcUtils.lookupColumnName(rsmd, index).toLowerCase();
+        }
+
+        MappingKey key = new MappingKey(getClass(), this.mappedClass, columns);
+        ColumnMapping mapping = mappingCache.get(key);
+        if (mapping == null) {
+            mapping = mappingCache.put(key, createColumnMapping(columns));
+        }
+        this.currentMapping = new ResultSetMapping(rs, mapping);
+        return mapping;
+    }
+
+    private ColumnMapping createColumnMapping(String[] columns) {
+        PropertyDescriptor[] pds = new PropertyDescriptor[columns.length];
+        PropertyAccessor[] accessors = new PropertyAccessor[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            pds[i] = this.mappedFields.get(columns[i]);
+            if (pds[i] != null) {
+                accessors[i] = PropertyAccessor.forProperty(this.mappedClass, pds[i]);
+                if (log.isDebugEnabled()) {
+                    log.debug("Mapping column '" + columns[i] + "' to property '"
+                            + pds[i].getName() + "' of type " + pds[i].getPropertyType());
+                }
+            }
+        }
+        return new ColumnMapping(columns, pds, accessors);
+    }
+
     protected Object getColumnValue(ResultSet rs, int index, PropertyDescriptor pd)
             throws SQLException {
         return JdbcUtils.getResultSetValue(rs, index, pd.getPropertyType());
     }
 
+    /**
+     * 一种结果集结构（列名序列）到映射类属性的映射，下标为列号减1，没有对应属性的列为null
+     */
+    protected static class ColumnMapping {
+
+        final String[] columns;
+
+        final PropertyDescriptor[] properties;
+
+        final PropertyAccessor[] accessors;
+
+        ColumnMapping(String[] columns, PropertyDescriptor[] properties,
+                PropertyAccessor[] accessors) {
+            this.columns = columns;
+            this.properties = properties;
+            this.accessors = accessors;
+        }
+
+        public String[] getColumns() {
+            return this.columns;
+        }
+
+        public PropertyDescriptor[] getProperties() {
+            return this.properties;
+        }
+
+        public PropertyAccessor[] getAccessors() {
+            return this.accessors;
+        }
+    }
+
+    private static class ResultSetMapping {
+
+        final WeakReference<ResultSet> resultSet;
+
+        final ColumnMapping mapping;
+
+        ResultSetMapping(ResultSet rs, ColumnMapping mapping) {
+            this.resultSet = new WeakReference<ResultSet>(rs);
+            this.mapping = mapping;
+        }
+    }
+
+    /**
+     * 列映射缓存的key：RowMapper类型、映射类和列名序列
+     */
+    private static class MappingKey {
+
+        private final Class<?> mapperClass;
+
+        private final Class<?> mappedClass;
+
+        private final String[] columns;
+
+        private final int hash;
+
+        MappingKey(Class<?> mapperClass, Class<?> mappedClass, String[] columns) {
+            this.mapperClass = mapperClass;
+            this.mappedClass = mappedClass;
+            this.columns = columns;
+            this.hash = 31 * (31 * mapperClass.hashCode() + mappedClass.hashCode())
+                    + Arrays.hashCode(columns);
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MappingKey)) {
+                return false;
+            }
+            MappingKey other = (MappingKey)obj;
+            return this.mapperClass == other.mapperClass && this.mappedClass == other.mappedClass
+                    && Arrays.equals(this.columns, other.columns);
+        }
+    }
+
 }
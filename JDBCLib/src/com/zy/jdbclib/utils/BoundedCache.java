@@ -0,0 +1,82 @@
+
+package com.zy.jdbclib.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一个有容量上限的线程安全缓存，用于缓存根据key计算出来的、可以重新计算的元数据。
+ * 读操作无锁；超过容量时随机淘汰一部分条目，而不是严格的LRU。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class BoundedCache<K, V> {
+
+    private final ConcurrentHashMap<K, V> map;
+
+    private final int maxSize;
+
+    /**
+     * @param maxSize 缓存的最大条目数
+     */
+    public BoundedCache(int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than zero");
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<K, V>(Math.min(maxSize, 256));
+    }
+
+    public V get(K key) {
+        return this.map.get(key);
+    }
+
+    /**
+     * 放入缓存。如果其他线程已经放入了同一个key，返回已有的值。
+     *
+     * @return 缓存中最终保存的值
+     */
+    public V put(K key, V value) {
+        if (this.map.size() >= this.maxSize) {
+            evict();
+        }
+        V existing = this.map.putIfAbsent(key, value);
+        return (existing != null ? existing : value);
+    }
+
+    public V remove(K key) {
+        return this.map.remove(key);
+    }
+
+    public int size() {
+        return this.map.size();
+    }
+
+    public void clear() {
+        this.map.clear();
+    }
+
+    /**
+     * 随机淘汰大约四分之一的条目。每个条目以相同的概率被选中，而不是总淘汰ConcurrentHashMap
+     * 遍历顺序中靠前的条目（那样同一个哈希桶中的条目会反复被淘汰，其他条目永远不会被淘汰）。
+     */
+    private void evict() {
+        int size = this.map.size();
+        int toRemove = Math.max(1, this.maxSize / 4);
+        if (size <= toRemove) {
+            this.map.clear();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Iterator<K> it = this.map.keySet().iterator(); it.hasNext() && toRemove > 0;) {
+            it.next();
+            // 剩余toRemove个名额在剩余size个条目中均匀分配
+            if (random.nextInt(size) < toRemove) {
+                it.remove();
+                toRemove--;
+            }
+            size--;
+        }
+    }
+
+}
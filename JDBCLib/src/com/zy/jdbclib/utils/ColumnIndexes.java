@@ -0,0 +1,64 @@
+
+package com.zy.jdbclib.utils;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * 一个ResultSet中各个属性对应的列号，供编译期生成的RowMapper使用。每个ResultSet只在第一行时读取元数据。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class ColumnIndexes {
+
+    private final WeakReference<ResultSet> resultSet;
+
+    private final int[] indexes;
+
+    private ColumnIndexes(ResultSet resultSet, int[] indexes) {
+        this.resultSet = new WeakReference<ResultSet>(resultSet);
+        this.indexes = indexes;
+    }
+
+    /**
+     * 返回给定ResultSet中各个属性对应的列号
+     *
+     * @param current 上一次解析的结果，可以为null
+     * @param rs 当前的ResultSet
+     * @param rowNum 当前行号
+     * @param columnNames 每个属性可以匹配的列名（小写）
+     * @return current仍然适用时返回current，否则返回新解析的结果
+     * @throws SQLException
+     */
+    public static ColumnIndexes resolve(ColumnIndexes current, ResultSet rs, int rowNum,
+            String[][] columnNames) throws SQLException {
+        if (current != null && rowNum > 0 && current.resultSet.get() == rs) {
+            return current;
+        }
+        int[] indexes = new int[columnNames.length];
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int columnCount = rsmd.getColumnCount();
+        for (int index = 1; index <= columnCount; index++) {
+            String column = JdbcUtils.lookupColumnName(rsmd, index).toLowerCase();
+            for (int p = 0; p < columnNames.length; p++) {
+                for (String name : columnNames[p]) {
+                    if (name.equals(column)) {
+                        indexes[p] = index;
+                    }
+                }
+            }
+        }
+        return new ColumnIndexes(rs, indexes);
+    }
+
+    /**
+     * @return 各个属性对应的列号，结果集中没有对应列的属性为0
+     */
+    public int[] getIndexes() {
+        return this.indexes;
+    }
+
+}
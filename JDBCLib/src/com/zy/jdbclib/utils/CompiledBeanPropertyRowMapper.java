@@ -0,0 +1,243 @@
+
+package com.zy.jdbclib.utils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+import com.zy.jdbclib.core.JDBCException;
+
+/**
+ * 为每个映射类和结果集结构（列名序列）生成专用映射代码的BeanPropertyRowMapper。
+ * <p>
+ * 第一次遇到某种结果集结构时，每一列都被组合成"调用类型对应的ResultSet getter（getInt、getLong、
+ * getString等），再直接调用setter"的MethodHandle，所有列再合并为一个MethodHandle，由JVM编译成
+ * 字节码。以后的每一行都是直线式的调用，不再经过JdbcUtils.getResultSetValue的类型判断。
+ * 与BeanPropertyRowMapper一样，基本类型的属性遇到NULL时不调用setter，保持默认值不变；
+ * 映射失败时抛出的JDBCException包含列名和属性名。
+ * <p>
+ * 可以在任何使用BeanPropertyRowMapper的地方替换使用。注意它不会调用
+ * {@link #getColumnValue(ResultSet, int, PropertyDescriptor)}，如需自定义取值请使用BeanPropertyRowMapper。
+ *
+ * <pre>
+ * List&lt;Admin&gt; list = template.query(&quot;select * from admin&quot;,
+ *         CompiledBeanPropertyRowMapper.newInstance(Admin.class));
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class CompiledBeanPropertyRowMapper<T extends Object> extends BeanPropertyRowMapper<T> {
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private static final MethodType BODY_TYPE = MethodType.methodType(void.class, Object.class,
+            ResultSet.class);
+
+    private static final MethodHandle NOT_NULL;
+
+    private static final MethodHandle COLUMN_FAILED;
+
+    static {
+        try {
+            NOT_NULL = lookup.findStatic(Objects.class, "nonNull", MethodType.methodType(
+                    boolean.class, Object.class));
+            COLUMN_FAILED = lookup.findStatic(CompiledBeanPropertyRowMapper.class,
+                    "columnFailed", MethodType.methodType(void.class, String.class,
+                            String.class, Exception.class, Object.class, ResultSet.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /** 每种列映射对应的已编译映射代码 */
+    private static final BoundedCache<ColumnMapping, CompiledMapping> compiledCache = new BoundedCache<ColumnMapping, CompiledMapping>(
+            1024);
+
+    private volatile CompiledMapping currentCompiled;
+
+    public CompiledBeanPropertyRowMapper(Class<T> mappedClass) {
+        super(mappedClass);
+    }
+
+    public static <T> CompiledBeanPropertyRowMapper<T> newInstance(Class<T> mappedClass) {
+        return new CompiledBeanPropertyRowMapper<T>(mappedClass);
+    }
+
+    public T mapRow(ResultSet rs, int rowNumber) throws SQLException {
+        ColumnMapping mapping = getColumnMapping(rs, rowNumber);
+        CompiledMapping compiled = this.currentCompiled;
+        if (compiled == null || compiled.mapping != mapping) {
+            compiled = compiledCache.get(mapping);
+            if (compiled == null) {
+                compiled = compiledCache.put(mapping, compile(mapping));
+            }
+            this.currentCompiled = compiled;
+        }
+        return compiled.map(rs);
+    }
+
+    private CompiledMapping compile(ColumnMapping mapping) {
+        try {
+            MethodHandle constructor = lookup.findConstructor(this.mappedClass,
+                    MethodType.methodType(void.class)).asType(
+                    MethodType.methodType(Object.class));
+
+            PropertyDescriptor[] pds = mapping.getProperties();
+            MethodHandle body = null;
+            for (int i = pds.length - 1; i >= 0; i--) {
+                if (pds[i] == null) {
+                    continue;
+                }
+                MethodHandle column = compileColumn(i + 1, mapping.getColumns()[i], pds[i]);
+                body = (body == null ? column : MethodHandles.foldArguments(body, column));
+            }
+            if (body == null) {
+                body = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null)
+                        .asType(MethodType.methodType(void.class)), 0, Object.class,
+                        ResultSet.class);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled row mapper for " + this.mappedClass.getName() + " with "
+                        + pds.length + " columns");
+            }
+            return new CompiledMapping(mapping, this.mappedClass, constructor, body);
+        } catch (NoSuchMethodException ex) {
+            throw new JDBCException("Mapped class [" + this.mappedClass.getName()
+                    + "] has no accessible default constructor", ex);
+        } catch (IllegalAccessException ex) {
+            throw new JDBCException("Could not compile row mapper for ["
+                    + this.mappedClass.getName() + "]", ex);
+        }
+    }
+
+    /**
+     * 生成一列的映射代码：(Object bean, ResultSet rs)void，即 bean.setXxx(rs.getXxx(index))。
+     * 基本类型的属性用判断wasNull的包装类型getter读取，值为null时不调用setter。
+     */
+    private MethodHandle compileColumn(int index, String column, PropertyDescriptor pd)
+            throws NoSuchMethodException, IllegalAccessException {
+        Method writeMethod = pd.getWriteMethod();
+        if (!Modifier.isPublic(writeMethod.getModifiers())
+                || !Modifier.isPublic(writeMethod.getDeclaringClass().getModifiers())) {
+            writeMethod.setAccessible(true);
+        }
+        MethodHandle setter = lookup.unreflect(writeMethod);
+        Class<?> type = pd.getPropertyType();
+        if (type.isPrimitive()) {
+            // (Object bean, Wrapper value)void：value为null时什么都不做
+            type = MethodType.methodType(type).wrap().returnType();
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+            MethodHandle notNull = MethodHandles.dropArguments(NOT_NULL.asType(MethodType
+                    .methodType(boolean.class, type)), 0, Object.class);
+            setter = MethodHandles.guardWithTest(notNull, setter, MethodHandles.empty(setter
+                    .type()));
+        }
+
+        MethodHandle getter = MethodHandles.insertArguments(resultSetGetter(type), 1, Integer
+                .valueOf(index));
+        getter = getter.asType(MethodType.methodType(type, ResultSet.class));
+        MethodHandle body = MethodHandles.filterArguments(setter, 1, getter).asType(BODY_TYPE);
+        // 异常中加上列名和属性名：(Throwable, Object, ResultSet)void
+        MethodHandle handler = MethodHandles.insertArguments(COLUMN_FAILED, 0, column, pd
+                .getName());
+        return MethodHandles.catchException(body, Exception.class, handler);
+    }
+
+    private static void columnFailed(String column, String property, Exception ex, Object bean,
+            ResultSet rs) {
+        throw new JDBCException("Unable to map column " + column + " to property " + property,
+                ex);
+    }
+
+    /**
+     * 返回读取给定类型的(ResultSet, int)getter
+     */
+    private static MethodHandle resultSetGetter(Class<?> type) throws NoSuchMethodException,
+            IllegalAccessException {
+        if (type == String.class) {
+            return getter("getString", String.class);
+        } else if (type == BigDecimal.class) {
+            return getter("getBigDecimal", BigDecimal.class);
+        } else if (type == byte[].class) {
+            return getter("getBytes", byte[].class);
+        } else if (type == java.sql.Date.class) {
+            return getter("getDate", java.sql.Date.class);
+        } else if (type == java.sql.Time.class) {
+            return getter("getTime", java.sql.Time.class);
+        } else if (type == java.sql.Timestamp.class || type == java.util.Date.class) {
+            return getter("getTimestamp", java.sql.Timestamp.class);
+        } else if (type == Integer.class || type == Long.class || type == Short.class
+                || type == Byte.class || type == Boolean.class || type == Float.class
+                || type == Double.class) {
+            // 包装类型需要判断wasNull，基本类型的属性也使用这些getter
+            return lookup.findStatic(JdbcUtils.class, "get"
+                    + type.getSimpleName(), MethodType.methodType(type, ResultSet.class,
+                    int.class));
+        }
+        // 其他类型交给JdbcUtils处理
+        MethodHandle generic = lookup.findStatic(JdbcUtils.class, "getResultSetValue", MethodType
+                .methodType(Object.class, ResultSet.class, int.class, Class.class));
+        return MethodHandles.insertArguments(generic, 2, type);
+    }
+
+    private static MethodHandle getter(String name, Class<?> type) throws NoSuchMethodException,
+            IllegalAccessException {
+        return lookup.findVirtual(ResultSet.class, name, MethodType.methodType(type, int.class));
+    }
+
+    /**
+     * 一种列映射编译后的映射代码
+     */
+    private static class CompiledMapping {
+
+        final ColumnMapping mapping;
+
+        private final Class<?> mappedClass;
+
+        private final MethodHandle constructor;
+
+        private final MethodHandle body;
+
+        CompiledMapping(ColumnMapping mapping, Class<?> mappedClass, MethodHandle constructor,
+                MethodHandle body) {
+            this.mapping = mapping;
+            this.mappedClass = mappedClass;
+            this.constructor = constructor;
+            this.body = body;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T map(ResultSet rs) throws SQLException {
+            Object bean;
+            try {
+                bean = (Object)this.constructor.invokeExact();
+            } catch (Error err) {
+                throw err;
+            } catch (Throwable ex) {
+                throw new JDBCException("Could not instantiate mapped class ["
+                        + this.mappedClass.getName() + "]", ex);
+            }
+            try {
+                // 列的映射异常已经在columnFailed中加上了列名和属性名
+                this.body.invokeExact(bean, rs);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Error err) {
+                throw err;
+            } catch (Throwable ex) {
+                throw new JDBCException("Unable to map row to [" + this.mappedClass.getName()
+                        + "]", ex);
+            }
+            return (T)bean;
+        }
+    }
+
+}
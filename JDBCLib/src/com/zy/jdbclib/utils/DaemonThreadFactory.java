@@ -0,0 +1,33 @@
+
+package com.zy.jdbclib.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建守护线程的ThreadFactory，线程名为前缀加序号，jdbclib内部的线程不会阻止JVM退出。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param prefix 线程名前缀，如"PooledDataSource-housekeeper-"
+     */
+    public DaemonThreadFactory(String prefix) {
+        Assert.notNull(prefix, "prefix must not be null");
+        this.prefix = prefix;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, this.prefix + this.count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
@@ -0,0 +1,129 @@
+
+package com.zy.jdbclib.utils;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.List;
+
+import com.zy.jdbclib.core.SqlParameterValue;
+import com.zy.jdbclib.core.SqlTypeValue;
+
+/**
+ * IN列表占位符数量的分档。把集合参数展开成IN列表时，占位符数量向上取到固定的档位（1、2、4、8……1024），
+ * 多出的位置重复最后一个值，不改变IN的结果。这样不同长度的集合只对应少数几种sql语句，
+ * 驱动和数据库的语句缓存仍然能够命中。本类同时提供命名参数和?参数展开集合时共用的方法。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class InClauseBuckets {
+
+    /** 最大的档位，更长的列表不再填充 */
+    public static final int MAX_BUCKET = 1024;
+
+    private InClauseBuckets() {
+    }
+
+    /**
+     * @param size 集合的元素个数，大于0
+     * @return 不小于size的最小档位；size超过MAX_BUCKET时返回size本身
+     */
+    public static int bucketSize(int size) {
+        Assert.isTrue(size > 0, "size must be greater than zero");
+        if (size > MAX_BUCKET) {
+            return size;
+        }
+        return (size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1);
+    }
+
+    /**
+     * @return 集合或数组（byte[]、char[]除外）的元素，value不是集合时返回null
+     */
+    public static Object[] toElements(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>)value).toArray();
+        } else if (value instanceof Object[]) {
+            return (Object[])value;
+        } else if (value != null && value.getClass().isArray() && !(value instanceof byte[])
+                && !(value instanceof char[])) {
+            int length = Array.getLength(value);
+            Object[] elements = new Object[length];
+            for (int i = 0; i < length; i++) {
+                elements[i] = Array.get(value, i);
+            }
+            return elements;
+        }
+        return null;
+    }
+
+    /**
+     * @return 元素为Object[]时的列数，否则返回0
+     */
+    public static int columnCount(Object[] elements) {
+        return (elements.length > 0 && elements[0] instanceof Object[] ? ((Object[])elements[0]).length
+                : 0);
+    }
+
+    /**
+     * 添加展开后的占位符：<code>?, ?, ?</code>，或多列时<code>(?, ?), (?, ?)</code>
+     *
+     * @param sql 目标
+     * @param size 元素个数
+     * @param columns 每个元素的列数，0表示单个值
+     */
+    public static void appendPlaceholders(StringBuilder sql, int size, int columns) {
+        for (int k = 0; k < size; k++) {
+            if (k > 0) {
+                sql.append(", ");
+            }
+            if (columns > 0) {
+                sql.append('(');
+                for (int c = 0; c < columns; c++) {
+                    sql.append(c > 0 ? ", ?" : "?");
+                }
+                sql.append(')');
+            } else {
+                sql.append('?');
+            }
+        }
+    }
+
+    /**
+     * 把元素按档位填充后依次加入参数列表，多列的元素展开成各列的值
+     *
+     * @param elements 集合的元素
+     * @param from 第一个元素的位置
+     * @param count 元素个数
+     * @param size 填充后的个数，不小于count
+     * @param sqlType 元素的sql类型
+     * @param args 参数列表
+     * @param argTypes 参数类型列表，为null时已知类型的值包装成SqlParameterValue
+     */
+    public static void addPadded(Object[] elements, int from, int count, int size, int sqlType,
+            List<Object> args, List<Integer> argTypes) {
+        for (int k = 0; k < size; k++) {
+            // 填充的位置重复最后一个值
+            Object element = elements[from + Math.min(k, count - 1)];
+            if (element instanceof Object[]) {
+                for (Object column : (Object[])element) {
+                    addValue(column, sqlType, args, argTypes);
+                }
+            } else {
+                addValue(element, sqlType, args, argTypes);
+            }
+        }
+    }
+
+    private static void addValue(Object value, int sqlType, List<Object> args,
+            List<Integer> argTypes) {
+        if (argTypes != null) {
+            args.add(value);
+            argTypes.add(Integer.valueOf(sqlType));
+        } else if (sqlType != SqlTypeValue.TYPE_UNKNOWN && !(value instanceof SqlParameterValue)) {
+            args.add(new SqlParameterValue(sqlType, value));
+        } else {
+            args.add(value);
+        }
+    }
+
+}
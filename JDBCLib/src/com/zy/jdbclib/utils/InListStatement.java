@@ -0,0 +1,342 @@
+
+package com.zy.jdbclib.utils;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.zy.jdbclib.core.JDBCException;
+import com.zy.jdbclib.core.SqlParameterValue;
+import com.zy.jdbclib.core.SqlTypeValue;
+
+/**
+ * 把?参数中的集合展开成IN列表后的语句。只有<code>IN (?)</code>中唯一的?对应的集合参数才展开，
+ * 展开成按{@link InClauseBuckets}填充的<code>?, ?, ...</code>，参数数组也相应展开；
+ * 其他位置的集合或数组参数原样绑定。
+ * <p>
+ * sql中?的个数与参数个数不一致时（调用者已经手工写好了展开后的占位符）不做处理，保持原来的行为。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class InListStatement {
+
+    private static final BoundedCache<String, int[]> placeholderCache = new BoundedCache<String, int[]>(
+            1024);
+
+    /** 结果不能简单拼接的语句，不分块执行 */
+    private static final Pattern NOT_CHUNKABLE = Pattern.compile(
+            "\\b(group\\s+by|order\\s+by|limit|offset|fetch|distinct|having|union|count|sum|avg|min|max)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /** 可以分块的IN谓词：WHERE或AND后面的列（或列的元组）IN (?) */
+    private static final Pattern CHUNKABLE_PREDICATE = Pattern.compile(
+            "\\b(where|and)\\s+([\\w.`\"]+|\\([^()]*\\))\\s+in\\s*\\(\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private final String sql;
+
+    private final Object[] args;
+
+    private final int[] argTypes;
+
+    private InListStatement(String sql, Object[] args, int[] argTypes) {
+        this.sql = sql;
+        this.args = args;
+        this.argTypes = argTypes;
+    }
+
+    /**
+     * 展开集合参数。只有一个集合超过chunkSize、且语句的结果可以直接拼接（没有ORDER BY、LIMIT、GROUP BY、
+     * 聚合函数等）时，把该集合分成多块，每块生成一条语句。该集合还必须是顶层AND条件中的
+     * <code>col IN (?)</code>：前面没有NOT，语句中没有顶层的OR，否则各块的结果会重复或者互相影响。
+     *
+     * @param sql 使用?占位符的sql
+     * @param args 参数
+     * @param argTypes 参数类型，可以为null
+     * @param chunkSize 每块的最大元素个数，0表示不分块
+     * @return 展开后的语句，通常只有一条；没有集合参数或不需要展开时返回null
+     * @throws JDBCException 集合参数为空时
+     */
+    public static List<InListStatement> expand(String sql, Object[] args, int[] argTypes,
+            int chunkSize) throws JDBCException {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        Object[][] collections = null;
+        int[] placeholders = null;
+        int[] types = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            Object value = args[i];
+            types[i] = (argTypes != null ? argTypes[i] : SqlTypeValue.TYPE_UNKNOWN);
+            if (value instanceof SqlParameterValue) {
+                SqlParameterValue parameterValue = (SqlParameterValue)value;
+                value = parameterValue.getValue();
+                if (parameterValue.getSqlType() != SqlTypeValue.TYPE_UNKNOWN) {
+                    types[i] = parameterValue.getSqlType();
+                }
+            }
+            Object[] elements = (types[i] != Types.ARRAY ? InClauseBuckets.toElements(value) : null);
+            if (elements == null) {
+                continue;
+            }
+            if (placeholders == null) {
+                placeholders = placeholders(sql);
+                if (placeholders.length != args.length) {
+                    return null;
+                }
+            }
+            // 只展开IN (?)中的?，其他位置的集合或数组原样绑定（如数组列、setObject）
+            if (!isSoleInListItem(sql, placeholders[i])) {
+                continue;
+            }
+            if (collections == null) {
+                collections = new Object[args.length][];
+            }
+            collections[i] = elements;
+        }
+        if (collections == null) {
+            return null;
+        }
+        int chunked = -1;
+        if (chunkSize > 0 && !NOT_CHUNKABLE.matcher(sql).find()) {
+            for (int i = 0; i < args.length; i++) {
+                if (collections[i] != null && collections[i].length > chunkSize) {
+                    if (chunked >= 0) {
+                        // 多个大集合分块会产生组合，不分块
+                        chunked = -1;
+                        break;
+                    }
+                    chunked = i;
+                }
+            }
+            if (chunked >= 0 && !isChunkablePredicate(sql, placeholders[chunked])) {
+                chunked = -1;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (collections[i] != null && collections[i].length == 0) {
+                throw new JDBCException("Empty collection for SQL parameter " + (i + 1) + ": "
+                        + sql);
+            }
+        }
+        if (chunked < 0) {
+            return Collections.singletonList(build(sql, placeholders, args, argTypes, types,
+                    collections, -1, 0, 0));
+        }
+        int total = collections[chunked].length;
+        List<InListStatement> statements = new ArrayList<InListStatement>((total + chunkSize - 1)
+                / chunkSize);
+        for (int from = 0; from < total; from += chunkSize) {
+            statements.add(build(sql, placeholders, args, argTypes, types, collections, chunked,
+                    from, Math.min(chunkSize, total - from)));
+        }
+        return statements;
+    }
+
+    /**
+     * @param chunked 分块的集合参数位置，-1表示不分块
+     * @param from 分块的第一个元素
+     * @param count 分块的元素个数
+     */
+    private static InListStatement build(String sql, int[] placeholders, Object[] args,
+            int[] argTypes, int[] types, Object[][] collections, int chunked, int from, int count) {
+        StringBuilder expanded = new StringBuilder(sql.length() + 64);
+        List<Object> newArgs = new ArrayList<Object>(args.length + 16);
+        List<Integer> newTypes = (argTypes != null ? new ArrayList<Integer>(args.length + 16)
+                : null);
+        int last = 0;
+        for (int i = 0; i < args.length; i++) {
+            expanded.append(sql, last, placeholders[i]);
+            last = placeholders[i] + 1;
+            Object[] elements = collections[i];
+            if (elements == null) {
+                expanded.append('?');
+                newArgs.add(args[i]);
+                if (newTypes != null) {
+                    newTypes.add(Integer.valueOf(argTypes[i]));
+                }
+                continue;
+            }
+            int start = (i == chunked ? from : 0);
+            int length = (i == chunked ? count : elements.length);
+            int size = InClauseBuckets.bucketSize(length);
+            InClauseBuckets.appendPlaceholders(expanded, size, InClauseBuckets
+                    .columnCount(elements));
+            InClauseBuckets.addPadded(elements, start, length, size, types[i], newArgs, newTypes);
+        }
+        expanded.append(sql, last, sql.length());
+        int[] typeArray = null;
+        if (newTypes != null) {
+            typeArray = new int[newTypes.size()];
+            for (int i = 0; i < typeArray.length; i++) {
+                typeArray[i] = newTypes.get(i).intValue();
+            }
+        }
+        return new InListStatement(expanded.toString(), newArgs.toArray(), typeArray);
+    }
+
+    /**
+     * @param placeholder ?的位置
+     * @return ?是否是<code>IN (?)</code>列表中唯一的一项
+     */
+    private static boolean isSoleInListItem(String sql, int placeholder) {
+        int end = placeholder + 1;
+        while (end < sql.length() && Character.isWhitespace(sql.charAt(end))) {
+            end++;
+        }
+        if (end >= sql.length() || sql.charAt(end) != ')') {
+            return false;
+        }
+        int start = placeholder - 1;
+        while (start >= 0 && Character.isWhitespace(sql.charAt(start))) {
+            start--;
+        }
+        if (start < 0 || sql.charAt(start) != '(') {
+            return false;
+        }
+        start--;
+        while (start >= 0 && Character.isWhitespace(sql.charAt(start))) {
+            start--;
+        }
+        return start >= 1 && (sql.charAt(start) == 'n' || sql.charAt(start) == 'N')
+                && (sql.charAt(start - 1) == 'i' || sql.charAt(start - 1) == 'I')
+                && (start < 2 || !Character.isJavaIdentifierPart(sql.charAt(start - 2)));
+    }
+
+    /**
+     * @param placeholder 集合参数的?的位置
+     * @return ?是否位于顶层AND条件中的<code>col IN (?)</code>，并且语句中没有顶层的OR、XOR、||
+     */
+    private static boolean isChunkablePredicate(String sql, int placeholder) {
+        int end = placeholder + 1;
+        while (end < sql.length() && Character.isWhitespace(sql.charAt(end))) {
+            end++;
+        }
+        if (end >= sql.length() || sql.charAt(end) != ')') {
+            return false;
+        }
+        if (!CHUNKABLE_PREDICATE.matcher(sql.substring(0, placeholder)).find()) {
+            return false;
+        }
+        int depth = 0;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (i == placeholder && depth != 1) {
+                // IN在括号或子查询中
+                return false;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                char quote = c;
+                for (i++; i < length; i++) {
+                    c = sql.charAt(i);
+                    if (c == '\\' && quote == '\'') {
+                        i++;
+                    } else if (c == quote) {
+                        break;
+                    }
+                }
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int close = sql.indexOf("*/", i + 2);
+                i = (close < 0 ? length : close + 2);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                if (depth == 0) {
+                    String word = sql.substring(start, i);
+                    if ("or".equalsIgnoreCase(word) || "xor".equalsIgnoreCase(word)) {
+                        return false;
+                    }
+                }
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == '|' && depth == 0 && i + 1 < length && sql.charAt(i + 1) == '|') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return sql中每个?占位符的位置，不包括字符串、带引号的标识符和注释中的?
+     */
+    static int[] placeholders(String sql) {
+        int[] placeholders = placeholderCache.get(sql);
+        if (placeholders == null) {
+            List<Integer> positions = new ArrayList<Integer>();
+            int length = sql.length();
+            int i = 0;
+            while (i < length) {
+                char c = sql.charAt(i);
+                if (c == '\'' || c == '"' || c == '`') {
+                    char quote = c;
+                    for (i++; i < length; i++) {
+                        c = sql.charAt(i);
+                        if (c == '\\' && quote == '\'') {
+                            i++;
+                        } else if (c == quote) {
+                            break;
+                        }
+                    }
+                    i++;
+                } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                    while (i < length && sql.charAt(i) != '\n') {
+                        i++;
+                    }
+                } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                    int end = sql.indexOf("*/", i + 2);
+                    i = (end < 0 ? length : end + 2);
+                } else {
+                    if (c == '?') {
+                        positions.add(Integer.valueOf(i));
+                    }
+                    i++;
+                }
+            }
+            placeholders = new int[positions.size()];
+            for (int k = 0; k < placeholders.length; k++) {
+                placeholders[k] = positions.get(k).intValue();
+            }
+            placeholders = placeholderCache.put(sql, placeholders);
+        }
+        return placeholders;
+    }
+
+    /**
+     * @return 展开后的sql
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return 展开后的参数
+     */
+    public Object[] getArgs() {
+        return args;
+    }
+
+    /**
+     * @return 展开后的参数类型，原来没有指定类型时为null
+     */
+    public int[] getArgTypes() {
+        return argTypes;
+    }
+
+}
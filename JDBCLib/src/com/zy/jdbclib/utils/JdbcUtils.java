@@ -163,6 +163,44 @@ public abstract class JdbcUtils {
 		return value;
 	}
 
+	/**
+	 * 读取一个可能为NULL的整数列，NULL返回null
+	 */
+	public static Integer getInteger(ResultSet rs, int index) throws SQLException {
+		int value = rs.getInt(index);
+		return (value == 0 && rs.wasNull() ? null : Integer.valueOf(value));
+	}
+
+	public static Long getLong(ResultSet rs, int index) throws SQLException {
+		long value = rs.getLong(index);
+		return (value == 0 && rs.wasNull() ? null : Long.valueOf(value));
+	}
+
+	public static Short getShort(ResultSet rs, int index) throws SQLException {
+		short value = rs.getShort(index);
+		return (value == 0 && rs.wasNull() ? null : Short.valueOf(value));
+	}
+
+	public static Byte getByte(ResultSet rs, int index) throws SQLException {
+		byte value = rs.getByte(index);
+		return (value == 0 && rs.wasNull() ? null : Byte.valueOf(value));
+	}
+
+	public static Boolean getBoolean(ResultSet rs, int index) throws SQLException {
+		boolean value = rs.getBoolean(index);
+		return (!value && rs.wasNull() ? null : Boolean.valueOf(value));
+	}
+
+	public static Float getFloat(ResultSet rs, int index) throws SQLException {
+		float value = rs.getFloat(index);
+		return (value == 0 && rs.wasNull() ? null : Float.valueOf(value));
+	}
+
+	public static Double getDouble(ResultSet rs, int index) throws SQLException {
+		double value = rs.getDouble(index);
+		return (value == 0 && rs.wasNull() ? null : Double.valueOf(value));
+	}
+
 	/**
 	 * Close the given JDBC Statement and ignore any thrown exception. This is
 	 * useful for typical finally blocks in manual JDBC code.
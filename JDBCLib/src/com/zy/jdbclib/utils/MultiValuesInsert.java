@@ -0,0 +1,202 @@
+
+package com.zy.jdbclib.utils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.zy.jdbclib.core.SqlParameterValue;
+import com.zy.jdbclib.core.SqlTypeValue;
+
+/**
+ * 把单行的<code>INSERT ... VALUES (?, ?, ...)</code>改写成多行的
+ * <code>INSERT ... VALUES (?, ?, ...), (?, ?, ...), ...</code>，用于批量插入。
+ * 只有VALUES后面只有一组括号、括号外（例如ON DUPLICATE KEY UPDATE子句中）没有占位符的语句才能改写。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class MultiValuesInsert {
+
+    /** 一条语句中占位符的最大数量（MySQL、PostgreSQL等的协议限制） */
+    public static final int MAX_PLACEHOLDERS = 65535;
+
+    /** 估算参数大小时，数字、日期等定长类型的字节数 */
+    private static final int FIXED_VALUE_SIZE = 32;
+
+    private static final BoundedCache<String, MultiValuesInsert> parseCache = new BoundedCache<String, MultiValuesInsert>(
+            256);
+
+    /** 不能改写的语句在缓存中的标记 */
+    private static final MultiValuesInsert NOT_REWRITABLE = new MultiValuesInsert("", "", "", 0);
+
+    private final String prefix;
+
+    private final String valuesGroup;
+
+    private final String suffix;
+
+    private final int placeholderCount;
+
+    private MultiValuesInsert(String prefix, String valuesGroup, String suffix,
+            int placeholderCount) {
+        this.prefix = prefix;
+        this.valuesGroup = valuesGroup;
+        this.suffix = suffix;
+        this.placeholderCount = placeholderCount;
+    }
+
+    /**
+     * 解析sql语句
+     *
+     * @param sql 单行的insert语句
+     * @return 可以改写时返回解析结果，否则返回null
+     */
+    public static MultiValuesInsert parse(String sql) {
+        MultiValuesInsert insert = parseCache.get(sql);
+        if (insert == null) {
+            insert = doParse(sql);
+            insert = parseCache.put(sql, insert != null ? insert : NOT_REWRITABLE);
+        }
+        return (insert != NOT_REWRITABLE ? insert : null);
+    }
+
+    private static MultiValuesInsert doParse(String sql) {
+        String trimmed = sql.trim();
+        if (!trimmed.regionMatches(true, 0, "insert", 0, 6)) {
+            return null;
+        }
+        int valuesStart = -1;
+        int groupStart = -1;
+        int groupEnd = -1;
+        int depth = 0;
+        int placeholders = 0;
+        char quote = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && quote != '`') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                if (depth == 0 && valuesStart >= 0 && groupStart < 0) {
+                    groupStart = i;
+                }
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0 && groupStart >= 0 && groupEnd < 0) {
+                    groupEnd = i + 1;
+                }
+            } else if (c == '?') {
+                if (groupStart < 0 || groupEnd >= 0) {
+                    // VALUES之外的占位符无法复制
+                    return null;
+                }
+                placeholders++;
+            } else if (depth == 0 && valuesStart < 0 && isKeyword(trimmed, i, "values")) {
+                valuesStart = i;
+                i += 5;
+            } else if (groupStart >= 0 && groupEnd < 0 && depth > 1
+                    && isKeyword(trimmed, i, "select")) {
+                return null;
+            } else if (valuesStart >= 0 && groupStart < 0 && !Character.isWhitespace(c)) {
+                // VALUES后面不是括号，例如INSERT ... SELECT
+                return null;
+            }
+        }
+        if (groupEnd < 0 || placeholders == 0 || quote != 0) {
+            return null;
+        }
+        String suffix = trimmed.substring(groupEnd);
+        if (suffix.endsWith(";")) {
+            suffix = suffix.substring(0, suffix.length() - 1);
+        }
+        if (suffix.trim().startsWith(",")) {
+            // 已经是多行的语句
+            return null;
+        }
+        return new MultiValuesInsert(trimmed.substring(0, groupStart), trimmed.substring(
+                groupStart, groupEnd), suffix, placeholders);
+    }
+
+    private static boolean isKeyword(String sql, int index, String keyword) {
+        int end = index + keyword.length();
+        return sql.regionMatches(true, index, keyword, 0, keyword.length())
+                && (index == 0 || !Character.isJavaIdentifierPart(sql.charAt(index - 1)))
+                && (end == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(end)));
+    }
+
+    /**
+     * @return 一行的占位符数量
+     */
+    public int getPlaceholderCount() {
+        return this.placeholderCount;
+    }
+
+    /**
+     * 返回插入给定行数的sql语句
+     *
+     * @param rows 行数
+     */
+    public String getSql(int rows) {
+        StringBuilder sql = new StringBuilder(this.prefix.length() + this.suffix.length()
+                + rows * (this.valuesGroup.length() + 2));
+        sql.append(this.prefix);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(this.valuesGroup);
+        }
+        sql.append(this.suffix);
+        return sql.toString();
+    }
+
+    /**
+     * 估算一行在多行语句中占用的字节数，按驱动在客户端拼接参数（MySQL驱动的默认方式）的最坏情况计算
+     *
+     * @param args 一行的参数
+     */
+    public int estimateRowSize(Object[] args) {
+        int size = this.valuesGroup.length() + 2;
+        for (Object arg : args) {
+            Object value = (arg instanceof SqlParameterValue ? ((SqlParameterValue)arg).getValue()
+                    : arg);
+            if (value instanceof CharSequence) {
+                // utf8mb4每个字符最多4个字节，加上引号和转义
+                size += ((CharSequence)value).length() * 4 + 2;
+            } else if (value instanceof byte[]) {
+                // 十六进制形式
+                size += ((byte[])value).length * 2 + 3;
+            } else {
+                size += FIXED_VALUE_SIZE;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 设置多行语句中一行的参数
+     *
+     * @param ps 多行语句
+     * @param row 在语句中的行号，从0开始
+     * @param args 一行的参数
+     * @param argTypes 参数的sql类型，可以为null
+     * @throws SQLException
+     */
+    public void setValues(PreparedStatement ps, int row, Object[] args, int[] argTypes)
+            throws SQLException {
+        int offset = row * this.placeholderCount;
+        for (int i = 0; i < args.length; i++) {
+            StatementCreatorUtils.setParameterValue(ps, offset + i + 1,
+                    argTypes != null ? argTypes[i] : SqlTypeValue.TYPE_UNKNOWN, args[i]);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+
+package com.zy.jdbclib.utils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import com.zy.jdbclib.core.JDBCException;
+
+/**
+ * 预先解析好的属性写入器。每个属性只在创建时查找一次setter（没有setter时查找字段），
+ * 并把它转换成MethodHandle，以后每次写入都直接调用，不再查找字段或调用setAccessible。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class PropertyAccessor {
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class,
+            Object.class);
+
+    private static final BoundedCache<AccessorKey, PropertyAccessor> accessorCache = new BoundedCache<AccessorKey, PropertyAccessor>(
+            4096);
+
+    private final String name;
+
+    private final Class<?> propertyType;
+
+    private final MethodHandle setter;
+
+    private PropertyAccessor(String name, Class<?> propertyType, MethodHandle setter) {
+        this.name = name;
+        this.propertyType = propertyType;
+        this.setter = setter.asType(SETTER_TYPE);
+    }
+
+    /**
+     * 返回给定属性的写入器，优先使用PropertyDescriptor中的setter
+     *
+     * @param clazz 属性所在的类
+     * @param pd 属性描述
+     * @return 属性写入器
+     */
+    public static PropertyAccessor forProperty(Class<?> clazz, PropertyDescriptor pd) {
+        AccessorKey key = new AccessorKey(clazz, pd.getName());
+        PropertyAccessor accessor = accessorCache.get(key);
+        if (accessor == null) {
+            accessor = accessorCache.put(key, createAccessor(clazz, pd));
+        }
+        return accessor;
+    }
+
+    private static PropertyAccessor createAccessor(Class<?> clazz, PropertyDescriptor pd) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Method writeMethod = pd.getWriteMethod();
+            if (writeMethod != null) {
+                if (!Modifier.isPublic(writeMethod.getModifiers())
+                        || !Modifier.isPublic(writeMethod.getDeclaringClass().getModifiers())) {
+                    writeMethod.setAccessible(true);
+                }
+                return new PropertyAccessor(pd.getName(), pd.getPropertyType(), lookup
+                        .unreflect(writeMethod));
+            }
+            Field field = ReflectionUtils.getDeclaredField(clazz, pd.getName());
+            if (field == null) {
+                throw new JDBCException("Could not find setter or field for property ["
+                        + pd.getName() + "] on class [" + clazz.getName() + "]");
+            }
+            ReflectionUtils.makeAccessible(field);
+            return new PropertyAccessor(pd.getName(), field.getType(), lookup.unreflectSetter(field));
+        } catch (IllegalAccessException ex) {
+            throw new JDBCException("Could not access property [" + pd.getName() + "] on class ["
+                    + clazz.getName() + "]", ex);
+        }
+    }
+
+    /**
+     * 写入属性值。基本类型的属性遇到null值时保持默认值不变。
+     *
+     * @param target 目标对象
+     * @param value 属性值
+     */
+    public void setValue(Object target, Object value) {
+        if (value == null && this.propertyType.isPrimitive()) {
+            return;
+        }
+        try {
+            this.setter.invokeExact(target, value);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Error err) {
+            throw err;
+        } catch (Throwable ex) {
+            throw new JDBCException("Could not set property [" + this.name + "]", ex);
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public Class<?> getPropertyType() {
+        return this.propertyType;
+    }
+
+    private static class AccessorKey {
+
+        private final Class<?> clazz;
+
+        private final String name;
+
+        AccessorKey(Class<?> clazz, String name) {
+            this.clazz = clazz;
+            this.name = name;
+        }
+
+        public int hashCode() {
+            return 31 * this.clazz.hashCode() + this.name.hashCode();
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AccessorKey)) {
+                return false;
+            }
+            AccessorKey other = (AccessorKey)obj;
+            return this.clazz == other.clazz && this.name.equals(other.name);
+        }
+    }
+
+}
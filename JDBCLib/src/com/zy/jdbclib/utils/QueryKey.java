@@ -0,0 +1,94 @@
+
+package com.zy.jdbclib.utils;
+
+import java.util.Arrays;
+
+import com.zy.jdbclib.core.PreparedStatementSetter;
+import com.zy.jdbclib.core.ResultSetExtractor;
+import com.zy.jdbclib.core.RowMapperResultSetExtractor;
+
+/**
+ * 标识一次查询：sql、参数、参数类型和ResultSetExtractor都相等的两次查询返回相同的结果。
+ * 用于查询结果缓存和合并相同的并发查询。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class QueryKey {
+
+    private final String sql;
+
+    private final Object[] args;
+
+    private final int[] argTypes;
+
+    private final Object extractor;
+
+    private final int hash;
+
+    private QueryKey(String sql, Object[] args, int[] argTypes, Object extractor) {
+        this.sql = sql;
+        // 调用者可能在查询之后修改参数数组
+        this.args = (args != null ? args.clone() : null);
+        this.argTypes = argTypes;
+        this.extractor = extractor;
+        int h = sql.hashCode();
+        h = h * 31 + Arrays.deepHashCode(args);
+        h = h * 31 + Arrays.hashCode(argTypes);
+        this.hash = h * 31 + extractor.hashCode();
+    }
+
+    /**
+     * 只有RowMapper的结果可以共享，其他ResultSetExtractor（如RowCallbackHandler）可能有副作用；
+     * 自定义的PreparedStatementSetter无法得到参数。
+     *
+     * @param sql sql语句
+     * @param pss 参数设置器，可以为null
+     * @param rse 结果处理器
+     * @return 查询的key，不能识别时返回null
+     */
+    public static QueryKey of(String sql, PreparedStatementSetter pss, ResultSetExtractor<?> rse) {
+        if (sql == null || !(rse instanceof RowMapperResultSetExtractor)) {
+            return null;
+        }
+        if (pss == null) {
+            return new QueryKey(sql, null, null, rse);
+        } else if (pss instanceof ArgPreparedStatementSetter) {
+            return new QueryKey(sql, ((ArgPreparedStatementSetter)pss).getArgs(), null, rse);
+        } else if (pss instanceof ArgTypePreparedStatementSetter) {
+            ArgTypePreparedStatementSetter setter = (ArgTypePreparedStatementSetter)pss;
+            return new QueryKey(sql, setter.getArgs(), setter.getArgTypes(), rse);
+        }
+        return null;
+    }
+
+    /**
+     * @return the sql
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public int hashCode() {
+        return this.hash;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey other = (QueryKey)obj;
+        return this.hash == other.hash && this.sql.equals(other.sql)
+                && Arrays.deepEquals(this.args, other.args)
+                && Arrays.equals(this.argTypes, other.argTypes)
+                && this.extractor.equals(other.extractor);
+    }
+
+    public String toString() {
+        return "QueryKey[" + this.sql + ", " + Arrays.deepToString(this.args) + "]";
+    }
+
+}
@@ -225,4 +225,22 @@ public class SingleColumnRowMapper<T extends Object> implements RowMapper<T> {
 		return buf.toString();
 	}
 
+	/**
+	 * 要求同一类型的同类型RowMapper相等
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || obj.getClass() != getClass()) {
+			return false;
+		}
+		return this.requiredType == ((SingleColumnRowMapper<?>) obj).requiredType;
+	}
+
+	public int hashCode() {
+		return getClass().hashCode() * 31
+				+ (this.requiredType != null ? this.requiredType.hashCode() : 0);
+	}
+
 }
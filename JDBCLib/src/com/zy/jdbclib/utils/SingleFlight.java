@@ -0,0 +1,183 @@
+
+package com.zy.jdbclib.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.zy.jdbclib.core.JDBCException;
+
+/**
+ * 合并相同key的并发调用：同一时间只有一个线程（leader）执行，其他线程等待并得到同一个结果或异常。
+ * 设置了window时，执行成功后的window毫秒内到达的调用也直接使用该结果；失败的结果不会保留。
+ * 数据被修改后调用{@link #invalidate()}，之后到达的调用不再使用修改前开始的执行的结果。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class SingleFlight<K> {
+
+    private final ConcurrentHashMap<K, Call> calls = new ConcurrentHashMap<K, Call>();
+
+    /** 按完成顺序排列的、在window内保留的调用 */
+    private final ConcurrentLinkedQueue<Call> completed = new ConcurrentLinkedQueue<Call>();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /** 每次{@link #invalidate()}加一，调用只能加入同一代的执行 */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** 执行完成后结果继续共享的时间（毫秒） */
+    private volatile long window = 0;
+
+    /**
+     * 执行或加入key相同的调用
+     *
+     * @param key 调用的key
+     * @param loader 实际执行的操作
+     * @return loader返回的结果，可能与其他线程共享
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(K key, Supplier<V> loader) {
+        Assert.notNull(key, "key must not be null");
+        purgeExpired();
+        Call call = new Call(key);
+        while (true) {
+            Call existing = this.calls.putIfAbsent(key, call);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.isExpired()) {
+                this.coalesced.increment();
+                return (V)existing.await();
+            }
+            if (this.calls.replace(key, existing, call)) {
+                break;
+            }
+        }
+        try {
+            V value = loader.get();
+            call.complete(value, null);
+            return value;
+        } catch (RuntimeException ex) {
+            call.complete(null, ex);
+            throw ex;
+        } catch (Error err) {
+            call.complete(null, err);
+            throw err;
+        } finally {
+            if (call.error != null || this.window <= 0) {
+                this.calls.remove(key, call);
+            } else {
+                this.completed.add(call);
+            }
+        }
+    }
+
+    /**
+     * 使正在进行的和window内保留的执行都不再被新的调用加入，已经在等待的调用不受影响
+     */
+    public void invalidate() {
+        this.generation.incrementAndGet();
+    }
+
+    /**
+     * 删除超过window的调用，保证只执行一次的key不会一直留在map中
+     */
+    private void purgeExpired() {
+        Call head;
+        while ((head = this.completed.peek()) != null && head.isExpired()) {
+            if (this.completed.remove(head)) {
+                this.calls.remove(head.key, head);
+            }
+        }
+    }
+
+    /**
+     * @return 正在执行或在window内保留的调用数
+     */
+    public int getInFlight() {
+        return this.calls.size();
+    }
+
+    /**
+     * @return 加入其他线程的调用、没有自己执行的次数
+     */
+    public long getCoalescedCount() {
+        return this.coalesced.sum();
+    }
+
+    /**
+     * @return the window
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * @param window 执行完成后结果继续共享的时间（毫秒），0表示只合并同时进行的调用
+     */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    private class Call {
+
+        final K key;
+
+        /** 创建时的generation，早于执行开始 */
+        private final long generation;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Object value;
+
+        private Throwable error;
+
+        /** 完成的时间（System.nanoTime()），未完成时无意义 */
+        private volatile long completedAt;
+
+        Call(K key) {
+            this.key = key;
+            this.generation = SingleFlight.this.generation.get();
+        }
+
+        void complete(Object value, Throwable error) {
+            this.value = value;
+            this.error = error;
+            this.completedAt = System.nanoTime();
+            this.done.countDown();
+        }
+
+        boolean isExpired() {
+            if (this.generation != SingleFlight.this.generation.get()) {
+                return true;
+            }
+            return this.done.getCount() == 0
+                    && (this.error != null || System.nanoTime() - this.completedAt >= window
+                            * 1000000L);
+        }
+
+        Object await() {
+            try {
+                this.done.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new JDBCException("Interrupted while waiting for a shared execution", ex);
+            }
+            if (this.error instanceof JDBCException) {
+                // 每个线程抛出自己的异常，保留各自的调用栈
+                throw new JDBCException(this.error.getMessage(), this.error);
+            } else if (this.error instanceof RuntimeException) {
+                throw (RuntimeException)this.error;
+            } else if (this.error instanceof Error) {
+                throw (Error)this.error;
+            }
+            return this.value;
+        }
+    }
+
+}
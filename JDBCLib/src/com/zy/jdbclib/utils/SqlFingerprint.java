@@ -0,0 +1,316 @@
+
+package com.zy.jdbclib.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * sql语句的指纹：去掉注释，字符串和数字常量替换为<code>?</code>，命名参数也替换为<code>?</code>，
+ * <code>IN (?, ?, ...)</code>合并为<code>in (?+)</code>，空白统一为一个空格，关键字和未加引号的标识符转为小写，
+ * 再对结果计算64位的FNV-1a哈希。只有常量或IN列表长度不同的语句得到相同的指纹，用于统计和配置的key。
+ * <p>
+ * 双引号按MySQL的默认方式当作字符串，反引号中的标识符保持原样。结果按原始sql缓存在有上限的缓存中，
+ * 同一条sql只解析一次。
+ *
+ * <pre>
+ * select * from admin where id in (1, 2, 3) and name = 'a'
+ *   =&gt; select * from admin where id in (?+) and name = ?
+ * </pre>
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class SqlFingerprint {
+
+    /** 缓存的最大条目数 */
+    public static final int DEFAULT_CACHE_LIMIT = 4096;
+
+    /** 超过这个长度的sql（通常是拼接出来的语句）不缓存 */
+    private static final int MAX_CACHED_LENGTH = 8192;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final String COLLAPSED_LIST = "?+";
+
+    private static final BoundedCache<String, SqlFingerprint> cache = new BoundedCache<String, SqlFingerprint>(
+            DEFAULT_CACHE_LIMIT);
+
+    private final String normalizedSql;
+
+    private final long hash;
+
+    private SqlFingerprint(String normalizedSql, long hash) {
+        this.normalizedSql = normalizedSql;
+        this.hash = hash;
+    }
+
+    /**
+     * @param sql 原始sql
+     * @return sql的指纹，使用缓存
+     */
+    public static SqlFingerprint of(String sql) {
+        Assert.notNull(sql, "SQL must not be null!");
+        SqlFingerprint fingerprint = cache.get(sql);
+        if (fingerprint == null) {
+            fingerprint = compute(sql);
+            if (sql.length() <= MAX_CACHED_LENGTH) {
+                fingerprint = cache.put(sql, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+    private static SqlFingerprint compute(String sql) {
+        List<String> tokens = collapseInLists(tokenize(sql));
+        StringBuilder normalized = new StringBuilder(sql.length());
+        String previous = null;
+        for (String token : tokens) {
+            if (previous != null && needsSpace(previous, token)) {
+                normalized.append(' ');
+            }
+            normalized.append(token);
+            previous = token;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return new SqlFingerprint(normalized.toString(), hash);
+    }
+
+    private static boolean needsSpace(String previous, String token) {
+        if ("(".equals(previous) || ".".equals(previous)) {
+            return false;
+        }
+        return !(")".equals(token) || ",".equals(token) || ".".equals(token) || ";".equals(token));
+    }
+
+    /**
+     * 拆分成词，常量和参数替换为?，跳过注释
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<String>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                tokens.add("?");
+            } else if (c == '`') {
+                int end = skipQuoted(sql, i, c);
+                tokens.add(sql.substring(i, end));
+                i = end;
+            } else if ((c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') || c == '#') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = (end < 0 ? length : end + 2);
+            } else if (Character.isDigit(c)
+                    || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1))
+                            && !afterWord(tokens))) {
+                i = skipNumber(sql, i);
+                tokens.add("?");
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1 && i < length && sql.charAt(i) == '\''
+                        && "nNxXbB".indexOf(c) >= 0) {
+                    // N'...'、X'...'、B'...'常量
+                    i = skipQuoted(sql, i, '\'');
+                    tokens.add("?");
+                } else {
+                    tokens.add(sql.substring(start, i).toLowerCase());
+                }
+            } else if (c == '?') {
+                tokens.add("?");
+                i++;
+            } else if (c == ':' && i + 1 < length
+                    && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                // 命名参数
+                i++;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                tokens.add("?");
+            } else {
+                int end = i + 1;
+                if (end < length && isOperatorPair(c, sql.charAt(end))) {
+                    end++;
+                }
+                tokens.add(sql.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean afterWord(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        String last = tokens.get(tokens.size() - 1);
+        return Character.isJavaIdentifierPart(last.charAt(last.length() - 1)) && !"?".equals(last);
+    }
+
+    private static boolean isOperatorPair(char c, char next) {
+        switch (c) {
+        case '<':
+            return next == '=' || next == '>' || next == '<';
+        case '>':
+            return next == '=' || next == '>';
+        case '!':
+            return next == '=';
+        case '|':
+            return next == '|';
+        case '&':
+            return next == '&';
+        case ':':
+            return next == '=' || next == ':';
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return 结束引号后面的位置
+     */
+    private static int skipQuoted(String sql, int i, char quote) {
+        for (i++; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i++;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i + 1;
+                }
+            }
+        }
+        return sql.length();
+    }
+
+    /**
+     * @return 数字常量（包括小数、科学计数法和0x十六进制）后面的位置
+     */
+    private static int skipNumber(String sql, int i) {
+        int length = sql.length();
+        if (sql.charAt(i) == '0' && i + 1 < length
+                && (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+            i += 2;
+            while (i < length && Character.digit(sql.charAt(i), 16) >= 0) {
+                i++;
+            }
+            return i;
+        }
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isDigit(c) || c == '.') {
+                i++;
+            } else if ((c == 'e' || c == 'E') && i + 1 < length
+                    && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-' || sql
+                            .charAt(i + 1) == '+')) {
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 把<code>in (?, ?, ...)</code>和<code>in ((?, ?), (?, ?))</code>合并为<code>in (?+)</code>
+     */
+    private static List<String> collapseInLists(List<String> tokens) {
+        List<String> result = null;
+        int size = tokens.size();
+        for (int i = 0; i < size; i++) {
+            String token = tokens.get(i);
+            int end = ("in".equals(token) ? listEnd(tokens, i + 1) : -1);
+            if (end < 0) {
+                if (result != null) {
+                    result.add(token);
+                }
+                continue;
+            }
+            if (result == null) {
+                result = new ArrayList<String>(tokens.subList(0, i));
+            }
+            result.add(token);
+            result.add("(");
+            result.add(COLLAPSED_LIST);
+            result.add(")");
+            i = end;
+        }
+        return (result != null ? result : tokens);
+    }
+
+    /**
+     * @return start处的括号中只有?、逗号和括号时，返回匹配的右括号的位置，否则返回-1
+     */
+    private static int listEnd(List<String> tokens, int start) {
+        if (start >= tokens.size() || !"(".equals(tokens.get(start))) {
+            return -1;
+        }
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("(".equals(token)) {
+                depth++;
+            } else if (")".equals(token)) {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            } else if (!"?".equals(token) && !",".equals(token)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 规范化后的sql
+     */
+    public String getNormalizedSql() {
+        return normalizedSql;
+    }
+
+    /**
+     * @return 规范化后的sql的64位哈希
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SqlFingerprint)) {
+            return false;
+        }
+        SqlFingerprint other = (SqlFingerprint)obj;
+        return this.hash == other.hash && this.normalizedSql.equals(other.normalizedSql);
+    }
+
+    public int hashCode() {
+        return (int)(this.hash ^ (this.hash >>> 32));
+    }
+
+    public String toString() {
+        return this.normalizedSql;
+    }
+
+}
@@ -0,0 +1,277 @@
+
+package com.zy.jdbclib.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 从sql语句中找出引用和修改的表名，用于查询结果缓存的失效。只做词法层面的分析，不完整解析sql：
+ * 可能多找出一些表（例如<code>extract(year from d)</code>中的d），但不会漏掉FROM、JOIN后面的表。
+ * 表名统一为小写、去掉引号和库名前缀。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class SqlTables {
+
+    private static final String[] NONE = new String[0];
+
+    /** 不能确定修改了哪些表的语句在缓存中的标记 */
+    private static final String[] UNKNOWN = new String[0];
+
+    private static final BoundedCache<String, String[]> referencedCache = new BoundedCache<String, String[]>(
+            1024);
+
+    private static final BoundedCache<String, String[]> modifiedCache = new BoundedCache<String, String[]>(
+            1024);
+
+    /** 表名后面出现时不是别名的关键字 */
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<String>(Arrays.asList("where",
+            "join", "on", "using", "inner", "left", "right", "full", "cross", "outer", "natural",
+            "straight_join", "group", "order", "having", "limit", "offset", "union", "except",
+            "intersect", "for", "lock", "window", "set", "values", "select", "into", "partition",
+            "use", "force", "ignore", "fetch", "with"));
+
+    /** 结束FROM子句的关键字 */
+    private static final Set<String> FROM_END_KEYWORDS = new HashSet<String>(Arrays.asList(
+            "where", "group", "order", "having", "limit", "union", "except", "intersect", "set",
+            "window", "for", "lock", "returning", "select", "values"));
+
+    /** INSERT、UPDATE、DELETE后面、表名前面可以出现的修饰词 */
+    private static final Set<String> MODIFIERS = new HashSet<String>(Arrays.asList("low_priority",
+            "delayed", "high_priority", "quick", "ignore", "into", "only"));
+
+    private SqlTables() {
+    }
+
+    /**
+     * @return 语句中FROM、JOIN后面引用的所有表，没有时返回空数组
+     */
+    public static String[] referencedTables(String sql) {
+        String[] tables = referencedCache.get(sql);
+        if (tables == null) {
+            List<String> tokens = tokenize(sql);
+            Set<String> result = new LinkedHashSet<String>();
+            collectTableLists(tokens, 0, result);
+            tables = referencedCache.put(sql, result.toArray(new String[result.size()]));
+        }
+        return tables;
+    }
+
+    /**
+     * @return 语句修改的表；不修改任何表（如SELECT、SET）时返回空数组；不能确定时返回null
+     */
+    public static String[] modifiedTables(String sql) {
+        String[] tables = modifiedCache.get(sql);
+        if (tables == null) {
+            tables = doModifiedTables(tokenize(sql));
+            tables = modifiedCache.put(sql, tables != null ? tables : UNKNOWN);
+        }
+        return (tables != UNKNOWN ? tables : null);
+    }
+
+    private static String[] doModifiedTables(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            return NONE;
+        }
+        String command = tokens.get(0);
+        Set<String> result = new LinkedHashSet<String>();
+        if ("insert".equals(command) || "replace".equals(command) || "merge".equals(command)) {
+            int i = skipModifiers(tokens, 1);
+            if (i < tokens.size() && isIdentifier(tokens.get(i))) {
+                // INSERT ... SELECT中查询的表没有被修改
+                result.add(tokens.get(i));
+            }
+        } else if ("update".equals(command)) {
+            // 多表UPDATE: UPDATE a, b SET ... / UPDATE a JOIN b ON ... SET ...
+            collectTableList(tokens, skipModifiers(tokens, 1), result);
+            collectTableLists(tokens, 1, result);
+        } else if ("delete".equals(command)) {
+            // 多表DELETE中FROM、JOIN、USING后面的表都按被修改处理
+            collectTableLists(tokens, 1, result);
+        } else if ("truncate".equals(command)) {
+            int i = 1;
+            if (i < tokens.size() && "table".equals(tokens.get(i))) {
+                i++;
+            }
+            if (i < tokens.size() && isIdentifier(tokens.get(i))) {
+                result.add(tokens.get(i));
+            }
+        } else if ("alter".equals(command) || "drop".equals(command)
+                || "create".equals(command)) {
+            int i = tokens.indexOf("table");
+            if (i < 0) {
+                // CREATE INDEX ... ON t
+                i = tokens.indexOf("on");
+                if (i < 0 || "drop".equals(command)) {
+                    return ("create".equals(command) ? NONE : null);
+                }
+            }
+            i++;
+            while (i < tokens.size()
+                    && ("if".equals(tokens.get(i)) || "not".equals(tokens.get(i)) || "exists"
+                            .equals(tokens.get(i)))) {
+                i++;
+            }
+            collectTableList(tokens, i, result);
+        } else if ("select".equals(command) || "set".equals(command) || "show".equals(command)
+                || "explain".equals(command) || "describe".equals(command)
+                || "use".equals(command) || "(".equals(command)) {
+            return NONE;
+        } else {
+            // CALL、RENAME、WITH等
+            return null;
+        }
+        return (result.isEmpty() ? null : result.toArray(new String[result.size()]));
+    }
+
+    private static int skipModifiers(List<String> tokens, int i) {
+        while (i < tokens.size() && MODIFIERS.contains(tokens.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 收集所有FROM、JOIN、USING后面的表，以及FROM子句中JOIN条件之后以逗号分隔的表
+     */
+    private static void collectTableLists(List<String> tokens, int start, Set<String> result) {
+        // 每一层括号中是否处于FROM子句
+        boolean[] inFrom = new boolean[8];
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("(".equals(token)) {
+                depth++;
+                if (depth == inFrom.length) {
+                    inFrom = Arrays.copyOf(inFrom, depth * 2);
+                }
+                inFrom[depth] = false;
+            } else if (")".equals(token)) {
+                depth = Math.max(0, depth - 1);
+            } else if ("from".equals(token) || "using".equals(token)) {
+                inFrom[depth] = true;
+                collectTableList(tokens, i + 1, result);
+            } else if ("join".equals(token) || "straight_join".equals(token)
+                    || (",".equals(token) && inFrom[depth])) {
+                collectTableList(tokens, i + 1, result);
+            } else if (FROM_END_KEYWORDS.contains(token)) {
+                inFrom[depth] = false;
+            }
+        }
+    }
+
+    /**
+     * 收集以逗号分隔的表名列表，每个表名后面可以有别名
+     */
+    private static void collectTableList(List<String> tokens, int i, Set<String> result) {
+        while (i < tokens.size()) {
+            String table = tokens.get(i);
+            if (!isIdentifier(table) || CLAUSE_KEYWORDS.contains(table)) {
+                // 子查询等，其中的表由外层的扫描找出
+                return;
+            }
+            result.add(table);
+            i++;
+            if (i < tokens.size() && "as".equals(tokens.get(i))) {
+                i++;
+            }
+            if (i < tokens.size() && isIdentifier(tokens.get(i))
+                    && !CLAUSE_KEYWORDS.contains(tokens.get(i))) {
+                i++;
+            }
+            if (i >= tokens.size() || !",".equals(tokens.get(i))) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    private static boolean isIdentifier(String token) {
+        // 标点都是单个字符
+        return token.length() > 1 || Character.isJavaIdentifierPart(token.charAt(0));
+    }
+
+    /**
+     * 把sql分解成标识符（小写、去掉引号和前缀）和单个字符的标点，跳过字符串、数字和注释
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<String>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-' || c == '#') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = (end < 0 ? length : end + 2);
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, c);
+            } else if (Character.isJavaIdentifierStart(c) || c == '`' || c == '"') {
+                // 可能带库名前缀的标识符，如 db.`table`
+                String name = null;
+                while (true) {
+                    if (i < length && (sql.charAt(i) == '`' || sql.charAt(i) == '"')) {
+                        int end = skipQuoted(sql, i, sql.charAt(i));
+                        name = sql.substring(i + 1, Math.max(i + 1, end - 1));
+                        i = end;
+                    } else {
+                        int start = i;
+                        while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                            i++;
+                        }
+                        name = sql.substring(start, i);
+                    }
+                    if (i + 1 < length && sql.charAt(i) == '.'
+                            && (Character.isJavaIdentifierStart(sql.charAt(i + 1))
+                                    || sql.charAt(i + 1) == '`' || sql.charAt(i + 1) == '"')) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (name.length() > 0) {
+                    tokens.add(name.toLowerCase());
+                }
+            } else if (Character.isDigit(c)) {
+                while (i < length
+                        && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @return 结束引号后面的位置
+     */
+    private static int skipQuoted(String sql, int i, char quote) {
+        for (i++; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote == '\'') {
+                i++;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i + 1;
+                }
+            }
+        }
+        return sql.length();
+    }
+
+}
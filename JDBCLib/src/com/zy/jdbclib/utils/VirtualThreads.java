@@ -0,0 +1,90 @@
+
+package com.zy.jdbclib.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程（JDK 21）的反射访问，使jdbclib可以在旧版本JDK上编译和运行。旧版本JDK上
+ * {@link #isSupported()}返回false，{@link #isVirtual(Thread)}总是返回false。
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class VirtualThreads {
+
+    /** Thread.isVirtual() */
+    private static final MethodHandle IS_VIRTUAL;
+
+    /** Executors.newVirtualThreadPerTaskExecutor() */
+    private static final MethodHandle NEW_EXECUTOR;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle isVirtual = null;
+        MethodHandle newExecutor = null;
+        try {
+            isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType
+                    .methodType(boolean.class));
+            newExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException ex) {
+            // JDK 21以前的版本
+        } catch (IllegalAccessException ex) {
+            // 不可能发生，两个方法都是public的
+        }
+        IS_VIRTUAL = isVirtual;
+        NEW_EXECUTOR = newExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前JDK是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * @param thread 需要判断的线程
+     * @return 是否是虚拟线程
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean)IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable ex) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建为每个任务启动一个虚拟线程的ExecutorService
+     *
+     * @return ExecutorService；当前JDK不支持虚拟线程时（包括预览版本没有打开--enable-preview）返回null
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService)NEW_EXECUTOR.invokeExact();
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Error err) {
+            throw err;
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+}